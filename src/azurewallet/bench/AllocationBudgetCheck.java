@@ -0,0 +1,65 @@
+package azurewallet.bench;
+
+import java.nio.file.Files;
+import java.time.YearMonth;
+import java.util.*;
+import azurewallet.models.HashUtil;
+import azurewallet.models.UserAccount;
+import azurewallet.system.FileManager;
+import azurewallet.system.OperationProfiler;
+import azurewallet.system.TextStorageEngine;
+
+// Allocation regression gate. Runs each hot path until it is JIT-compiled, then measures
+// the average bytes allocated per call and compares it with OperationProfiler.BUDGETS.
+// Exits with status 1 if any operation is over budget, so a build script can run it.
+// Uses the text backend in a scratch directory.
+// Run: java azurewallet.bench.AllocationBudgetCheck [iterations]
+public class AllocationBudgetCheck {
+    private static final int WARMUP = 20_000;
+
+    public static void main(String[] args) throws Exception {
+        if (!OperationProfiler.isSupported()) {
+            System.out.println("This JVM does not report per-thread allocation; nothing to check.");
+            return;
+        }
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        String dir = Files.createTempDirectory("azure-alloc-check") + "/";
+        FileManager fm = new FileManager(dir, new TextStorageEngine(dir));
+
+        UserAccount acc = new UserAccount("juan", HashUtil.hash("1234"), "09171234567", 12_345.67, 120, 250_000, "Silver", 0, 0, YearMonth.of(2025, 1));
+        String line = acc.toFileFormat();
+        Map<String, UserAccount> users = new HashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            users.put("user" + i, new UserAccount("user" + i, HashUtil.hash("1234"), "09000000000", i * 1.5, i, i * 10.0, "Bronze", 0, 0, YearMonth.of(2025, 1)));
+        }
+
+        Map<String, Long> measured = new LinkedHashMap<>();
+        measured.put("hash", perCall(iterations, () -> HashUtil.hash("1234")));
+        measured.put("toFileFormat", perCall(iterations, acc::toFileFormat));
+        measured.put("parseUser", perCall(iterations, () -> FileManager.parseUser(line)));
+        measured.put("logTransaction", perCall(iterations, () -> fm.logTransaction("juan", "Deposit", 1_500)));
+        measured.put("logPoints", perCall(iterations, () -> fm.logPoints("juan", "earned", 1, "from deposit")));
+        measured.put("logInterest", perCall(iterations, () -> fm.logInterest("juan", 12.5)));
+        measured.put("logVoucher", perCall(iterations, () -> fm.logVoucher("juan", "JUABC123", 50)));
+        measured.put("logSystemRevenue", perCall(iterations, () -> fm.logSystemRevenue(15)));
+        measured.put("saveUsers/account", perCall(20, () -> fm.saveUsers(users)) / users.size());
+
+        boolean failed = false;
+        System.out.printf("%-20s %12s %12s%n", "operation", "bytes/call", "budget");
+        for (Map.Entry<String, Long> e : measured.entrySet()) {
+            long budget = OperationProfiler.BUDGETS.get(e.getKey());
+            boolean over = e.getValue() > budget;
+            failed |= over;
+            System.out.printf("%-20s %,12d %,12d%s%n", e.getKey(), e.getValue(), budget, over ? "  OVER BUDGET" : "");
+        }
+        System.out.println(failed ? "Allocation budget check FAILED." : "All operations within budget.");
+        System.exit(failed ? 1 : 0);
+    }
+
+    private static long perCall(int iterations, Runnable op) {
+        for (int i = 0; i < WARMUP; i++) op.run();
+        long mark = OperationProfiler.begin();
+        for (int i = 0; i < iterations; i++) op.run();
+        return (OperationProfiler.begin() - mark) / iterations;
+    }
+}
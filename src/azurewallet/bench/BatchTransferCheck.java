@@ -0,0 +1,74 @@
+package azurewallet.bench;
+
+import java.nio.file.Files;
+import java.util.*;
+import azurewallet.models.UserAccount;
+import azurewallet.system.BatchTransfer;
+import azurewallet.system.FileManager;
+import azurewallet.system.InterestAccrual;
+import azurewallet.system.TextStorageEngine;
+import azurewallet.system.VelocityMonitor;
+
+// Batch transfers under the default velocity rules: a payroll run to more recipients than
+// the per-minute single-send limit must go through, the batch rules must still stop a
+// burst of batches, a batch must be held to the batch amount ceiling rather than the
+// lower all-operations one, and single sends must keep their own limits. Exits with status 1 on
+// any failure. Uses the text backend in a scratch directory.
+// Run: java azurewallet.bench.BatchTransferCheck
+public class BatchTransferCheck {
+
+    public static void main(String[] args) throws Exception {
+        String dir = Files.createTempDirectory("azure-batch-check") + "/";
+        FileManager fm = new FileManager(dir, new TextStorageEngine(dir));
+        Map<String, UserAccount> users = new HashMap<>();
+        UserAccount boss = new UserAccount("boss", "x", "09000000000", 500_000, 0, 0, "Bronze", 0, 0, null);
+        users.put("boss", boss);
+        for (int i = 0; i < 12; i++) users.put("staff" + i, new UserAccount("staff" + i, "x", "09000000000", 0, 0, 0, "Bronze", 0, 0, null));
+        VelocityMonitor velocity = new VelocityMonitor(fm);
+        BatchTransfer batch = new BatchTransfer(fm, users, new InterestAccrual(fm, users, null), velocity);
+        boolean failed = false;
+
+        // 12 recipients at 15,000 each: over the 5-per-minute single-send count and over
+        // 2x the send limit in amount, but within the send limit per leg and the batch rules.
+        List<BatchTransfer.Leg> payroll = new ArrayList<>();
+        for (int i = 0; i < 12; i++) payroll.add(new BatchTransfer.Leg("staff" + i, 15_000));
+        BatchTransfer.Result r = batch.execute(boss, payroll);
+        failed |= report("12-recipient payroll within limits is sent", r.applied, r.applied ? "" : r.legs.get(0).status);
+        failed |= report("recipients credited", users.get("staff11").getBalance() == 15_000, "");
+
+        // A payroll of 12x the send limit: over the daily "any" amount (10x) but under the
+        // batch ceiling (20x an hour), which is the one that applies to it.
+        UserAccount office = new UserAccount("office", "x", "09000000000", 2_000_000, 0, 0, "Bronze", 0, 0, null);
+        users.put("office", office);
+        List<BatchTransfer.Leg> large = new ArrayList<>();
+        for (int i = 0; i < 12; i++) large.add(new BatchTransfer.Leg("staff" + i, office.getSendLimit()));
+        BatchTransfer.Result big = batch.execute(office, large);
+        failed |= report("batch under the 20x batch limit is sent", big.applied, big.applied ? "" : big.legs.get(0).status);
+
+        // One unknown recipient stops the whole batch before anything is debited.
+        double before = boss.getBalance();
+        BatchTransfer.Result unknown = batch.execute(boss, List.of(new BatchTransfer.Leg("staff1", 100), new BatchTransfer.Leg("nobody", 100)));
+        failed |= report("unknown recipient rejects the batch", !unknown.applied && boss.getBalance() == before, unknown.legs.get(1).status);
+
+        // Batch rules: three small batches an hour.
+        boolean second = batch.execute(boss, List.of(new BatchTransfer.Leg("staff0", 100))).applied;
+        boolean third = batch.execute(boss, List.of(new BatchTransfer.Leg("staff0", 100))).applied;
+        BatchTransfer.Result fourth = batch.execute(boss, List.of(new BatchTransfer.Leg("staff0", 100)));
+        failed |= report("fourth batch within the hour is stopped", second && third && !fourth.applied, fourth.legs.get(0).status);
+
+        // Batches do not use up the single-send window.
+        int admitted = 0;
+        for (int i = 0; i < 6; i++) {
+            if (velocity.admit(boss, VelocityMonitor.Op.SEND, 1, 10) == null) admitted++;
+        }
+        failed |= report("single sends keep their 5-per-minute limit", admitted == 5, admitted + " admitted");
+
+        System.out.println(failed ? "Batch transfer check FAILED." : "All batch transfer checks passed.");
+        System.exit(failed ? 1 : 0);
+    }
+
+    private static boolean report(String check, boolean ok, String detail) {
+        System.out.printf("%-48s %s%s%n", check, ok ? "ok" : "FAILED", ok || detail.isEmpty() ? "" : "  (" + detail + ")");
+        return !ok;
+    }
+}
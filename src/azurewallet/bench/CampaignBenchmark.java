@@ -0,0 +1,86 @@
+package azurewallet.bench;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import azurewallet.models.UserAccount;
+import azurewallet.models.VoucherSystem;
+import azurewallet.system.CampaignEngine;
+import azurewallet.system.FileManager;
+import azurewallet.system.InMemoryStorageEngine;
+import azurewallet.system.StorageEngines;
+
+// Targets several campaigns on one day over a large population and compares the single
+// columnar pass with one scan of the account map per campaign (what running each campaign
+// separately used to cost). Run: java azurewallet.bench.CampaignBenchmark [accounts]
+public class CampaignBenchmark {
+    private static final String[] CAMPAIGNS = {
+        "table,standard,Bronze=1-20,Silver=50-100,Gold=100-250,Platinum=250-500",
+        "table,holiday,Bronze=50-100,Silver=150-300,Gold=400-600,Platinum=800-1000",
+        "campaign,xmas,12-25,XMAS{yyyy},holiday,1m",
+        "campaign,gold-loyalty,12-25,GOLD{yyyy},standard,14d,rank=Gold+Platinum,points>=500",
+        "campaign,win-back,12-25,BACK{yyyy},standard,14d,balance<1000,transacted>=50000",
+        "campaign,starter,12-20..12-31,START{yyyy},standard,7d,rank=Bronze,points<50",
+        "campaign,big-savers,12-25,SAVE{yyyy},holiday,1m,balance>=900000"
+    };
+
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        FileManager fm = new FileManager(StorageEngines.dataDir(), new InMemoryStorageEngine());
+        fm.saveDocument("campaigns.txt", String.join("\n", CAMPAIGNS));
+        VoucherSystem.useRandom(new Random(1));
+
+        Random rnd = new Random(42);
+        Map<String, UserAccount> users = new ConcurrentHashMap<>();
+        for (int i = 0; i < accounts; i++) {
+            UserAccount acc = new UserAccount("user" + i, "x", "09000000000", rnd.nextInt(1_000_000),
+                    rnd.nextInt(2_000), rnd.nextInt(1_500_000), "Bronze", 0, 0, null);
+            acc.updateRank();
+            users.put(acc.getUsername(), acc);
+        }
+        CampaignEngine engine = new CampaignEngine(fm, users);
+        LocalDate day = LocalDate.of(2025, 12, 25);
+
+        // Same predicates, one full scan of the map per campaign. Both sides run a few
+        // rounds so the JIT has compiled them; the last round is reported.
+        long scanNanos = 0, scanned = 0, previewNanos = 0, targeted = 0;
+        for (int round = 0; round < 3; round++) {
+            long t0 = System.nanoTime();
+            scanned = scanPerCampaign(users);
+            scanNanos = System.nanoTime() - t0;
+            long t1 = System.nanoTime();
+            targeted = engine.preview(day).values().stream().mapToLong(Long::longValue).sum();
+            previewNanos = System.nanoTime() - t1;
+        }
+
+        long t2 = System.nanoTime();
+        int issued = engine.runDay(day);
+        long issueNanos = System.nanoTime() - t2;
+
+        System.out.printf("Accounts: %,d  Campaigns due: %d%n", accounts, engine.getStats().size());
+        System.out.printf("Targeting, one scan per campaign : %,8.1f ms, %,d matches%n", scanNanos / 1e6, scanned);
+        System.out.printf("Targeting, single columnar pass  : %,8.1f ms, %,d matches%n", previewNanos / 1e6, targeted);
+        System.out.printf("Targeting + issuing (runDay)     : %,8.1f ms, %,d vouchers%n", issueNanos / 1e6, issued);
+        for (Map.Entry<String, CampaignEngine.Stats> e : engine.getStats().entrySet()) {
+            System.out.printf("  %-14s %,10d issued  PHP %,16.2f%n", e.getKey(), e.getValue().getIssued(), e.getValue().getValue());
+        }
+        System.out.println(issued == scanned && targeted == scanned ? "Targeting matches." : "Targeting DIFFERS.");
+    }
+
+    private static long scanPerCampaign(Map<String, UserAccount> users) {
+        long matches = 0;
+        for (int c = 0; c < 5; c++) {
+            for (UserAccount u : users.values()) {
+                boolean hit = switch (c) {
+                    case 0 -> true;
+                    case 1 -> (u.getRank().equals("Gold") || u.getRank().equals("Platinum")) && u.getPoints() >= 500;
+                    case 2 -> u.getBalance() < 1000 && u.getTotalTransacted() >= 50_000;
+                    case 3 -> u.getRank().equals("Bronze") && u.getPoints() < 50;
+                    default -> u.getBalance() >= 900_000;
+                };
+                if (hit) matches++;
+            }
+        }
+        return matches;
+    }
+}
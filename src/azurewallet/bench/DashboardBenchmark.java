@@ -0,0 +1,79 @@
+package azurewallet.bench;
+
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.*;
+import azurewallet.models.UserAccount;
+import azurewallet.system.DashboardCache;
+import azurewallet.system.FileManager;
+import azurewallet.system.TextStorageEngine;
+
+// Compares the login-to-dashboard path before and after the summary cache: the old path
+// rewrote users.txt and counted vouchers on every login, the new one reads a cached
+// summary. Also reports the one-off startup pass that seeds recent activity from the log.
+// Uses a scratch directory.
+// Run: java azurewallet.bench.DashboardBenchmark [accounts] [transactions] [logins]
+public class DashboardBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int transactions = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+        int logins = args.length > 2 ? Integer.parseInt(args[2]) : 2_000;
+        String dir = Files.createTempDirectory("azure-dashboard-bench") + "/";
+        FileManager fm = new FileManager(dir, new TextStorageEngine(dir));
+
+        Map<String, UserAccount> users = new HashMap<>();
+        List<UserAccount> population = new ArrayList<>(accounts);
+        for (int i = 0; i < accounts; i++) {
+            UserAccount acc = new UserAccount("user" + i, "x", "09000000000", 10_000, i % 50, 0, "Bronze", 0, 0, null);
+            users.put(acc.getUsername(), acc);
+            population.add(acc);
+        }
+        fm.saveUsers(users);
+        Random rnd = new Random(5);
+        LocalDateTime t = LocalDateTime.of(2025, 1, 1, 0, 0);
+        List<String> batch = new ArrayList<>();
+        for (int i = 0; i < transactions; i++) {
+            batch.add(fm.formatTransaction(t.plusSeconds(i), "user" + rnd.nextInt(accounts), "Deposit", 100 + rnd.nextInt(5000)));
+            if (batch.size() == 10_000) {
+                fm.appendTransactionLines(batch);
+                batch.clear();
+            }
+        }
+        fm.appendTransactionLines(batch);
+
+        long start = System.nanoTime();
+        DashboardCache cache = new DashboardCache(fm);
+        System.out.printf("Seeding recent activity from %,d lines: %,d ms%n", transactions, (System.nanoTime() - start) / 1_000_000);
+
+        // Old path: full users.txt rewrite plus the voucher count twice (notice + dashboard).
+        start = System.nanoTime();
+        for (int i = 0; i < logins; i++) {
+            UserAccount acc = population.get(rnd.nextInt(accounts));
+            fm.saveUsers(users);
+            fm.countUserVouchers(acc.getUsername());
+            fm.countUserVouchers(acc.getUsername());
+        }
+        double old = (System.nanoTime() - start) / 1e3 / logins;
+
+        start = System.nanoTime();
+        for (int i = 0; i < logins; i++) cache.get(population.get(rnd.nextInt(accounts)));
+        double cold = (System.nanoTime() - start) / 1e3 / logins;
+        for (UserAccount acc : population) cache.get(acc);
+        start = System.nanoTime();
+        for (int i = 0; i < logins; i++) cache.get(population.get(rnd.nextInt(accounts)));
+        double warm = (System.nanoTime() - start) / 1e3 / logins;
+
+        System.out.printf("Login, old path     : %,10.2f us%n", old);
+        System.out.printf("Login, cache miss   : %,10.2f us%n", cold);
+        System.out.printf("Login, cache hit    : %,10.2f us   (%,d hits, %,d misses)%n", warm, cache.getHits(), cache.getMisses());
+
+        // A deposit must be visible on the next dashboard.
+        UserAccount acc = population.get(0);
+        double before = cache.get(acc).balance;
+        acc.deposit(1);
+        fm.logTransaction(acc.getUsername(), "Deposit", 1);
+        DashboardCache.Summary after = cache.get(acc);
+        System.out.println("After a deposit: " + (after.balance == before + 1 && after.recent.get(0).contains("PHP 1.00") ? "refreshed" : "STALE"));
+    }
+}
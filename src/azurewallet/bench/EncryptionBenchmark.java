@@ -0,0 +1,111 @@
+package azurewallet.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.*;
+import azurewallet.models.UserAccount;
+import azurewallet.system.BinaryStorageEngine;
+import azurewallet.system.DataCipher;
+import azurewallet.system.StorageEngine;
+import azurewallet.system.TextStorageEngine;
+
+// Runs the same workload through the text and binary backends with and without a data
+// key: bulk save and load of users, one-line log appends (what every transaction does),
+// a full log scan, and random reads from the middle of the log. Each case runs a few
+// rounds so the JIT has compiled both paths; the last round is reported.
+// Run: java azurewallet.bench.EncryptionBenchmark [accounts] [appends]
+public class EncryptionBenchmark {
+    private static final int ROUNDS = 3;
+    private static final int RANDOM_READS = 200;
+
+    public static void main(String[] args) throws IOException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int appends = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        Path scratch = Files.createTempDirectory("azure-encryption-bench");
+        DataCipher encrypted = DataCipher.withKey(DataCipher.newKey());
+
+        List<UserAccount> population = new ArrayList<>(accounts);
+        Random rnd = new Random(42);
+        for (int i = 0; i < accounts; i++) {
+            population.add(new UserAccount("user" + i, "x", "09000000000", rnd.nextInt(100_000_00) / 100.0,
+                    rnd.nextInt(5000), rnd.nextInt(2_000_000), "Bronze", 0, 0, YearMonth.of(2025, 1)));
+        }
+        LocalDateTime t = LocalDateTime.of(2025, 1, 1, 0, 0);
+        List<String> lines = new ArrayList<>(appends);
+        for (int i = 0; i < appends; i++) {
+            lines.add(t.plusSeconds(i) + " - user" + (i % accounts) + ": Deposit - PHP " + (i % 5000) + ".00");
+        }
+
+        System.out.printf("Accounts: %,d  One-line appends: %,d%n", accounts, appends);
+        System.out.printf("%-16s %10s %10s %12s %10s %14s%n", "backend", "save ms", "load ms", "append us/op", "scan ms", "random read us");
+        int run = 0;
+        for (String kind : List.of("text", "binary")) {
+            for (DataCipher cipher : List.of(DataCipher.PLAINTEXT, encrypted)) {
+                double[] r = null;
+                for (int round = 0; round < ROUNDS; round++) {
+                    String dir = scratch.resolve("run" + run++) + "/";
+                    StorageEngine engine = kind.equals("text") ? new TextStorageEngine(dir, cipher) : new BinaryStorageEngine(dir, cipher);
+                    r = measure(engine, cipher, dir, kind, population, lines);
+                }
+                String label = kind + (cipher.isEnabled() ? " aes-gcm" : " plain");
+                System.out.printf("%-16s %10.1f %10.1f %12.2f %10.1f %14s  %s%n", label, r[0], r[1], r[2], r[3],
+                        r[4] < 0 ? "-" : String.format("%.1f", r[4]), r[5] == 1 ? "round-trip OK" : "MISMATCH");
+            }
+        }
+        byte[] sample = Files.readAllBytes(Paths.get(scratch.resolve("run" + (run - 1)) + "/users.bin"));
+        System.out.printf("Encrypted users.bin starts with \"%s\"; no usernames in clear: %s%n",
+                new String(sample, 0, 4, StandardCharsets.US_ASCII),
+                !new String(sample, StandardCharsets.ISO_8859_1).contains("user1"));
+    }
+
+    // save ms, load ms, append us/op, scan ms, random read us (text only), 1 if data matched
+    private static double[] measure(StorageEngine engine, DataCipher cipher, String dir, String kind,
+                                    List<UserAccount> population, List<String> lines) throws IOException {
+        long t0 = System.nanoTime();
+        engine.saveAccounts(population);
+        long save = System.nanoTime() - t0;
+
+        t0 = System.nanoTime();
+        Map<String, UserAccount> loaded = engine.loadAccounts();
+        long load = System.nanoTime() - t0;
+
+        t0 = System.nanoTime();
+        for (String line : lines) engine.append(StorageEngine.Log.TRANSACTIONS, List.of(line));
+        long append = System.nanoTime() - t0;
+
+        long[] scanned = {0};
+        t0 = System.nanoTime();
+        engine.forEach(StorageEngine.Log.TRANSACTIONS, l -> scanned[0]++);
+        long scan = System.nanoTime() - t0;
+
+        // Bulk-append the same lines so the log has full 64 KB records to skip over.
+        double randomRead = -1;
+        boolean readsOk = true;
+        if (kind.equals("text")) {
+            engine.append(StorageEngine.Log.TRANSACTIONS, lines);
+            Path log = Paths.get(dir + StorageEngine.Log.TRANSACTIONS.fileName + ".txt");
+            byte[] plain;
+            try (InputStream in = cipher.open(log)) {
+                plain = in.readAllBytes();
+            }
+            Random rnd = new Random(7);
+            byte[] buf = new byte[64];
+            t0 = System.nanoTime();
+            for (int i = 0; i < RANDOM_READS; i++) {
+                int offset = rnd.nextInt(plain.length - buf.length);
+                try (InputStream in = cipher.openAt(log, offset)) {
+                    int n = in.readNBytes(buf, 0, buf.length);
+                    readsOk &= n == buf.length && Arrays.equals(buf, 0, n, plain, offset, offset + n);
+                }
+            }
+            randomRead = (System.nanoTime() - t0) / 1e3 / RANDOM_READS;
+        }
+
+        boolean ok = readsOk && loaded.size() == population.size() && scanned[0] == lines.size();
+        return new double[] {save / 1e6, load / 1e6, append / 1e3 / lines.size(), scan / 1e6, randomRead, ok ? 1 : 0};
+    }
+}
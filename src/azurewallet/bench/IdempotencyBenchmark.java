@@ -0,0 +1,138 @@
+package azurewallet.bench;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.*;
+import azurewallet.models.UserAccount;
+import azurewallet.system.*;
+
+// Checks that keyed wallet requests move money exactly once however often they are retried:
+// several threads submit every request of a batch in their own order, then balances and
+// the transaction log are compared with a single run. Also measures a replayed answer
+// against a first execution, reloads the keys from disk, and exercises expiry and the size
+// bound. Uses a scratch directory.
+// Run: java azurewallet.bench.IdempotencyBenchmark [requests] [threads]
+public class IdempotencyBenchmark {
+    private static final int ACCOUNTS = 200;
+
+    private record Request(int sender, int recipient, double amount, String key) {}
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        String dir = Files.createTempDirectory("azure-idempotency-bench") + "/";
+        FileManager fm = new FileManager(dir, new TextStorageEngine(dir));
+        Map<String, UserAccount> users = new HashMap<>();
+        List<UserAccount> accounts = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            UserAccount acc = new UserAccount("user" + i, "x", "09000000000", 100_000, 0, 1_600_000, "Bronze", 0, 0, null);
+            acc.updateRank();
+            users.put(acc.getUsername(), acc);
+            accounts.add(acc);
+        }
+        InterestAccrual interest = new InterestAccrual(fm, users, null);
+        WalletOperations ops = new WalletOperations(fm, users, interest, new VelocityMonitor(fm),
+                new MerchantLedger(fm), new IdempotencyStore(fm));
+
+        // Every other request is a deposit (recipient -1), the rest transfers.
+        Random rnd = new Random(3);
+        List<Request> batch = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            int sender = rnd.nextInt(ACCOUNTS);
+            int recipient = i % 2 == 0 ? -1 : (sender + 1 + rnd.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+            batch.add(new Request(sender, recipient, 1 + rnd.nextInt(200), "req-" + i));
+        }
+        double before = total(accounts);
+
+        // Every copy of a request that ran or was replayed reports the same outcome; a copy
+        // that arrived while another was in flight is refused without effect.
+        Set<String> applied = ConcurrentHashMap.newKeySet();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> done = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            List<Request> mine = new ArrayList<>(batch);
+            Collections.shuffle(mine, new Random(t));
+            done.add(pool.submit(() -> {
+                for (Request r : mine) {
+                    if (run(ops, accounts, r).ok) applied.add(r.key);
+                    if (run(ops, accounts, r).ok) applied.add(r.key);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : done) f.get();
+        pool.shutdown();
+        long elapsed = System.nanoTime() - start;
+
+        long logLines = countLog(fm);
+        long expectedLines = batch.stream().filter(r -> applied.contains(r.key)).mapToLong(r -> r.recipient < 0 ? 1 : 2).sum();
+        double deposited = batch.stream().filter(r -> r.recipient < 0 && applied.contains(r.key)).mapToDouble(Request::amount).sum();
+        double moved = total(accounts) - before;
+        System.out.printf("Requests: %,d submitted %d times each on %d threads in %,d ms%n", requests, threads * 2, threads, elapsed / 1_000_000);
+        System.out.printf("Applied: %,d  Log lines: %,d (expected %,d)  Money: +%,.0f (deposits %,.0f)  %s%n",
+                applied.size(), logLines, expectedLines, moved, deposited,
+                logLines == expectedLines && Math.abs(moved - deposited) < 0.005 ? "exactly once" : "MISMATCH");
+
+        // First execution against a replay of the same keyed request, single-threaded.
+        int samples = Math.min(requests, 5_000);
+        long first = 0, replay = 0;
+        for (int i = 0; i < samples; i++) {
+            Request r = new Request(i % ACCOUNTS, -1, 1, "lat-" + i);
+            long t0 = System.nanoTime();
+            run(ops, accounts, r);
+            long t1 = System.nanoTime();
+            run(ops, accounts, r);
+            replay += System.nanoTime() - t1;
+            first += t1 - t0;
+        }
+        System.out.printf("First execution: %7.2f us  Replay: %5.2f us%n", first / 1e3 / samples, replay / 1e3 / samples);
+
+        // A restarted process must still recognise every key.
+        IdempotencyStore reloaded = new IdempotencyStore(fm);
+        WalletOperations restarted = new WalletOperations(fm, users, interest, new VelocityMonitor(fm), new MerchantLedger(fm), reloaded);
+        double beforeReplay = total(accounts);
+        for (Request r : batch) run(restarted, accounts, r);
+        System.out.printf("After reload: %,d keys, %,d replays, balances %s, log %s%n", reloaded.size(), reloaded.getReplays(),
+                total(accounts) == beforeReplay ? "unchanged" : "CHANGED", countLog(fm) == logLines + samples ? "unchanged" : "CHANGED");
+
+        // Expiry and the size bound, on a simulated clock.
+        AppClock.Simulated clock = new AppClock.Simulated(LocalDateTime.of(2025, 1, 1, 0, 0), ZoneId.systemDefault());
+        AppClock.use(clock);
+        String scratch = Files.createTempDirectory("azure-idempotency-bounds") + "/";
+        IdempotencyStore bounded = new IdempotencyStore(new FileManager(scratch, new TextStorageEngine(scratch)), Duration.ofHours(1), 1_000);
+        for (int i = 0; i < 5_000; i++) {
+            bounded.begin("user0", "k" + i, "deposit|1.0");
+            bounded.complete("user0", "k" + i, new IdempotencyStore.Outcome(true, "ok"));
+        }
+        boolean oldestGone = bounded.begin("user0", "k0", "deposit|1.0") == null;
+        System.out.printf("Size bound 1,000: holding %,d after 5,000 keys, %,d evicted, oldest %s%n",
+                bounded.size(), bounded.getEvicted(), oldestGone ? "forgotten" : "STILL HELD");
+        boolean held = bounded.begin("user0", "k4999", "deposit|1.0") != null;
+        clock.advance(Duration.ofMinutes(61));
+        boolean expired = bounded.begin("user0", "k4999", "deposit|1.0") == null;
+        System.out.println("TTL 1h: key " + (held ? "held" : "LOST") + " before, " + (expired ? "expired" : "STILL HELD") + " after");
+    }
+
+    private static IdempotencyStore.Outcome run(WalletOperations ops, List<UserAccount> accounts, Request r) {
+        UserAccount sender = accounts.get(r.sender);
+        return r.recipient < 0
+                ? ops.deposit(sender, r.amount, r.key)
+                : ops.sendMoney(sender, accounts.get(r.recipient).getUsername(), r.amount, r.key);
+    }
+
+    private static double total(List<UserAccount> accounts) {
+        double sum = 0;
+        for (UserAccount a : accounts) sum += a.getBalance();
+        return sum;
+    }
+
+    private static long countLog(FileManager fm) throws java.io.IOException {
+        long[] n = {0};
+        fm.forEachTransactionLine(line -> n[0]++);
+        return n[0];
+    }
+}
@@ -0,0 +1,60 @@
+package azurewallet.bench;
+
+import java.time.YearMonth;
+import java.util.*;
+import azurewallet.models.UserAccount;
+
+// Compares eager monthly interest (every account, every month) with lazy accrual
+// settled once per account. Run: java azurewallet.bench.InterestBenchmark [accounts] [months]
+public class InterestBenchmark {
+    private static final double[] TRANSACTED = {50_000, 250_000, 600_000, 1_500_000};
+
+    public static void main(String[] args) {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int months = args.length > 1 ? Integer.parseInt(args[1]) : 24;
+        YearMonth start = YearMonth.of(2025, 1);
+
+        List<UserAccount> eager = population(accounts, start, 42);
+        List<UserAccount> lazy = population(accounts, start, 42);
+
+        long t0 = System.nanoTime();
+        for (int m = 0; m < months; m++) {
+            for (UserAccount acc : eager) acc.applyMonthlyInterest();
+        }
+        long eagerNanos = System.nanoTime() - t0;
+
+        // Lazy ticks only move the open period; accounts settle on "access".
+        YearMonth open = start;
+        long t1 = System.nanoTime();
+        for (int m = 0; m < months; m++) open = open.plusMonths(1);
+        long tickNanos = System.nanoTime() - t1;
+
+        long t2 = System.nanoTime();
+        for (UserAccount acc : lazy) acc.accrueInterest(open);
+        long settleNanos = System.nanoTime() - t2;
+
+        double maxDiff = 0;
+        for (int i = 0; i < accounts; i++) {
+            maxDiff = Math.max(maxDiff, Math.abs(eager.get(i).getBalance() - lazy.get(i).getBalance()));
+        }
+
+        System.out.printf("Accounts: %,d  Months: %d%n", accounts, months);
+        System.out.printf("Eager  : %,.1f ms total, %,.1f ms per tick%n", eagerNanos / 1e6, eagerNanos / 1e6 / months);
+        System.out.printf("Lazy   : %,.3f us per tick, %,.1f ms to settle everyone once%n", tickNanos / 1e3 / months, settleNanos / 1e6);
+        System.out.printf("Max balance difference: %.10f%n", maxDiff);
+        System.out.println(maxDiff == 0.0 ? "Balances match." : "Balances DIFFER.");
+    }
+
+    private static List<UserAccount> population(int n, YearMonth start, long seed) {
+        Random rnd = new Random(seed);
+        List<UserAccount> list = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            double transacted = TRANSACTED[rnd.nextInt(TRANSACTED.length)];
+            UserAccount acc = new UserAccount("user" + i, "x", "09000000000",
+                    rnd.nextInt(100_000_00) / 100.0, 0, transacted, "Bronze", 0, 0, start);
+            acc.updateRank();
+            list.add(acc);
+        }
+        return list;
+    }
+}
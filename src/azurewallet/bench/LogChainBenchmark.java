@@ -0,0 +1,84 @@
+package azurewallet.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import azurewallet.system.FileManager;
+import azurewallet.system.LogChain;
+import azurewallet.system.StorageEngine;
+import azurewallet.system.TextStorageEngine;
+
+// Measures what hash-chaining costs and buys on the transaction log: append latency for a
+// chained log against an unchained one, full verification on 1..N threads, single-entry
+// proofs, and detection of one edited line. Uses a scratch directory.
+// Run: java azurewallet.bench.LogChainBenchmark [entries] [threads]
+public class LogChainBenchmark {
+    private static final int PROOFS = 1_000;
+
+    public static void main(String[] args) throws IOException {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        Path scratch = Files.createTempDirectory("azure-logchain-bench");
+        String dir = scratch + "/";
+        FileManager fm = new FileManager(dir, new TextStorageEngine(dir));
+
+        // The same one-line appends to the chained transaction log and to the unchained
+        // revenue log. Both are warmed up first.
+        List<String> sample = new ArrayList<>(entries);
+        LocalDateTime t = LocalDateTime.of(2025, 1, 1, 0, 0);
+        for (int i = 0; i < entries; i++) sample.add(fm.formatTransaction(t.plusSeconds(i), "user" + (i % 10_000), "Deposit", i % 5000));
+        for (int i = 0; i < 20_000; i++) {
+            fm.appendTransactionLines(List.of(sample.get(i)));
+            fm.getStorage().append(StorageEngine.Log.REVENUE, List.of(sample.get(i)));
+        }
+        long chained = 0, plain = 0;
+        for (int i = 0; i < entries; i++) {
+            List<String> one = List.of(sample.get(i));
+            long t0 = System.nanoTime();
+            fm.appendTransactionLines(one);
+            long t1 = System.nanoTime();
+            fm.getStorage().append(StorageEngine.Log.REVENUE, one);
+            plain += System.nanoTime() - t1;
+            chained += t1 - t0;
+        }
+        fm.closeLogs();
+
+        LogChain chain = fm.getChain(StorageEngine.Log.TRANSACTIONS);
+        System.out.printf("Entries: %,d  (%,d checkpoints)%n", chain.getSealed(), chain.getCheckpoints().size());
+        System.out.printf("Append, chained log   : %6.2f us/entry%n", chained / 1e3 / entries);
+        System.out.printf("Append, unchained log : %6.2f us/entry%n", plain / 1e3 / entries);
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            LogChain.Report r = chain.verify(threads);
+            System.out.printf("Verify on %d thread(s): %,6d ms  %s%n", threads, r.elapsedMillis, r.ok() ? "intact" : r.problems);
+            if (threads == maxThreads) break;
+            if (threads * 2 > maxThreads) threads = maxThreads / 2;
+        }
+
+        Random rnd = new Random(1);
+        List<String> lines = new ArrayList<>();
+        fm.forEachTransactionLine(lines::add);
+        int valid = 0, hashes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < PROOFS; i++) {
+            int index = rnd.nextInt(lines.size());
+            LogChain.Proof proof = chain.prove(index);
+            hashes += proof.hashes();
+            if (proof.verify(lines.get(index)) && !proof.verify(lines.get(index) + " ")) valid++;
+        }
+        long proofs = System.nanoTime() - start;
+        System.out.printf("Proofs: %,d valid of %,d, %.1f hashes and %.1f us each%n", valid, PROOFS, hashes / (double) PROOFS, proofs / 1e3 / PROOFS);
+
+        // Change the last digit of one amount in the middle of the log.
+        Path log = Paths.get(dir + StorageEngine.Log.TRANSACTIONS.fileName + ".txt");
+        String victim = lines.get(lines.size() / 2);
+        String edited = victim.substring(0, victim.length() - 1) + (victim.endsWith("9") ? "8" : "9");
+        List<String> all = Files.readAllLines(log, StandardCharsets.UTF_8);
+        all.set(all.indexOf(victim), edited);
+        Files.write(log, all, StandardCharsets.UTF_8);
+        LogChain.Report r = chain.verify(maxThreads);
+        System.out.println("After editing entry " + (lines.size() / 2 + 1) + ": " + (r.ok() ? "NOT DETECTED" : "detected - " + r.problems));
+    }
+}
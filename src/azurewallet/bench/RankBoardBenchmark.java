@@ -0,0 +1,100 @@
+package azurewallet.bench;
+
+import java.util.*;
+import azurewallet.models.AccountEvents;
+import azurewallet.models.Rank;
+import azurewallet.models.UserAccount;
+import azurewallet.system.AccountIndex;
+import azurewallet.system.RankBoard;
+
+// Measures what keeping tier counts and top-K leaderboards live costs per account change,
+// against answering the same questions with a population walk, and checks the live
+// answers against the walk after a mix of deposits, point awards and point redemptions.
+// Run: java azurewallet.bench.RankBoardBenchmark [accounts] [changes] [k]
+public class RankBoardBenchmark {
+
+    public static void main(String[] args) {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int changes = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        Map<String, UserAccount> users = new HashMap<>();
+        List<UserAccount> population = new ArrayList<>(accounts);
+        Random rnd = new Random(11);
+        for (int i = 0; i < accounts; i++) {
+            UserAccount acc = new UserAccount("user" + i, "x", "09000000000", 50_000, rnd.nextInt(500), rnd.nextInt(1_200_000), "Bronze", 0, 0, null);
+            acc.updateRank();
+            users.put(acc.getUsername(), acc);
+            population.add(acc);
+        }
+        long start = System.nanoTime();
+        RankBoard board = new RankBoard(users, k);
+        System.out.printf("Initial build over %,d accounts: %,d ms%n", accounts, (System.nanoTime() - start) / 1_000_000);
+
+        // Baseline: the same account changes with no listener registered.
+        long plain = run(population, changes, new Random(1));
+        AccountEvents.register(board);
+        long live = run(population, changes, new Random(2));
+        AccountEvents.unregister(board);
+        System.out.printf("Per change: %.3f us without the board, %.3f us with it (%,d rebuilds)%n",
+                plain / 1e3 / changes, live / 1e3 / changes, board.getRebuilds());
+
+        start = System.nanoTime();
+        long[] walked = new long[Rank.values().length];
+        for (UserAccount acc : users.values()) walked[Rank.of(acc.getRank()).ordinal()]++;
+        List<String> topTotal = walkTop(users.values(), AccountIndex.SortKey.TOTAL_TRANSACTED, k);
+        List<String> topPoints = walkTop(users.values(), AccountIndex.SortKey.POINTS, k);
+        long walk = System.nanoTime() - start;
+
+        long[] counted = new long[walked.length];
+        List<String> liveTotal = null, livePoints = null;
+        int reads = 10_000;
+        start = System.nanoTime();
+        for (int i = 0; i < reads; i++) {
+            for (Rank r : Rank.values()) counted[r.ordinal()] = board.count(r);
+            liveTotal = names(board.top(AccountIndex.SortKey.TOTAL_TRANSACTED));
+            livePoints = names(board.top(AccountIndex.SortKey.POINTS));
+        }
+        long read = (System.nanoTime() - start) / reads;
+
+        System.out.printf("Tiers + both top-%d: population walk %,.1f ms, live board %,.1f us%n", k, walk / 1e6, read / 1e3);
+        System.out.println("Tier counts " + Arrays.toString(counted) + (Arrays.equals(counted, walked) ? " match" : " MISMATCH " + Arrays.toString(walked)));
+        System.out.println("Top by total transacted " + (liveTotal.equals(topTotal) ? "matches" : "MISMATCH"));
+        System.out.println("Top by points " + (livePoints.equals(topPoints) ? "matches" : "MISMATCH"));
+        long up = 0;
+        for (Rank from : Rank.values()) for (Rank to : Rank.values()) up += board.transitions(from, to);
+        System.out.printf("Rank transitions seen: %,d%n", up);
+    }
+
+    // Deposits raise total transacted (and may cross a tier); points are earned and redeemed.
+    private static long run(List<UserAccount> population, int changes, Random rnd) {
+        long start = System.nanoTime();
+        for (int i = 0; i < changes; i++) {
+            UserAccount acc = population.get(rnd.nextInt(population.size()));
+            switch (rnd.nextInt(3)) {
+                case 0 -> acc.addTotalTransacted(rnd.nextInt(5_000));
+                case 1 -> acc.addPoints(rnd.nextInt(5));
+                default -> {
+                    int pts = Math.min(acc.getPoints(), rnd.nextInt(20));
+                    if (pts > 0) acc.redeemPoints(pts, 0);
+                }
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static List<String> walkTop(Collection<UserAccount> all, AccountIndex.SortKey key, int k) {
+        List<UserAccount> sorted = new ArrayList<>(all);
+        Comparator<UserAccount> byValue = Comparator.comparingDouble(a -> key == AccountIndex.SortKey.POINTS ? a.getPoints() : a.getTotalTransacted());
+        sorted.sort(byValue.reversed().thenComparing(UserAccount::getUsername));
+        List<String> out = new ArrayList<>(k);
+        for (int i = 0; i < k && i < sorted.size(); i++) out.add(sorted.get(i).getUsername());
+        return out;
+    }
+
+    private static List<String> names(List<RankBoard.Entry> entries) {
+        List<String> out = new ArrayList<>(entries.size());
+        for (RankBoard.Entry e : entries) out.add(e.username);
+        return out;
+    }
+}
@@ -0,0 +1,56 @@
+package azurewallet.bench;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.*;
+import azurewallet.models.UserAccount;
+import azurewallet.system.FileManager;
+import azurewallet.system.InMemoryStorageEngine;
+import azurewallet.system.StatementGenerator;
+import azurewallet.system.StorageEngine;
+import azurewallet.system.StorageEngines;
+
+// Generates a month of statements for a synthetic population whose logs span several
+// months, then checks one account's opening balance against a naive replay.
+// Run: java azurewallet.bench.StatementBenchmark [accounts] [transactionsPerAccount]
+public class StatementBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int perAccount = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        StorageEngine storage = new InMemoryStorageEngine();
+        FileManager fm = new FileManager(StorageEngines.dataDir(), storage);
+
+        Random rnd = new Random(11);
+        double[] balances = new double[accounts];
+        double[] beforeTarget = new double[accounts];
+        YearMonth target = YearMonth.of(2025, 3);
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 0, 0);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < accounts; i++) {
+            for (int k = 0; k < perAccount; k++) {
+                LocalDateTime t = start.plusMinutes(rnd.nextInt(6 * 30 * 24 * 60));
+                double amount = 1 + rnd.nextInt(5000);
+                boolean deposit = balances[i] < amount + 15 || rnd.nextBoolean();
+                double delta = deposit ? amount : -(amount + 15);
+                // Lines are written in random order; the generator must not care.
+                lines.add(fm.formatTransaction(t, "user" + i, deposit ? "Deposit" : "Withdraw", amount));
+                balances[i] += delta;
+                if (YearMonth.from(t).isBefore(target)) beforeTarget[i] += delta;
+            }
+        }
+        storage.append(StorageEngine.Log.TRANSACTIONS, lines);
+        Map<String, UserAccount> users = new HashMap<>();
+        for (int i = 0; i < accounts; i++) {
+            users.put("user" + i, new UserAccount("user" + i, "x", "09000000000", balances[i], 0, 0, "Bronze", 0, 0, null));
+        }
+
+        StatementGenerator.Result result = new StatementGenerator(fm, users).generate(target);
+        System.out.printf("Accounts: %,d  Log lines: %,d%n", accounts, result.linesRead);
+        System.out.printf("%,d statements for %s in %,d ms (%s)%n", result.statements, target, result.elapsedMillis, result.directory);
+
+        String statement = fm.loadDocument("statements/" + target + "/user0.txt");
+        String opening = statement.lines().filter(l -> l.startsWith("Opening")).findFirst().orElse("");
+        System.out.println("user0 " + opening.trim() + "  (replay: PHP " + String.format("%,.2f", beforeTarget[0]) + ")");
+    }
+}
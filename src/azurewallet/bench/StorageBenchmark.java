@@ -0,0 +1,68 @@
+package azurewallet.bench;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.*;
+import azurewallet.models.UserAccount;
+import azurewallet.system.StorageEngine;
+import azurewallet.system.StorageEngines;
+
+// Saves, loads and scans the same data through each storage backend and checks that
+// what comes back matches. Uses a scratch directory, never the live data directory.
+// Run: java azurewallet.bench.StorageBenchmark [accounts] [logLines]
+public class StorageBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int logLines = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        Path scratch = Files.createTempDirectory("azure-storage-bench");
+
+        List<UserAccount> population = population(accounts, 42);
+        List<String> lines = new ArrayList<>(logLines);
+        LocalDateTime t = LocalDateTime.of(2025, 1, 1, 0, 0);
+        for (int i = 0; i < logLines; i++) {
+            lines.add(t.plusSeconds(i) + " - user" + (i % accounts) + ": Deposit - PHP " + (i % 5000) + ".00");
+        }
+        double expected = population.stream().mapToDouble(UserAccount::getBalance).sum();
+
+        System.out.printf("Accounts: %,d  Log lines: %,d%n", accounts, logLines);
+        System.out.printf("%-8s %12s %12s %12s %12s%n", "backend", "save ms", "load ms", "append ms", "scan ms");
+        for (String kind : List.of("text", "binary", "memory")) {
+            StorageEngine engine = StorageEngines.create(kind, scratch.resolve(kind) + "/");
+
+            long t0 = System.nanoTime();
+            engine.saveAccounts(population);
+            long save = System.nanoTime() - t0;
+
+            t0 = System.nanoTime();
+            Map<String, UserAccount> loaded = engine.loadAccounts();
+            long load = System.nanoTime() - t0;
+
+            t0 = System.nanoTime();
+            engine.append(StorageEngine.Log.TRANSACTIONS, lines);
+            long append = System.nanoTime() - t0;
+
+            long[] scanned = {0};
+            t0 = System.nanoTime();
+            engine.forEach(StorageEngine.Log.TRANSACTIONS, l -> scanned[0]++);
+            long scan = System.nanoTime() - t0;
+
+            double total = loaded.values().stream().mapToDouble(UserAccount::getBalance).sum();
+            boolean ok = loaded.size() == accounts && scanned[0] == logLines && Math.abs(total - expected) < 0.005;
+            System.out.printf("%-8s %12.1f %12.1f %12.1f %12.1f  %s%n", kind,
+                    save / 1e6, load / 1e6, append / 1e6, scan / 1e6, ok ? "round-trip OK" : "MISMATCH");
+        }
+    }
+
+    private static List<UserAccount> population(int n, long seed) {
+        Random rnd = new Random(seed);
+        List<UserAccount> list = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            list.add(new UserAccount("user" + i, "x", "09000000000", rnd.nextInt(100_000_00) / 100.0,
+                    rnd.nextInt(5000), rnd.nextInt(2_000_000), "Bronze", 0, 0, YearMonth.of(2025, 1)));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,42 @@
+package azurewallet.bench;
+
+import java.util.*;
+import azurewallet.models.UserAccount;
+import azurewallet.system.FileManager;
+import azurewallet.system.InMemoryStorageEngine;
+import azurewallet.system.StorageEngines;
+import azurewallet.system.VelocityMonitor;
+
+// Measures the latency velocity checks add to each send/withdraw under the default rules.
+// Run: java azurewallet.bench.VelocityBenchmark [accounts] [transactions]
+public class VelocityBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int transactions = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+        VelocityMonitor monitor = new VelocityMonitor(new FileManager(StorageEngines.dataDir(), new InMemoryStorageEngine()));
+
+        List<UserAccount> population = new ArrayList<>(accounts);
+        for (int i = 0; i < accounts; i++) {
+            UserAccount acc = new UserAccount("user" + i, "x", "09000000000", 1_000_000, 0, (i % 4) * 400_000.0, "Bronze", 0, 0, null);
+            acc.updateRank();
+            population.add(acc);
+        }
+
+        Random rnd = new Random(7);
+        long blocked = 0;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < transactions; i++) {
+            // Skewed: a tenth of the traffic hammers 100 accounts so rules actually trip.
+            UserAccount acc = rnd.nextInt(10) == 0 ? population.get(rnd.nextInt(100)) : population.get(rnd.nextInt(accounts));
+            VelocityMonitor.Op op = rnd.nextInt(4) == 0 ? VelocityMonitor.Op.WITHDRAW : VelocityMonitor.Op.SEND;
+            if (monitor.admit(acc, op, 1, 100 + rnd.nextInt(5000)) != null) blocked++;
+        }
+        long nanos = System.nanoTime() - t0;
+
+        System.out.printf("Accounts: %,d  Transactions: %,d  Blocked: %,d%n", accounts, transactions, blocked);
+        System.out.printf("Throughput: %,.0f checks/s%n", transactions / (nanos / 1e9));
+        System.out.printf("Added latency: p50 %.1f us, p99 %.1f us, p99.9 %.1f us%n",
+                monitor.latencyPercentileMicros(50), monitor.latencyPercentileMicros(99), monitor.latencyPercentileMicros(99.9));
+    }
+}
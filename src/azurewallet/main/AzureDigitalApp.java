@@ -1,9 +1,22 @@
 package azurewallet.main;
 
+import azurewallet.models.AccountEvents;
 import azurewallet.models.UserAccount;
-import azurewallet.models.VoucherSystem;
 import azurewallet.system.FileManager;
+import azurewallet.system.AccountIndex;
 import azurewallet.system.AdminControl;
+import azurewallet.system.BatchTransfer;
+import azurewallet.system.CompactionService;
+import azurewallet.system.DashboardCache;
+import azurewallet.system.IdempotencyStore;
+import azurewallet.system.InterestAccrual;
+import azurewallet.system.LoginThrottle;
+import azurewallet.system.MerchantLedger;
+import azurewallet.system.OperationProfiler;
+import azurewallet.system.RankBoard;
+import azurewallet.system.ReplicationServer;
+import azurewallet.system.VelocityMonitor;
+import azurewallet.system.WalletOperations;
 import java.util.*;
 import java.text.DecimalFormat;
 
@@ -11,15 +24,67 @@ public class AzureDigitalApp {
     private final FileManager fileManager;
     private final Map<String, UserAccount> users;
     private final BackgroundScheduler scheduler;
+    private final InterestAccrual interest;
+    private final LoginThrottle throttle;
+    private final MerchantLedger merchants;
+    private final AccountIndex accountIndex;
+    private final DashboardCache dashboard;
+    private final RankBoard rankBoard;
+    private final VelocityMonitor velocity;
+    private final CompactionService compaction;
+    private final WalletOperations operations;
+    private ReplicationServer replication;
     private final Scanner sc = new Scanner(System.in);
     private final DecimalFormat df = new DecimalFormat("#,##0.00");
-    private static final double WITHDRAW_FEE = 15.0;
+    public static final double WITHDRAW_FEE = 15.0;
+    private static final long LOCK_FLUSH_SECONDS = 30;
+    private static final long VELOCITY_EVICT_SECONDS = 3600;
+    private static final long COMPACTION_CHECK_SECONDS = 3600;
+    private static final long LOG_SEAL_SECONDS = 5;
+    private static final long IDEMPOTENCY_PURGE_SECONDS = 300;
+    private static final int LEADERBOARD_SIZE = 10;
 
     public AzureDigitalApp() {
+        this(0);
+    }
+
+    // replicationPort > 0 also serves read replicas on that port.
+    public AzureDigitalApp(int replicationPort) {
         fileManager = new FileManager();
         users = fileManager.loadUsers();
+        throttle = new LoginThrottle(fileManager);
+        accountIndex = new AccountIndex(users);
+        AccountEvents.register(accountIndex);
+        dashboard = new DashboardCache(fileManager);
+        AccountEvents.register(dashboard);
+        rankBoard = new RankBoard(users, LEADERBOARD_SIZE);
+        AccountEvents.register(rankBoard);
+        if (replicationPort > 0) {
+            replication = new ReplicationServer(users, fileManager, replicationPort);
+            AccountEvents.register(replication);
+            try {
+                replication.start();
+            } catch (java.io.IOException e) {
+                System.out.println("Could not start replication on port " + replicationPort + ": " + e.getMessage());
+            }
+        }
         scheduler = new BackgroundScheduler(fileManager, users);
-        scheduler.runScheduler();
+        interest = scheduler.getInterestAccrual();
+        merchants = new MerchantLedger(fileManager);
+        velocity = new VelocityMonitor(fileManager);
+        scheduler.addDailyJob("merchant-settlement", merchants::settle);
+        scheduler.scheduleMaintenance("merchant-flush", merchants::flush, 60);
+        scheduler.scheduleMaintenance("lock-flush", () -> {
+            if (throttle.flushDirty()) fileManager.saveUsers(users);
+        }, LOCK_FLUSH_SECONDS);
+        scheduler.scheduleMaintenance("velocity-evict", velocity::evictIdle, VELOCITY_EVICT_SECONDS);
+        compaction = new CompactionService(fileManager.getStorage());
+        scheduler.scheduleMaintenance("compaction", compaction::compactIfNeeded, COMPACTION_CHECK_SECONDS);
+        scheduler.scheduleMaintenance("log-seal", fileManager::sealLogs, LOG_SEAL_SECONDS);
+        IdempotencyStore idempotency = new IdempotencyStore(fileManager);
+        operations = new WalletOperations(fileManager, users, interest, velocity, merchants, idempotency);
+        scheduler.scheduleMaintenance("idempotency-purge", idempotency::purge, IDEMPOTENCY_PURGE_SECONDS);
+        scheduler.start();
     }
 
     public void start() {
@@ -38,7 +103,11 @@ public class AzureDigitalApp {
                 case "1" -> userMainMenu();
                 case "2" -> adminMenu();
                 case "0" -> {
+                    scheduler.shutdown();
+                    if (replication != null) replication.stop();
+                    merchants.flush();
                     fileManager.saveUsers(users);
+                    fileManager.closeLogs();
                     System.out.println("System exited successfully.");
                     return;
                 }
@@ -60,7 +129,7 @@ public class AzureDigitalApp {
             String choice = sc.nextLine();
 
             switch (choice.toUpperCase()) {
-                case "1" -> register();
+                case "1" -> profiled("register", this::register);
                 case "2" -> login();
                 case "0", "B" -> { return; }
                 default -> System.out.println("Invalid choice.");
@@ -98,7 +167,9 @@ public class AzureDigitalApp {
         }
 
         UserAccount newUser = new UserAccount(username, pin, mobile);
+        interest.accrue(newUser);
         users.put(username, newUser);
+        AccountEvents.changed(newUser);
         fileManager.saveUsers(users);
         System.out.println("Registration successful.");
     }
@@ -113,41 +184,71 @@ public class AzureDigitalApp {
         }
 
         UserAccount acc = users.get(username);
-        if (acc.isLocked()) {
-            long minsLeft = (acc.getLockEndTime() - System.currentTimeMillis()) / 60000;
-            System.out.println("Account is locked. Try again in " + Math.max(minsLeft, 1) + " minute(s).");
+        long lockMillis = throttle.remainingLock(acc, null);
+        if (lockMillis > 0) {
+            System.out.println("Account is locked. Try again in " + Math.max(lockMillis / 60000, 1) + " minute(s).");
             return;
         }
 
         System.out.print("Enter PIN: ");
         String pin = sc.nextLine().trim();
         if (!acc.verifyPin(pin)) {
-            acc.registerFailedAttempt();
-            fileManager.saveUsers(users);
+            if (throttle.recordFailure(acc, null)) {
+                System.out.println("Too many failed attempts. Account locked temporarily.");
+            }
             System.out.println("Incorrect PIN.");
             return;
         }
 
-        acc.resetLock();
-        fileManager.saveUsers(users);
-        acc.viewVoucherNotification(fileManager);
+        // A lock reset is persisted by the lock-flush task; only credited interest is
+        // worth a write here, and that happens at most once a month per account.
+        throttle.recordSuccess(acc);
+        if (interest.accrue(acc) > 0) fileManager.saveUsers(users);
 
-        showUserDashboard(acc);
+        DashboardCache.Summary summary = dashboard.get(acc);
+        if (summary.vouchers > 0) {
+            System.out.println("You have " + summary.vouchers + " available voucher(s).");
+        }
+        showUserDashboard(summary);
         userMenu(acc);
     }
 
-    private void showUserDashboard(UserAccount acc) {
+    private void showUserDashboard(DashboardCache.Summary s) {
         System.out.println("\n+==================================================+");
         System.out.println("|                  USER DASHBOARD                  |");
         System.out.println("+==================================================+");
-        System.out.printf("| Username : %-35s   |\n", acc.getUsername());
-        System.out.printf("| Rank     : %-35s   |\n", acc.getRank());
-        System.out.printf("| Balance  : PHP %-30s    |\n", df.format(acc.getBalance()));
-        System.out.printf("| Points   : %-35d   |\n", acc.getPoints());
-        System.out.printf("| Vouchers : %-35d   |\n", fileManager.countUserVouchers(acc.getUsername()));
+        System.out.printf("| Username : %-35s   |\n", s.username);
+        System.out.printf("| Rank     : %-35s   |\n", s.rank);
+        System.out.printf("| Balance  : PHP %-30s    |\n", df.format(s.balance));
+        System.out.printf("| Points   : %-35d   |\n", s.points);
+        System.out.printf("| Vouchers : %-35d   |\n", s.vouchers);
+        if (!s.recent.isEmpty()) {
+            System.out.println("+--------------------------------------------------+");
+            System.out.println("| Recent activity                                  |");
+            for (String entry : s.recent) System.out.printf("|  %-46s  |\n", fit(entry, 46));
+        }
         System.out.println("+==================================================+");
     }
 
+    // Shortens the description rather than the amount when an entry is too wide.
+    private static String fit(String entry, int width) {
+        if (entry.length() <= width) return entry;
+        int amount = entry.lastIndexOf(" - PHP ");
+        if (amount < 0 || entry.length() - amount + 2 > width) return entry.substring(0, width);
+        int keep = width - (entry.length() - amount) - 2;
+        return entry.substring(0, keep) + ".." + entry.substring(amount);
+    }
+
+    // Charges everything the menu action allocates (prompts included) to one operation.
+    private void profiled(String op, Runnable action) {
+        long mark = OperationProfiler.begin();
+        try {
+            action.run();
+        } finally {
+            OperationProfiler.end(op, mark);
+        }
+    }
+
     private void userMenu(UserAccount acc) {
         while (true) {
             System.out.println("\n+==================================================+");
@@ -162,21 +263,23 @@ public class AzureDigitalApp {
             System.out.println("| [7] View Balance                                 |");
             System.out.println("| [8] View Transactions                            |");
             System.out.println("| [9] View My Vouchers                             |");
+            System.out.println("| [10] Batch Send (many recipients)                |");
             System.out.println("| [0/B] Logout                                     |");
             System.out.println("+--------------------------------------------------+");
             System.out.print("Choose: ");
             String ch = sc.nextLine();
 
             switch (ch.toUpperCase()) {
-                case "1" -> deposit(acc);
-                case "2" -> withdraw(acc);
-                case "3" -> payOnline(acc);
-                case "4" -> sendMoney(acc);
-                case "5" -> redeemVoucher(acc);
-                case "6" -> redeemPoints(acc);
+                case "1" -> profiled("deposit", () -> deposit(acc));
+                case "2" -> profiled("withdraw", () -> withdraw(acc));
+                case "3" -> profiled("payOnline", () -> payOnline(acc));
+                case "4" -> profiled("sendMoney", () -> sendMoney(acc));
+                case "5" -> profiled("redeemVoucher", () -> redeemVoucher(acc));
+                case "6" -> profiled("redeemPoints", () -> redeemPoints(acc));
                 case "7" -> acc.displayBalance();
-                case "8" -> fileManager.showTransactions(acc.getUsername());
+                case "8" -> profiled("showTransactions", () -> fileManager.showTransactions(acc.getUsername()));
                 case "9" -> acc.viewMyVouchers(fileManager);              // <-- ensured here
+                case "10" -> profiled("batchSend", () -> batchSend(acc));
                 case "0", "B" -> {
                     fileManager.saveUsers(users);
                     System.out.println("Logged out successfully.");
@@ -201,27 +304,7 @@ public class AzureDigitalApp {
         double amount = Double.parseDouble(input);
         if (!confirmAction()) return;
 
-        String prevRank = acc.getRank();
-        if (acc.getBalance() + amount > acc.getDepositLimit()) {
-            System.out.println("Deposit exceeds your rank limit of PHP " + df.format(acc.getDepositLimit()));
-            return;
-        }
-
-        acc.deposit(amount);
-        acc.addTotalTransacted(amount);
-        checkRankUp(acc, prevRank);
-
-        fileManager.logTransaction(acc.getUsername(), "Deposit", amount);
-
-        int pointsEarned = (int) (amount / 1000);
-        if (pointsEarned > 0) {
-            acc.addPoints(pointsEarned);
-            fileManager.logPoints(acc.getUsername(), "earned", pointsEarned, "from deposit");
-            System.out.println("You earned " + pointsEarned + " points from this deposit!");
-        }
-
-        fileManager.saveUsers(users);
-        System.out.println("Deposit successful. Balance: PHP " + df.format(acc.getBalance()));
+        System.out.println(operations.deposit(acc, amount, null).message);
     }
 
     private void withdraw(UserAccount acc) {
@@ -232,16 +315,24 @@ public class AzureDigitalApp {
         double amount = Double.parseDouble(input);
         if (!confirmAction()) return;
 
-        if (amount <= 0 || amount > acc.getWithdrawLimit()) {
-            System.out.println("Invalid or exceeds limit (" + df.format(acc.getWithdrawLimit()) + ")");
-            return;
-        }
         double totalAmount = amount + WITHDRAW_FEE;
-        if (totalAmount > acc.getBalance()) {
-            System.out.println("Insufficient balance including fee of PHP 15.00.");
-            return;
+        synchronized (acc) {
+            interest.accrue(acc);
+            if (amount <= 0 || amount > acc.getWithdrawLimit()) {
+                System.out.println("Invalid or exceeds limit (" + df.format(acc.getWithdrawLimit()) + ")");
+                return;
+            }
+            if (totalAmount > acc.getBalance()) {
+                System.out.println("Insufficient balance including fee of PHP 15.00.");
+                return;
+            }
+            String velocityProblem = velocity.admit(acc, VelocityMonitor.Op.WITHDRAW, 1, amount);
+            if (velocityProblem != null) {
+                System.out.println("Withdrawal blocked. " + velocityProblem);
+                return;
+            }
+            acc.withdraw(totalAmount);
         }
-        acc.withdraw(totalAmount);
         fileManager.logTransaction(acc.getUsername(), "Withdraw", amount);
         fileManager.logSystemRevenue(WITHDRAW_FEE);
         fileManager.saveUsers(users);
@@ -257,18 +348,7 @@ public class AzureDigitalApp {
         double amount = Double.parseDouble(sc.nextLine());
         if (!confirmAction()) return;
 
-        if (amount <= 0 || amount > acc.getSendLimit()) {
-            System.out.println("Invalid or exceeds limit (" + df.format(acc.getSendLimit()) + ")");
-            return;
-        }
-        if (amount > acc.getBalance()) {
-            System.out.println("Insufficient balance.");
-            return;
-        }
-        acc.withdraw(amount);
-        fileManager.logTransaction(acc.getUsername(), "Paid to " + merchant, amount);
-        fileManager.saveUsers(users);
-        System.out.println("Payment of PHP " + df.format(amount) + " to " + merchant + " successful.");
+        System.out.println(operations.payOnline(acc, merchant, amount, null).message);
     }
 
     private void sendMoney(UserAccount acc) {
@@ -285,22 +365,35 @@ public class AzureDigitalApp {
         double amount = Double.parseDouble(sc.nextLine());
         if (!confirmAction()) return;
 
-        if (amount <= 0 || amount > acc.getSendLimit()) {
-            System.out.println("Invalid or exceeds limit (" + df.format(acc.getSendLimit()) + ")");
-            return;
-        }
-        if (amount > acc.getBalance()) {
-            System.out.println("Insufficient balance.");
+        System.out.println(operations.sendMoney(acc, recipient, amount, null).message);
+    }
+
+    private void batchSend(UserAccount acc) {
+        System.out.println("Enter a file path with one 'recipient,amount' per line,");
+        System.out.print("or recipients inline as 'user:amount, user:amount' (0/B to go back): ");
+        String input = sc.nextLine().trim();
+        if (input.equalsIgnoreCase("0") || input.equalsIgnoreCase("B")) return;
+
+        List<BatchTransfer.Leg> legs;
+        try {
+            legs = new java.io.File(input).isFile() ? BatchTransfer.readLegs(input) : BatchTransfer.parseLegs(input);
+        } catch (java.io.IOException e) {
+            System.out.println("Could not read batch file.");
             return;
         }
+        double total = legs.stream().mapToDouble(l -> Double.isNaN(l.amount) ? 0 : l.amount).sum();
+        System.out.println(legs.size() + " recipient(s), total PHP " + df.format(total));
+        if (!confirmAction()) return;
 
-        UserAccount receiver = users.get(recipient);
-        acc.withdraw(amount);
-        receiver.deposit(amount);
-        fileManager.logTransaction(acc.getUsername(), "Sent to " + recipient, amount);
-        fileManager.logTransaction(recipient, "Received from " + acc.getUsername(), amount);
-        fileManager.saveUsers(users);
-        System.out.println("Successfully sent PHP " + df.format(amount) + " to " + recipient + ".");
+        BatchTransfer.Result result = new BatchTransfer(fileManager, users, interest, velocity).execute(acc, legs);
+        for (BatchTransfer.Leg leg : result.legs) {
+            System.out.printf("  %-20s PHP %-14s %s%n", leg.recipient, Double.isNaN(leg.amount) ? "?" : df.format(leg.amount), leg.status);
+        }
+        if (result.applied) {
+            System.out.println("Batch sent. PHP " + df.format(result.total) + " to " + result.legs.size() + " recipient(s). Balance: PHP " + df.format(acc.getBalance()));
+        } else {
+            System.out.println("Batch rejected. No money was moved.");
+        }
     }
 
     private void redeemVoucher(UserAccount acc) {
@@ -309,13 +402,7 @@ public class AzureDigitalApp {
         if (code.equalsIgnoreCase("0") || code.equalsIgnoreCase("B")) return;
         if (!confirmAction()) return;
 
-        double value = VoucherSystem.redeemVoucher(acc, code, fileManager);
-        if (value > 0) {
-            fileManager.saveUsers(users);
-            System.out.println("Voucher redeemed successfully! +PHP " + df.format(value));
-        } else {
-            System.out.println("Invalid or expired voucher.");
-        }
+        System.out.println(operations.redeemVoucher(acc, code, null).message);
     }
 
     private void redeemPoints(UserAccount acc) {
@@ -325,26 +412,23 @@ public class AzureDigitalApp {
         if (!confirmAction()) return;
 
         int pts = Integer.parseInt(input);
-        if (pts <= 0 || pts > acc.getPoints()) {
-            System.out.println("Invalid points.");
-            return;
-        }
         double value = pts * 1.0;
-        acc.redeemPoints(pts, value);
+        synchronized (acc) {
+            interest.accrue(acc);
+            if (pts <= 0 || pts > acc.getPoints()) {
+                System.out.println("Invalid points.");
+                return;
+            }
+            acc.redeemPoints(pts, value);
+        }
         fileManager.logPoints(acc.getUsername(), "redeemed", pts, "converted to PHP " + df.format(value));
         fileManager.saveUsers(users);
         System.out.println("Redeemed " + pts + " points = PHP " + df.format(value));
     }
 
     private void adminMenu() {
-        AdminControl admin = new AdminControl(fileManager, users, scheduler);
+        AdminControl admin = new AdminControl(fileManager, users, scheduler, merchants, accountIndex, velocity, compaction, rankBoard);
         admin.menu(sc);
     }
 
-    // Helper for rank-up notification
-    private void checkRankUp(UserAccount acc, String prevRank) {
-        if (!acc.getRank().equals(prevRank)) {
-            System.out.println("Congratulations! Your account rank has been upgraded to " + acc.getRank() + "!");
-        }
-    }
-}
\ No newline at end of file
+}
@@ -1,42 +1,183 @@
 package azurewallet.main;
 
 import java.time.LocalDate;
-import java.util.Map;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
 import azurewallet.models.UserAccount;
 import azurewallet.models.VoucherSystem;
+import azurewallet.system.AppClock;
+import azurewallet.system.CampaignEngine;
 import azurewallet.system.FileManager;
+import azurewallet.system.InterestAccrual;
+import azurewallet.system.LedgerReconciler;
 
 public class BackgroundScheduler {
+    private static final long TICK_MINUTES = 60;
+    private static final long TRICKLE_MINUTES = 5;
+    private static final int TRICKLE_BATCH = 1000;
+
     private final FileManager fileManager;
     private final Map<String, UserAccount> users;
-    private LocalDate lastRunDate;
+    private final List<Job> jobs = new ArrayList<>();
+    private final Map<String, String> lastRuns;
+    private final ScheduledExecutorService executor;
+    private final InterestAccrual interestAccrual;
+    private final CampaignEngine campaigns;
 
     public BackgroundScheduler(FileManager fileManager, Map<String, UserAccount> users) {
         this.fileManager = fileManager;
         this.users = users;
-        this.lastRunDate = LocalDate.now().minusDays(1);
+        this.lastRuns = fileManager.loadSchedulerState();
+        String openInterest = lastRuns.get("interest");
+        this.interestAccrual = new InterestAccrual(fileManager, users, openInterest == null ? null : YearMonth.parse(openInterest));
+        this.campaigns = new CampaignEngine(fileManager, users);
+        // clearAllData() has emptied the saved state; forget the copy held here as well.
+        fileManager.addClearListener(lastRuns::clear);
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "azure-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+
+        // Opening the latest month is enough for interest, accounts settle every missed
+        // month lazily. Campaign vouchers expire a month or so after their issue day, so
+        // campaigns only catch up the last 31 days.
+        jobs.add(new Job("interest", Cadence.MONTHLY, 1, d -> interestAccrual.openPeriod(YearMonth.from(d))));
+        jobs.add(new Job("campaigns", Cadence.DAILY, 31, campaigns::runDay));
+        jobs.add(new Job("voucher-expiry", Cadence.DAILY, 1, d -> VoucherSystem.purgeExpiredVouchers()));
+        jobs.add(new Job("reconciliation", Cadence.DAILY, 1,
+                d -> fileManager.saveReconciliationReport(new LedgerReconciler(fileManager, users).reconcile())));
+    }
+
+    // Starts the daemon; the first tick runs immediately so missed periods are caught up on boot.
+    public void start() {
+        executor.scheduleAtFixedRate(this::tick, 0, TICK_MINUTES, TimeUnit.MINUTES);
+        scheduleMaintenance("interest-trickle", this::trickleInterest, TRICKLE_MINUTES * 60);
+    }
+
+    // Registers an extra once-a-day job; call before start().
+    public void addDailyJob(String name, Consumer<LocalDate> action) {
+        jobs.add(new Job(name, Cadence.DAILY, 1, action));
+    }
+
+    // Drops a calendar job before it runs; the simulator reconciles once at the end instead.
+    public void removeJob(String name) {
+        jobs.removeIf(j -> j.name.equals(name));
+    }
+
+    // Periodic housekeeping that is not tied to a calendar period (batched flushes, trickles).
+    public void scheduleMaintenance(String name, Runnable task, long periodSeconds) {
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.out.println("Maintenance task '" + name + "' failed: " + e.getMessage());
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
     }
 
+    public InterestAccrual getInterestAccrual() { return interestAccrual; }
+
+    public CampaignEngine getCampaigns() { return campaigns; }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Runs any due jobs on the scheduler thread and waits for them (used by the admin panel).
     public void runScheduler() {
-        LocalDate today = LocalDate.now();
-        if (!today.equals(lastRunDate)) {
-            applyMonthlyInterest();
-            VoucherSystem.generateMonthlyVouchers(users);
-            fileManager.logSchedulerRun();
-            lastRunDate = today;
-        }
-    }
-
-    private void applyMonthlyInterest() {
-        for (UserAccount acc : users.values()) {
-            double before = acc.getBalance();
-            acc.applyMonthlyInterest();
-            double added = acc.getBalance() - before;
-            if (added > 0) {
-                fileManager.logInterest(acc.getUsername(), added);
+        try {
+            executor.submit(this::tick).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.out.println("Scheduler run failed: " + e.getCause());
+        }
+    }
+
+    private void tick() {
+        LocalDate today = AppClock.today();
+        for (Job job : jobs) {
+            try {
+                runDuePeriods(job, today);
+            } catch (RuntimeException e) {
+                System.out.println("Scheduler job '" + job.name + "' failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void runDuePeriods(Job job, LocalDate today) {
+        for (LocalDate period : job.duePeriods(lastRuns.get(job.name), today)) {
+            job.action.accept(period);
+            lastRuns.put(job.name, job.cadence.key(period));
+            fileManager.saveSchedulerState(lastRuns);
+            fileManager.logSchedulerRun(job.name, job.cadence.key(period));
+        }
+    }
+
+    private void trickleInterest() {
+        if (interestAccrual.trickle(TRICKLE_BATCH) > 0) {
+            fileManager.saveUsers(users);
+        }
+    }
+
+    // =============== JOB DEFINITIONS ===============
+
+    private enum Cadence {
+        DAILY, MONTHLY;
+
+        String key(LocalDate date) {
+            return this == MONTHLY ? YearMonth.from(date).toString() : date.toString();
+        }
+
+        LocalDate parse(String key) {
+            return this == MONTHLY ? YearMonth.parse(key).atDay(1) : LocalDate.parse(key);
+        }
+
+        LocalDate next(LocalDate date) {
+            return this == MONTHLY ? date.plusMonths(1) : date.plusDays(1);
+        }
+
+        LocalDate periodStart(LocalDate date) {
+            return this == MONTHLY ? date.withDayOfMonth(1) : date;
+        }
+    }
+
+    private static class Job {
+        final String name;
+        final Cadence cadence;
+        final int maxCatchUp;
+        final Consumer<LocalDate> action;
+
+        Job(String name, Cadence cadence, int maxCatchUp, Consumer<LocalDate> action) {
+            this.name = name;
+            this.cadence = cadence;
+            this.maxCatchUp = maxCatchUp;
+            this.action = action;
+        }
+
+        // Periods after the last recorded run up to today, oldest first, capped at maxCatchUp.
+        List<LocalDate> duePeriods(String lastRun, LocalDate today) {
+            LocalDate current = cadence.periodStart(today);
+            Deque<LocalDate> due = new ArrayDeque<>();
+            if (lastRun == null) {
+                due.add(current);
+                return new ArrayList<>(due);
+            }
+            LocalDate p = cadence.next(cadence.parse(lastRun));
+            while (!p.isAfter(current)) {
+                due.addLast(p);
+                if (due.size() > maxCatchUp) due.removeFirst();
+                p = cadence.next(p);
             }
+            return new ArrayList<>(due);
         }
-        fileManager.saveUsers(users);
-        System.out.println("Monthly interest applied to all users.");
     }
-}
\ No newline at end of file
+}
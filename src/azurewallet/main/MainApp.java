@@ -1,8 +1,56 @@
 package azurewallet.main;
 
+import java.util.Scanner;
+import azurewallet.system.ReplicaNode;
+
 public class MainApp {
-    public static void main(String[] args) {
-        AzureDigitalApp app = new AzureDigitalApp();
+    // No arguments: normal wallet. "--primary <port>": wallet that also ships its changes to
+    // replicas. "--replica <host>:<port>": read-only replica console following a primary.
+    // Both need -Dazure.replication.secret; the primary listens on loopback unless
+    // -Dazure.replication.bind says otherwise.
+    // "--simulate [years] [users] [seed]": deterministic accelerated run on an in-memory store.
+    public static void main(String[] args) throws java.io.IOException {
+        if (args.length >= 1 && args[0].equals("--simulate")) {
+            int years = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+            int users = args.length > 2 ? Integer.parseInt(args[2]) : 2_000;
+            long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+            new SimulationRunner(years, users, seed).run();
+            return;
+        }
+        if (args.length >= 1 && args[0].equals("--replica")) {
+            int colon = args.length >= 2 ? args[1].lastIndexOf(':') : -1;
+            int port = colon > 0 ? parsePort(args[1].substring(colon + 1)) : -1;
+            if (port < 0) {
+                System.out.println("Usage: --replica <host>:<port>   (with -Dazure.replication.secret=...)");
+                return;
+            }
+            if (System.getProperty("azure.replication.secret", "").isEmpty()) {
+                System.out.println("Set -Dazure.replication.secret to the primary's replication secret.");
+                return;
+            }
+            ReplicaNode replica = new ReplicaNode(args[1].substring(0, colon), port);
+            replica.start();
+            replica.console(new Scanner(System.in));
+            return;
+        }
+        int replicationPort = 0;
+        if (args.length >= 1 && args[0].equals("--primary")) {
+            replicationPort = args.length >= 2 ? parsePort(args[1]) : -1;
+            if (replicationPort < 0) {
+                System.out.println("Usage: --primary <port>   (with -Dazure.replication.secret=..., optionally -Dazure.replication.bind=<address>)");
+                return;
+            }
+        }
+        AzureDigitalApp app = new AzureDigitalApp(replicationPort);
         app.start();
     }
-}
\ No newline at end of file
+
+    private static int parsePort(String text) {
+        try {
+            int port = Integer.parseInt(text.trim());
+            return port > 0 && port <= 65535 ? port : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package azurewallet.main;
+
+import java.io.IOException;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import azurewallet.models.UserAccount;
+import azurewallet.models.VoucherIndex;
+import azurewallet.models.VoucherSystem;
+import azurewallet.system.*;
+
+// Deterministic accelerated run: a seeded population lives through years of simulated
+// days on an in-memory store. The wallet reads AppClock, so the scheduler's monthly and
+// daily jobs, voucher expiry, lockouts, velocity windows and lazy interest all follow the
+// simulated calendar. Ends with a full ledger reconciliation and a state digest; the same
+// seed always produces the same digest.
+// Run: java azurewallet.main.MainApp --simulate [years] [users] [seed]
+public class SimulationRunner {
+    private static final LocalDateTime START = LocalDateTime.of(2025, 1, 1, 0, 0);
+    private static final double ACTIONS_PER_USER_DAY = 0.25;
+    private static final int TRICKLE_BATCH = 1000;
+
+    private final int years;
+    private final int population;
+    private final long seed;
+    private final Random rnd;
+
+    // Simulated outcomes
+    private long deposits, withdrawals, sends, voucherRedemptions, expiredVoucherAttempts, pointRedemptions;
+    private long declined, velocityRejections;
+    private long logins, wrongPins, lockouts, refusedWhileLocked;
+    private double deposited, withdrawn, sent, voucherValue;
+
+    public SimulationRunner(int years, int population, long seed) {
+        this.years = years;
+        this.population = population;
+        this.seed = seed;
+        this.rnd = new Random(seed);
+    }
+
+    public void run() throws IOException {
+        AppClock.Simulated clock = new AppClock.Simulated(START, ZoneOffset.UTC);
+        AppClock.use(clock);
+        VoucherSystem.useRandom(new Random(seed * 31 + 7));
+
+        // Nothing goes to disk: the in-memory engine also holds the config documents.
+        FileManager fm = new FileManager(StorageEngines.dataDir(), new InMemoryStorageEngine());
+        Map<String, UserAccount> users = seedPopulation(fm);
+
+        BackgroundScheduler scheduler = new BackgroundScheduler(fm, users);
+        // Daily reconciliation would re-read years of logs every simulated day; it runs
+        // once at the end instead.
+        scheduler.removeJob("reconciliation");
+        InterestAccrual interest = scheduler.getInterestAccrual();
+        LoginThrottle throttle = new LoginThrottle(fm);
+        VelocityMonitor velocity = new VelocityMonitor(fm);
+        List<UserAccount> byName = new ArrayList<>(new TreeMap<>(users).values());
+
+        LocalDate end = START.toLocalDate().plusYears(years);
+        long days = 0, schedulerNanos = 0;
+        long wallStart = System.nanoTime();
+        for (LocalDate day = START.toLocalDate(); day.isBefore(end); day = day.plusDays(1), days++) {
+            clock.advanceTo(day.atTime(0, 5));
+            long t0 = System.nanoTime();
+            scheduler.runScheduler();
+            schedulerNanos += System.nanoTime() - t0;
+
+            // Activity spread evenly over 06:00-22:00.
+            int actions = (int) Math.round(population * ACTIONS_PER_USER_DAY * (0.5 + rnd.nextDouble()));
+            long stepMillis = Duration.ofHours(16).toMillis() / Math.max(actions, 1);
+            clock.advanceTo(day.atTime(6, 0));
+            for (int i = 0; i < actions; i++) {
+                clock.advance(Duration.ofMillis(stepMillis));
+                UserAccount acc = byName.get(rnd.nextInt(byName.size()));
+                act(acc, byName, fm, interest, throttle, velocity);
+            }
+
+            clock.advanceTo(day.atTime(23, 30));
+            interest.trickle(TRICKLE_BATCH);
+            throttle.flushDirty();
+            velocity.evictIdle();
+        }
+        long simNanos = System.nanoTime() - wallStart;
+
+        for (UserAccount acc : users.values()) interest.accrue(acc);
+        fm.saveUsers(users);
+        long t1 = System.nanoTime();
+        LedgerReconciler.Report report = new LedgerReconciler(fm, users).reconcile();
+        long reconcileNanos = System.nanoTime() - t1;
+        scheduler.shutdown();
+
+        report(fm, users, days, simNanos, schedulerNanos, reconcileNanos, report);
+    }
+
+    // =============== POPULATION ===============
+
+    private Map<String, UserAccount> seedPopulation(FileManager fm) {
+        Map<String, UserAccount> users = new ConcurrentHashMap<>();
+        for (int i = 0; i < population; i++) {
+            String name = String.format("sim%06d", i);
+            UserAccount acc = new UserAccount(name, pinFor(name), String.format("09%09d", i));
+            users.put(name, acc);
+            deposit(acc, fm, 1_000 + rnd.nextInt(40_000));
+        }
+        return users;
+    }
+
+    private static String pinFor(String username) {
+        return String.format("%04d", Math.floorMod(username.hashCode(), 10_000));
+    }
+
+    // =============== ACTIVITY ===============
+
+    // Same checks and log lines as the menu handlers in AzureDigitalApp, minus the prompts.
+    private void act(UserAccount acc, List<UserAccount> all, FileManager fm, InterestAccrual interest,
+                     LoginThrottle throttle, VelocityMonitor velocity) {
+        int roll = rnd.nextInt(100);
+        if (roll < 10) {
+            login(acc, throttle, interest);
+            return;
+        }
+        interest.accrue(acc);
+        if (roll < 45) {
+            double amount = 100 + rnd.nextInt(25_000);
+            if (acc.getBalance() + amount > acc.getDepositLimit()) declined++;
+            else deposit(acc, fm, amount);
+        } else if (roll < 65) {
+            double amount = 100 + rnd.nextInt(15_000);
+            if (amount > acc.getWithdrawLimit() || amount + AzureDigitalApp.WITHDRAW_FEE > acc.getBalance()) {
+                declined++;
+            } else if (velocity.admit(acc, VelocityMonitor.Op.WITHDRAW, 1, amount) != null) {
+                velocityRejections++;
+            } else {
+                acc.withdraw(amount + AzureDigitalApp.WITHDRAW_FEE);
+                fm.logTransaction(acc.getUsername(), "Withdraw", amount);
+                fm.logSystemRevenue(AzureDigitalApp.WITHDRAW_FEE);
+                withdrawals++;
+                withdrawn += amount;
+            }
+        } else if (roll < 85) {
+            UserAccount receiver = all.get(rnd.nextInt(all.size()));
+            double amount = 50 + rnd.nextInt(10_000);
+            if (receiver == acc || amount > acc.getSendLimit() || amount > acc.getBalance()) {
+                declined++;
+            } else if (velocity.admit(acc, VelocityMonitor.Op.SEND, 1, amount) != null) {
+                velocityRejections++;
+            } else {
+                interest.accrue(receiver);
+                acc.withdraw(amount);
+                receiver.deposit(amount);
+                fm.logTransaction(acc.getUsername(), "Sent to " + receiver.getUsername(), amount);
+                fm.logTransaction(receiver.getUsername(), "Received from " + acc.getUsername(), amount);
+                sends++;
+                sent += amount;
+            }
+        } else if (roll < 95) {
+            List<VoucherIndex.Voucher> mine = VoucherSystem.getUserVouchers(acc.getUsername());
+            if (mine.isEmpty()) return;
+            VoucherIndex.Voucher v = mine.get(rnd.nextInt(mine.size()));
+            double value = VoucherSystem.redeemVoucher(acc, v.getCode(), fm);
+            if (value > 0) {
+                voucherRedemptions++;
+                voucherValue += value;
+            } else {
+                expiredVoucherAttempts++;
+            }
+        } else if (acc.getPoints() > 0) {
+            int pts = 1 + rnd.nextInt(acc.getPoints());
+            acc.redeemPoints(pts, pts * 1.0);
+            fm.logPoints(acc.getUsername(), "redeemed", pts, "converted to PHP " + String.format("%,.2f", pts * 1.0));
+            pointRedemptions++;
+        }
+    }
+
+    private void deposit(UserAccount acc, FileManager fm, double amount) {
+        acc.deposit(amount);
+        acc.addTotalTransacted(amount);
+        fm.logTransaction(acc.getUsername(), "Deposit", amount);
+        int pointsEarned = (int) (amount / 1000);
+        if (pointsEarned > 0) {
+            acc.addPoints(pointsEarned);
+            fm.logPoints(acc.getUsername(), "earned", pointsEarned, "from deposit");
+        }
+        deposits++;
+        deposited += amount;
+    }
+
+    // One in five logins is a user who keeps getting the PIN wrong: up to four tries a few
+    // seconds apart, then one more half a minute later to see whether the lock holds.
+    private void login(UserAccount acc, LoginThrottle throttle, InterestAccrual interest) {
+        logins++;
+        boolean forgetful = rnd.nextInt(5) == 0;
+        String pin = pinFor(acc.getUsername());
+        int tries = forgetful ? 4 : 1;
+        AppClock.Simulated clock = (AppClock.Simulated) AppClock.get();
+        for (int i = 0; i < tries; i++) {
+            if (throttle.remainingLock(acc, null) > 0) {
+                refusedWhileLocked++;
+                return;
+            }
+            if (acc.verifyPin(forgetful ? pin + "9" : pin)) {
+                throttle.recordSuccess(acc);
+                interest.accrue(acc);
+                return;
+            }
+            wrongPins++;
+            if (throttle.recordFailure(acc, null)) lockouts++;
+            clock.advance(Duration.ofSeconds(5));
+        }
+        clock.advance(Duration.ofSeconds(30));
+        if (throttle.remainingLock(acc, null) > 0) refusedWhileLocked++;
+    }
+
+    // =============== REPORT ===============
+
+    private void report(FileManager fm, Map<String, UserAccount> users, long days, long simNanos, long schedulerNanos,
+                        long reconcileNanos, LedgerReconciler.Report recon) throws IOException {
+        double[] interestPaid = new double[1];
+        long[] interestLines = new long[1];
+        fm.forEachLine(StorageEngine.Log.INTEREST, line -> {
+            LedgerEntry e = LedgerEntry.parseInterest(line);
+            if (e != null) {
+                interestPaid[0] += e.amount;
+                interestLines[0]++;
+            }
+        });
+        long[] schedulerRuns = new long[1];
+        fm.forEachLine(StorageEngine.Log.SCHEDULER, line -> schedulerRuns[0]++);
+
+        Map<String, Integer> ranks = new TreeMap<>();
+        double totalBalance = 0;
+        long digest = 0;
+        for (UserAccount acc : new TreeMap<>(users).values()) {
+            ranks.merge(acc.getRank(), 1, Integer::sum);
+            totalBalance += acc.getBalance();
+            digest = digest * 31 + acc.toFileFormat().hashCode();
+        }
+        long operations = deposits + withdrawals + sends + voucherRedemptions + pointRedemptions + logins;
+
+        System.out.println("\n=== SIMULATION (seed " + seed + ") ===");
+        System.out.printf("Simulated %s to %s: %,d days, %,d accounts%n", START.toLocalDate(), AppClock.today(), days, population);
+        System.out.printf("Deposits      %,10d   PHP %,18.2f%n", deposits, deposited);
+        System.out.printf("Withdrawals   %,10d   PHP %,18.2f%n", withdrawals, withdrawn);
+        System.out.printf("Transfers     %,10d   PHP %,18.2f%n", sends, sent);
+        System.out.printf("Vouchers      %,10d   PHP %,18.2f  (%,d expired at redemption, %,d still live)%n",
+                voucherRedemptions, voucherValue, expiredVoucherAttempts, VoucherSystem.getTotalVouchersCount());
+        System.out.printf("Interest      %,10d   PHP %,18.2f%n", interestLines[0], interestPaid[0]);
+        System.out.printf("Point redemptions %,d, declined by limits %,d, velocity rejections %,d%n", pointRedemptions, declined, velocityRejections);
+        System.out.printf("Logins %,d, wrong PINs %,d, lockouts %,d, refused while locked %,d%n", logins, wrongPins, lockouts, refusedWhileLocked);
+        System.out.printf("Scheduler job runs %,d%n", schedulerRuns[0]);
+        System.out.println("Ranks: " + ranks);
+        System.out.printf("Total balance PHP %,.2f, state digest %016x%n", totalBalance, digest);
+        System.out.printf("Reconciliation: %,d lines, %,d drifted, revenue %s%n",
+                recon.linesRead, recon.drifts.size(), recon.revenueMatches() ? "matches" : "MISMATCH");
+
+        double seconds = simNanos / 1e9;
+        System.out.println("\n=== WALL CLOCK ===");
+        System.out.printf("Simulation %.2f s (scheduler %.2f s), reconciliation %.2f s%n", seconds, schedulerNanos / 1e9, reconcileNanos / 1e9);
+        System.out.printf("%,.0f simulated days/s, %,.0f operations/s%n", days / seconds, operations / seconds);
+    }
+}
@@ -0,0 +1,31 @@
+package azurewallet.models;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Fan-out point for account changes; indexes and caches register here once at startup.
+public class AccountEvents {
+    private static final List<AccountListener> listeners = new CopyOnWriteArrayList<>();
+
+    public static void register(AccountListener listener) {
+        listeners.add(listener);
+    }
+
+    public static void unregister(AccountListener listener) {
+        listeners.remove(listener);
+    }
+
+    // Also used when an account joins the population (registration, import).
+    public static void changed(UserAccount acc) {
+        for (AccountListener l : listeners) l.accountChanged(acc);
+    }
+
+    // Fired from updateRank() before the changed() that follows it.
+    public static void rankChanged(UserAccount acc, String from, String to) {
+        for (AccountListener l : listeners) l.rankChanged(acc, from, to);
+    }
+
+    public static void removed(UserAccount acc) {
+        for (AccountListener l : listeners) l.accountRemoved(acc);
+    }
+}
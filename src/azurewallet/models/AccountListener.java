@@ -0,0 +1,13 @@
+package azurewallet.models;
+
+// Notified after an account's balance, points or totals change, and when accounts are
+// added to or removed from the live population. Called on the thread making the change,
+// so implementations must be quick and must not block.
+public interface AccountListener {
+    void accountChanged(UserAccount acc);
+
+    default void accountRemoved(UserAccount acc) {}
+
+    // The account moved from one tier to another; accountChanged() follows.
+    default void rankChanged(UserAccount acc, String from, String to) {}
+}
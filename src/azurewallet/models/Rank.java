@@ -0,0 +1,34 @@
+package azurewallet.models;
+
+// Account tiers by lifetime amount transacted. Accounts still carry the tier by name,
+// which is what the data files store; the thresholds live here.
+public enum Rank {
+    BRONZE("Bronze", 0),
+    SILVER("Silver", 200_000),
+    GOLD("Gold", 500_000),
+    PLATINUM("Platinum", 1_000_000);
+
+    public final String label;
+    public final double threshold;
+
+    Rank(String label, double threshold) {
+        this.label = label;
+        this.threshold = threshold;
+    }
+
+    public static Rank forTotal(double totalTransacted) {
+        Rank[] all = values();
+        for (int i = all.length - 1; i > 0; i--) {
+            if (totalTransacted >= all[i].threshold) return all[i];
+        }
+        return BRONZE;
+    }
+
+    // Unknown names count as Bronze, as they always have for limits and interest.
+    public static Rank of(String label) {
+        for (Rank r : values()) {
+            if (r.label.equals(label)) return r;
+        }
+        return BRONZE;
+    }
+}
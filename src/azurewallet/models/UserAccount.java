@@ -1,6 +1,8 @@
 package azurewallet.models;
 
 import java.text.DecimalFormat;
+import java.time.YearMonth;
+import azurewallet.system.AppClock;
 import azurewallet.system.FileManager;
 
 
@@ -14,6 +16,7 @@ public class UserAccount {
     private String rank;
     private int failedAttempts;
     private long lockEndTime;
+    private YearMonth lastAccrual;
     private static final DecimalFormat df = new DecimalFormat("#,##0.00");
 
     public UserAccount(String username, String pin, String mobile) {
@@ -29,6 +32,10 @@ public class UserAccount {
     }
 
     public UserAccount(String username, String pinHash, String mobile, double balance, int points, double totalTransacted, String rank, int failedAttempts, long lockEndTime) {
+        this(username, pinHash, mobile, balance, points, totalTransacted, rank, failedAttempts, lockEndTime, null);
+    }
+
+    public UserAccount(String username, String pinHash, String mobile, double balance, int points, double totalTransacted, String rank, int failedAttempts, long lockEndTime, YearMonth lastAccrual) {
         this.username = username;
         this.pinHash = pinHash;
         this.mobile = mobile;
@@ -38,62 +45,62 @@ public class UserAccount {
         this.rank = rank;
         this.failedAttempts = failedAttempts;
         this.lockEndTime = lockEndTime;
+        this.lastAccrual = lastAccrual;
     }
 
     public String getUsername() { return username; }
     public String getMobile() { return mobile; }
+    public String getPinHash() { return pinHash; }
     public double getBalance() { return balance; }
     public int getPoints() { return points; }
     public double getTotalTransacted() { return totalTransacted; }
     public String getRank() { return rank; }
-    public boolean isLocked() { return System.currentTimeMillis() < lockEndTime; }
+    public boolean isLocked() { return AppClock.millis() < lockEndTime; }
     public long getLockEndTime() { return lockEndTime; }
+    public int getFailedAttempts() { return failedAttempts; }
+    public synchronized YearMonth getLastAccrual() { return lastAccrual; }
 
     public boolean verifyPin(String input) {
         return this.pinHash.equals(HashUtil.hash(input));
     }
 
-    public void registerFailedAttempt() {
-        failedAttempts++;
-        if (failedAttempts >= 3) {
-            long lockDuration;
-            lockDuration = switch (failedAttempts) {
-                case 3 -> 60_000;
-                case 6 -> 300_000;
-                case 9 -> 600_000;
-                default -> 1_800_000;
-            };
-            lockEndTime = System.currentTimeMillis() + lockDuration;
-            System.out.println("Too many failed attempts. Account locked temporarily.");
-        }
+    // Lock state is decided by LoginThrottle; the account only carries it for persistence.
+    public synchronized void applyLockout(int failedAttempts, long lockEndTime) {
+        this.failedAttempts = failedAttempts;
+        this.lockEndTime = Math.max(this.lockEndTime, lockEndTime);
     }
 
-    public void resetLock() {
+    public synchronized void resetLock() {
         failedAttempts = 0;
         lockEndTime = 0;
     }
 
-    public void deposit(double amount) {
+    public synchronized void deposit(double amount) {
         balance += amount;
         updateRank();
+        AccountEvents.changed(this);
     }
 
-    public void withdraw(double amount) {
+    public synchronized void withdraw(double amount) {
         balance -= amount;
+        AccountEvents.changed(this);
     }
 
-    public void addTotalTransacted(double amount) {
+    public synchronized void addTotalTransacted(double amount) {
         totalTransacted += amount;
         updateRank();
+        AccountEvents.changed(this);
     }
 
-    public void addPoints(int pts) {
+    public synchronized void addPoints(int pts) {
         this.points += pts;
+        AccountEvents.changed(this);
     }
 
-    public void redeemPoints(int pts, double value) {
+    public synchronized void redeemPoints(int pts, double value) {
         this.points -= pts;
         this.balance += value;
+        AccountEvents.changed(this);
     }
 
     public void displayBalance() {
@@ -102,11 +109,10 @@ public class UserAccount {
         System.out.println("Rank: " + rank);
     }
 
-    public void updateRank() {
-        if (totalTransacted >= 200000 && totalTransacted < 500000) rank = "Silver";
-        else if (totalTransacted >= 500000 && totalTransacted < 1000000) rank = "Gold";
-        else if (totalTransacted >= 1000000) rank = "Platinum";
-        else rank = "Bronze";
+    public synchronized void updateRank() {
+        String previous = rank;
+        rank = Rank.forTotal(totalTransacted).label;
+        if (!rank.equals(previous)) AccountEvents.rankChanged(this, previous, rank);
     }
 
     public double getDepositLimit() {
@@ -136,29 +142,41 @@ public class UserAccount {
         };
     }
 
-    public void applyMonthlyInterest() {
-        double rate = switch (rank) {
+    public double getMonthlyInterestRate() {
+        return switch (rank) {
             case "Silver" -> 0.0025;
             case "Gold" -> 0.004;
             case "Platinum" -> 0.006;
             default -> 0.0015;
         };
-        double interest = balance * rate;
+    }
+
+    public synchronized void applyMonthlyInterest() {
+        double interest = balance * getMonthlyInterestRate();
         balance += interest;
+        AccountEvents.changed(this);
     }
 
-    public void viewVoucherNotification(FileManager fileManager) {
-        int vouchers = fileManager.countUserVouchers(username);
-        if (vouchers > 0) {
-            System.out.println("You have " + vouchers + " available voucher(s).");
+    // Applies every month of interest owed since the last accrual, compounding exactly as
+    // repeated applyMonthlyInterest() calls would. Returns the amount added.
+    public synchronized double accrueInterest(YearMonth upTo) {
+        if (lastAccrual == null) {
+            lastAccrual = upTo;
+            return 0.0;
+        }
+        double before = balance;
+        while (lastAccrual.isBefore(upTo)) {
+            applyMonthlyInterest();
+            lastAccrual = lastAccrual.plusMonths(1);
         }
+        return balance - before;
     }
 
     public void viewMyVouchers(FileManager fileManager) {
         fileManager.showUserVouchers(username);
     }
 
-    public String toFileFormat() {
-        return username + "," + pinHash + "," + mobile + "," + balance + "," + points + "," + totalTransacted + "," + rank + "," + failedAttempts + "," + lockEndTime;
+    public synchronized String toFileFormat() {
+        return username + "," + pinHash + "," + mobile + "," + balance + "," + points + "," + totalTransacted + "," + rank + "," + failedAttempts + "," + lockEndTime + "," + (lastAccrual == null ? "" : lastAccrual);
     }
 }
\ No newline at end of file
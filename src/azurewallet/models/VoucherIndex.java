@@ -0,0 +1,110 @@
+package azurewallet.models;
+
+import java.time.LocalDate;
+import java.util.*;
+
+// In-memory view of the live vouchers: by owner for lookups and counts, and bucketed
+// by expiry day so the sweeper only ever touches vouchers that have actually expired.
+// Not thread-safe on its own; VoucherSystem guards every access.
+public class VoucherIndex {
+    private final Map<String, Map<String, Voucher>> byUser = new HashMap<>();
+    private final TreeMap<LocalDate, Set<Voucher>> byExpiry = new TreeMap<>();
+    private int size;
+
+    public static class Voucher {
+        private final String username;
+        private final String code;
+        private final double value;
+        private final LocalDate expiry;
+
+        public Voucher(String username, String code, double value, LocalDate expiry) {
+            this.username = username;
+            this.code = code;
+            this.value = value;
+            this.expiry = expiry;
+        }
+
+        public String getUsername() { return username; }
+        public String getCode() { return code; }
+        public double getValue() { return value; }
+        public LocalDate getExpiry() { return expiry; }
+
+        public boolean isExpired(LocalDate today) {
+            return expiry.isBefore(today);
+        }
+
+        public String toFileFormat() {
+            return username + "," + code + "," + value + "," + expiry;
+        }
+    }
+
+    // A user holds a code at most once: returns false, leaving the live voucher as it is,
+    // when the user already has one with this code (a fixed campaign code issued again).
+    public boolean add(Voucher v) {
+        if (byUser.computeIfAbsent(v.username, k -> new LinkedHashMap<>()).putIfAbsent(v.code, v) != null) return false;
+        size++;
+        byExpiry.computeIfAbsent(v.expiry, k -> new HashSet<>()).add(v);
+        return true;
+    }
+
+    public Voucher find(String username, String code) {
+        Map<String, Voucher> own = byUser.get(username);
+        return own == null ? null : own.get(code);
+    }
+
+    public Voucher remove(String username, String code) {
+        Map<String, Voucher> own = byUser.get(username);
+        if (own == null) return null;
+        Voucher v = own.remove(code);
+        if (v == null) return null;
+        if (own.isEmpty()) byUser.remove(username);
+        unbucket(v);
+        size--;
+        return v;
+    }
+
+    // Removes every voucher that expired before today, oldest bucket first.
+    public List<Voucher> purgeExpired(LocalDate today) {
+        List<Voucher> purged = new ArrayList<>();
+        while (!byExpiry.isEmpty() && byExpiry.firstKey().isBefore(today)) {
+            for (Voucher v : byExpiry.pollFirstEntry().getValue()) {
+                Map<String, Voucher> own = byUser.get(v.username);
+                if (own != null && own.remove(v.code) != null) {
+                    if (own.isEmpty()) byUser.remove(v.username);
+                    size--;
+                    purged.add(v);
+                }
+            }
+        }
+        return purged;
+    }
+
+    public int size() { return size; }
+
+    public int countFor(String username) {
+        Map<String, Voucher> own = byUser.get(username);
+        return own == null ? 0 : own.size();
+    }
+
+    public boolean hasVouchers(String username) {
+        return byUser.containsKey(username);
+    }
+
+    public List<Voucher> forUser(String username) {
+        Map<String, Voucher> own = byUser.get(username);
+        return own == null ? Collections.emptyList() : new ArrayList<>(own.values());
+    }
+
+    public List<Voucher> all() {
+        List<Voucher> list = new ArrayList<>(size);
+        for (Map<String, Voucher> own : byUser.values()) list.addAll(own.values());
+        return list;
+    }
+
+    private void unbucket(Voucher v) {
+        Set<Voucher> bucket = byExpiry.get(v.expiry);
+        if (bucket == null) return;
+        bucket.remove(v);
+        if (bucket.isEmpty()) byExpiry.remove(v.expiry);
+    }
+}
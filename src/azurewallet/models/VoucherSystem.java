@@ -3,122 +3,164 @@ package azurewallet.models;
 import java.io.*;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import azurewallet.system.AppClock;
 import azurewallet.system.FileManager;
+import azurewallet.system.StorageEngine;
 
 public class VoucherSystem {
-    private static final String VOUCHERS_FILE = "src/azurewallet/data/vouchers.txt";
-
-    // =============== VOUCHER GENERATION ===============
-    public static void generateMonthlyVouchers(Map<String, UserAccount> users) {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(VOUCHERS_FILE, true))) {
-            for (UserAccount u : users.values()) {
-                double value = getVoucherValueByRank(u.getRank());
-                String code = generateVoucherCode(u.getUsername());
-                pw.println(u.getUsername() + "," + code + "," + value + "," + LocalDate.now().plusMonths(1));
+    private static StorageEngine storage;
+    private static VoucherIndex index;
+    private static Random random = new Random();
+    private static final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    // =============== INDEX ===============
+    // The store is read once; afterwards the index is the source of truth. Issuing and
+    // removing both append to the store; CompactionService folds removals away later.
+    public static synchronized void useStorage(StorageEngine engine) {
+        storage = engine;
+        index = null;
+    }
+
+    // Seeded by the simulator so voucher values and codes repeat run to run.
+    public static synchronized void useRandom(Random r) {
+        random = r;
+    }
+
+    private static VoucherIndex index() {
+        if (index == null) {
+            index = new VoucherIndex();
+            for (VoucherIndex.Voucher v : storage.loadVouchers()) index.add(v);
+        }
+        return index;
+    }
+
+    public static synchronized void clearAll() {
+        index = new VoucherIndex();
+        rewriteVoucherFile();
+        changed(null);
+    }
+
+    // =============== CHANGE EVENTS ===============
+    // Told the username whenever a user's vouchers are issued, redeemed or expire; null
+    // means every user's. Called under the class lock, so listeners must not block.
+    public static void addListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    private static void changed(String username) {
+        for (Consumer<String> l : listeners) l.accept(username);
+    }
+
+    public static synchronized int countUserVouchers(String username) {
+        return index().countFor(username);
+    }
+
+    public static synchronized int getTotalVouchersCount() {
+        return index().size();
+    }
+
+    public static synchronized boolean hasVouchers(String username) {
+        return index().hasVouchers(username);
+    }
+
+    // One lock acquisition for a whole slice of accounts (campaign targeting).
+    public static synchronized boolean[] hasVouchers(String[] usernames) {
+        VoucherIndex idx = index();
+        boolean[] out = new boolean[usernames.length];
+        for (int i = 0; i < usernames.length; i++) out[i] = idx.hasVouchers(usernames[i]);
+        return out;
+    }
+
+    public static synchronized List<VoucherIndex.Voucher> getUserVouchers(String username) {
+        return index().forUser(username);
+    }
+
+    public static synchronized boolean hasVoucher(String username, String code) {
+        return index().find(username, code) != null;
+    }
+
+    // Adds vouchers to the index and appends them to the store in one write. A voucher
+    // whose code the user already holds is skipped; those are returned (usually none).
+    public static synchronized List<VoucherIndex.Voucher> issueVouchers(List<VoucherIndex.Voucher> vouchers) {
+        VoucherIndex idx = index();
+        List<VoucherIndex.Voucher> issued = new ArrayList<>(vouchers.size());
+        List<VoucherIndex.Voucher> skipped = new ArrayList<>();
+        for (VoucherIndex.Voucher v : vouchers) {
+            if (idx.add(v)) {
+                issued.add(v);
+                changed(v.getUsername());
+            } else {
+                skipped.add(v);
             }
+        }
+        if (issued.isEmpty()) return skipped;
+        try {
+            storage.appendVouchers(issued);
         } catch (IOException e) {
             System.out.println("Error generating vouchers.");
         }
+        return skipped;
     }
 
-    // =============== HOLIDAY's VOUCHER ===============
-    public static void generateHolidayVoucher(Map<String, UserAccount> users) {
-        LocalDate today = LocalDate.now();
-        String key = String.format("%02d-%02d", today.getMonthValue(), today.getDayOfMonth());
-        Map<String, String> HOLIDAYS = Map.of(
-            "01-01", "NEWYR",     // New Year
-            "02-25", "EDSA",      // EDSA Revolution
-            "04-09", "ARAW",      // Araw ng Kagitingan
-            "06-12", "INDEP",     // Independence Day
-            "11-01", "SAINT",     // All Saint's Day
-            "11-30", "BONI",      // Bonifacio Day
-            "12-25", "XMAS",      // Christmas
-            "12-30", "RIZAL"      // Rizal Day
-        );
-
-        if (HOLIDAYS.containsKey(key)) {
-            String holidayCode = HOLIDAYS.get(key) + today.getYear();
-            try (PrintWriter pw = new PrintWriter(new FileWriter(VOUCHERS_FILE, true))) {
-                for (UserAccount u : users.values()) {
-                    double value = getHolidayVoucherValue(u.getRank());
-                    pw.println(u.getUsername() + "," + holidayCode + "," + value + "," + today.plusMonths(1));
-                }
-                System.out.println("Holiday voucher '" + holidayCode + "' generated for all users!");
-            } catch (IOException e) {
-                System.out.println("Error generating holiday vouchers.");
-            }
+    private static void recordRemoved(List<VoucherIndex.Voucher> removed) {
+        try {
+            storage.removeVouchers(removed);
+        } catch (IOException e) {
+            System.out.println("Error updating vouchers.");
         }
     }
 
-    private static double getHolidayVoucherValue(String rank) {
-        return switch (rank) {
-            case "Silver" -> randomRange(150, 300);
-            case "Gold" -> randomRange(400, 600);
-            case "Platinum" -> randomRange(800, 1000);
-            default -> randomRange(50, 100);
-        };
+    private static void rewriteVoucherFile() {
+        try {
+            storage.saveVouchers(index.all());
+        } catch (IOException e) {
+            System.out.println("Error updating vouchers.");
+        }
     }
 
     // =============== EXISTING REDEEM ===============
-    public static double redeemVoucher(UserAccount user, String code, FileManager fileManager) {
-        List<String> lines = new ArrayList<>();
-        double value = 0.0;
-        boolean found = false;
-
-        try (BufferedReader br = new BufferedReader(new FileReader(VOUCHERS_FILE))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] p = line.split(",");
-                if (p.length == 4 && p[0].equals(user.getUsername()) && p[1].equals(code)) {
-                    LocalDate expiry = LocalDate.parse(p[3]);
-                    if (expiry.isBefore(LocalDate.now())) {
-                        System.out.println("Voucher expired.");
-                        lines.add(line);
-                        continue;
-                    }
-                    value = Double.parseDouble(p[2]);
-                    found = true;
-                    user.deposit(value);
-                    fileManager.logVoucher(user.getUsername(), code, value);
-                } else {
-                    lines.add(line);
-                }
-            }
-        } catch (IOException e) {
-            System.out.println("Error redeeming voucher.");
-        }
+    public static synchronized double redeemVoucher(UserAccount user, String code, FileManager fileManager) {
+        VoucherIndex idx = index();
+        VoucherIndex.Voucher v = idx.find(user.getUsername(), code);
+        if (v == null) return 0.0;
 
-        if (found) {
-            try (PrintWriter pw = new PrintWriter(new FileWriter(VOUCHERS_FILE))) {
-                for (String l : lines) pw.println(l);
-            } catch (IOException e) {
-                System.out.println("Error updating vouchers.");
-            }
+        idx.remove(user.getUsername(), code);
+        recordRemoved(List.of(v));
+        changed(user.getUsername());
+        if (v.isExpired(AppClock.today())) {
+            System.out.println("Voucher expired.");
+            return 0.0;
         }
 
-        return value;
+        user.deposit(v.getValue());
+        fileManager.logVoucher(user.getUsername(), code, v.getValue());
+        return v.getValue();
     }
 
-    // =============== VALUE ===============
-    private static double getVoucherValueByRank(String rank) {
-        return switch (rank) {
-            case "Silver" -> randomRange(50, 100);
-            case "Gold" -> randomRange(100, 250);
-            case "Platinum" -> randomRange(250, 500);
-            default -> randomRange(1, 20);
-        };
+    // =============== EXPIRY SWEEP ===============
+    // Pops only the expired day buckets and records them as removed in one append.
+    public static synchronized int purgeExpiredVouchers() {
+        List<VoucherIndex.Voucher> purged = index().purgeExpired(AppClock.today());
+        if (!purged.isEmpty()) recordRemoved(purged);
+        for (VoucherIndex.Voucher v : purged) changed(v.getUsername());
+        return purged.size();
     }
 
-    private static double randomRange(int min, int max) {
-        return (Math.random() * (max - min)) + min;
+    // =============== CODES ===============
+    // Campaign targeting draws from forks so parallel partitions never share a Random,
+    // while a seeded run still issues the same vouchers every time.
+    public static synchronized Random forkRandom() {
+        return new Random(random.nextLong());
     }
 
-    private static String generateVoucherCode(String username) {
+    public static String generateVoucherCode(String username, Random rnd) {
         String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
         StringBuilder code = new StringBuilder(username.substring(0, 2).toUpperCase());
         for (int i = 0; i < 6; i++) {
-            code.append(chars.charAt(new Random().nextInt(chars.length())));
+            code.append(chars.charAt(rnd.nextInt(chars.length())));
         }
         return code.toString();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,141 @@
+package azurewallet.system;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import azurewallet.models.AccountListener;
+import azurewallet.models.UserAccount;
+
+// Ordered views of the accounts for admin queries. Every sort key has one skip list over
+// all accounts and one per rank, kept current from account change events, so a page such
+// as "top 50 Platinum by balance" costs O(log n + page) instead of a population walk.
+public class AccountIndex implements AccountListener {
+    public static final String ALL_RANKS = "*";
+
+    public enum SortKey { BALANCE, POINTS, TOTAL_TRANSACTED }
+
+    // Ordering key: value descending, then username ascending to keep keys unique.
+    private static final class Key implements Comparable<Key> {
+        final double value;
+        final String username;
+
+        Key(double value, String username) {
+            this.value = value;
+            this.username = username;
+        }
+
+        @Override
+        public int compareTo(Key o) {
+            int c = Double.compare(o.value, value);
+            return c != 0 ? c : username.compareTo(o.username);
+        }
+
+        String encode() {
+            return value + "|" + username;
+        }
+
+        static Key decode(String cursor) {
+            int bar = cursor.indexOf('|');
+            return new Key(Double.parseDouble(cursor.substring(0, bar)), cursor.substring(bar + 1));
+        }
+    }
+
+    // What was last indexed for an account, so its old keys can be removed.
+    private static final class Indexed {
+        final String rank;
+        final Key[] keys;
+
+        Indexed(String rank, Key[] keys) {
+            this.rank = rank;
+            this.keys = keys;
+        }
+    }
+
+    public static class Page {
+        public final List<UserAccount> accounts;
+        public final String nextCursor;
+
+        Page(List<UserAccount> accounts, String nextCursor) {
+            this.accounts = accounts;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    private final Map<String, UserAccount> users;
+    private final Map<String, Indexed> indexed = new ConcurrentHashMap<>();
+    // Per sort key, one ordered set per rank; filled once here and only read after.
+    private final Map<SortKey, Map<String, ConcurrentSkipListSet<Key>>> lists = new EnumMap<>(SortKey.class);
+
+    public AccountIndex(Map<String, UserAccount> users) {
+        this.users = users;
+        for (SortKey key : SortKey.values()) lists.put(key, new ConcurrentHashMap<>());
+        for (UserAccount acc : users.values()) accountChanged(acc);
+    }
+
+    private static double valueOf(UserAccount acc, SortKey key) {
+        return switch (key) {
+            case BALANCE -> acc.getBalance();
+            case POINTS -> acc.getPoints();
+            case TOTAL_TRANSACTED -> acc.getTotalTransacted();
+        };
+    }
+
+    private ConcurrentSkipListSet<Key> list(SortKey key, String rank) {
+        return lists.get(key).computeIfAbsent(rank, r -> new ConcurrentSkipListSet<>());
+    }
+
+    @Override
+    public synchronized void accountChanged(UserAccount acc) {
+        String username = acc.getUsername();
+        String rank = acc.getRank();
+        Indexed old = indexed.get(username);
+        Key[] keys = new Key[SortKey.values().length];
+        boolean same = old != null && old.rank.equals(rank);
+        for (SortKey sk : SortKey.values()) {
+            Key k = new Key(valueOf(acc, sk), username);
+            keys[sk.ordinal()] = k;
+            if (same && old.keys[sk.ordinal()].value == k.value) continue;
+            same = false;
+        }
+        if (same) return;
+        if (old != null) unindex(old);
+        for (SortKey sk : SortKey.values()) {
+            Key k = keys[sk.ordinal()];
+            list(sk, ALL_RANKS).add(k);
+            list(sk, rank).add(k);
+        }
+        indexed.put(username, new Indexed(rank, keys));
+    }
+
+    @Override
+    public synchronized void accountRemoved(UserAccount acc) {
+        Indexed old = indexed.remove(acc.getUsername());
+        if (old != null) unindex(old);
+    }
+
+    private void unindex(Indexed old) {
+        for (SortKey sk : SortKey.values()) {
+            Key k = old.keys[sk.ordinal()];
+            list(sk, ALL_RANKS).remove(k);
+            list(sk, old.rank).remove(k);
+        }
+    }
+
+    // One page of accounts in the given rank (or ALL_RANKS), largest first. Pass the
+    // previous page's nextCursor to continue; nextCursor is null on the last page.
+    public Page query(String rank, SortKey sortKey, int pageSize, String cursor) {
+        ConcurrentSkipListSet<Key> list = list(sortKey, rank == null ? ALL_RANKS : rank);
+        NavigableSet<Key> view = cursor == null ? list : list.tailSet(Key.decode(cursor), false);
+        List<UserAccount> page = new ArrayList<>(pageSize);
+        Key last = null;
+        for (Key k : view) {
+            UserAccount acc = users.get(k.username);
+            if (acc == null) continue;
+            page.add(acc);
+            last = k;
+            if (page.size() == pageSize) break;
+        }
+        String next = last != null && page.size() == pageSize && view.higher(last) != null ? last.encode() : null;
+        return new Page(page, next);
+    }
+}
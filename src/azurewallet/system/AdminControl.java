@@ -1,43 +1,40 @@
 package azurewallet.system;
 
+import azurewallet.models.AccountEvents;
+import azurewallet.models.Rank;
 import azurewallet.models.UserAccount;
-import azurewallet.models.VoucherSystem;
 import azurewallet.main.BackgroundScheduler;
 import java.util.*;
 import java.io.*;
-import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
 
 public class AdminControl {
-    private static final String DATA_DIR = "src/azurewallet/data/";
     private static final String ADMIN_PASS = "admin123";
-    private static final String ADMIN_LOG = DATA_DIR + "admin_log.txt";
+    private static final int PAGE_SIZE = 20;
 
     private final FileManager fileManager;
     private final Map<String, UserAccount> users;
     private final BackgroundScheduler scheduler;
+    private final MerchantLedger merchants;
+    private final AccountIndex accountIndex;
+    private final VelocityMonitor velocity;
+    private final CompactionService compaction;
+    private final RankBoard rankBoard;
 
-    public AdminControl(FileManager fileManager, Map<String, UserAccount> users, BackgroundScheduler scheduler) {
+    public AdminControl(FileManager fileManager, Map<String, UserAccount> users, BackgroundScheduler scheduler, MerchantLedger merchants, AccountIndex accountIndex, VelocityMonitor velocity, CompactionService compaction, RankBoard rankBoard) {
         this.fileManager = fileManager;
         this.users = users;
         this.scheduler = scheduler;
-        createLogFile();
-    }
-
-    private void createLogFile() {
-        try {
-            new File(DATA_DIR).mkdirs();
-            new File(ADMIN_LOG).createNewFile();
-        } catch (IOException e) {
-            System.out.println("Error initializing admin log file.");
-        }
+        this.merchants = merchants;
+        this.accountIndex = accountIndex;
+        this.velocity = velocity;
+        this.compaction = compaction;
+        this.rankBoard = rankBoard;
     }
 
     private void logAdminAction(String action) {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(ADMIN_LOG, true))) {
-            pw.println(LocalDateTime.now() + " - " + action);
-        } catch (IOException e) {
-            System.out.println("Error logging admin action.");
-        }
+        fileManager.logAdminAction(action);
     }
 
     public void menu(Scanner sc) {
@@ -63,14 +60,23 @@ public class AdminControl {
             System.out.println("| [7] Delete All Users                                     |");
             System.out.println("| [8] Clear All Text Files                                 |");
             System.out.println("| [9] Generate Vouchers                                    |");
-            System.out.println("| [10] Exit Admin Panel                                    |");
+            System.out.println("| [10] Bulk Import / Export                                |");
+            System.out.println("| [11] Reconcile Ledger                                    |");
+            System.out.println("| [12] Merchant Report                                     |");
+            System.out.println("| [13] Velocity Rules & Stats                              |");
+            System.out.println("| [14] Generate Monthly Statements                         |");
+            System.out.println("| [15] Compact Data Files                                  |");
+            System.out.println("| [16] Allocation & GC Stats                               |");
+            System.out.println("| [17] Log Integrity (hash chains)                         |");
+            System.out.println("| [18] Rank Tiers & Leaderboards                           |");
+            System.out.println("| [0] Exit Admin Panel                                     |");
             System.out.println("+----------------------------------------------------------+");
             System.out.print("Choose: ");
             String choice = sc.nextLine().trim();
 
             switch (choice) {
                 case "1" -> {
-                    viewAllUsers();
+                    viewAllUsers(sc);
                     logAdminAction("Viewed all users.");
                 }
                 case "2" -> {
@@ -92,7 +98,28 @@ public class AdminControl {
                 case "7" -> deleteAllUsers(sc);
                 case "8" -> clearAllTextFiles(sc);
                 case "9" -> generateVouchers(sc);
-                case "10" -> {
+                case "10" -> bulkData(sc);
+                case "11" -> {
+                    reconcileLedger();
+                    logAdminAction("Ran ledger reconciliation.");
+                }
+                case "12" -> {
+                    viewMerchantReport();
+                    logAdminAction("Viewed merchant report.");
+                }
+                case "13" -> {
+                    viewVelocity(sc);
+                    logAdminAction("Viewed velocity rules.");
+                }
+                case "14" -> generateStatements(sc);
+                case "15" -> compactDataFiles();
+                case "16" -> showAllocationStats();
+                case "17" -> logIntegrity(sc);
+                case "18" -> {
+                    showRankBoard();
+                    logAdminAction("Viewed rank tiers and leaderboards.");
+                }
+                case "0" -> {
                     logAdminAction("Admin logged out.");
                     System.out.println("Exiting Admin Panel...");
                     return;
@@ -102,21 +129,47 @@ public class AdminControl {
         }
     }
 
-    private void viewAllUsers() {
-        System.out.println("\n=== REGISTERED USERS ===");
-        for (UserAccount u : users.values()) {
-            System.out.println("Username: " + u.getUsername());
-            System.out.println("Mobile: " + u.getMobile());
-            System.out.println("Balance: PHP " + String.format("%,.2f", u.getBalance()));
-            System.out.println("Rank: " + u.getRank());
-            System.out.println("Points: " + u.getPoints());
-            System.out.println("--------------------------");
+    private void viewAllUsers(Scanner sc) {
+        System.out.print("Filter by rank (Bronze/Silver/Gold/Platinum, Enter for all): ");
+        String rankInput = sc.nextLine().trim();
+        String rank = AccountIndex.ALL_RANKS;
+        for (Rank r : Rank.values()) {
+            if (r.label.equalsIgnoreCase(rankInput)) rank = r.label;
+        }
+        System.out.print("Sort by [1] Balance [2] Points [3] Total Transacted: ");
+        AccountIndex.SortKey sortKey = switch (sc.nextLine().trim()) {
+            case "2" -> AccountIndex.SortKey.POINTS;
+            case "3" -> AccountIndex.SortKey.TOTAL_TRANSACTED;
+            default -> AccountIndex.SortKey.BALANCE;
+        };
+
+        String cursor = null;
+        int shown = 0;
+        while (true) {
+            AccountIndex.Page page = accountIndex.query(rank, sortKey, PAGE_SIZE, cursor);
+            System.out.println("\n=== REGISTERED USERS (" + (rank.equals(AccountIndex.ALL_RANKS) ? "all ranks" : rank) + ", by " + sortKey + ") ===");
+            // Stored balances, as the index ranks them: accruing here would log interest
+            // without saving users.txt and reorder the list under the page cursor.
+            for (UserAccount u : page.accounts) {
+                System.out.printf("%4d. %-20s %-9s PHP %,14.2f  %8d pts  PHP %,16.2f transacted  %s%n", ++shown,
+                        u.getUsername(), u.getRank(), u.getBalance(), u.getPoints(), u.getTotalTransacted(), u.getMobile());
+            }
+            if (page.nextCursor == null) {
+                System.out.println("-- end of list --");
+                return;
+            }
+            System.out.print("[N] Next page  [B] Back: ");
+            if (!sc.nextLine().trim().equalsIgnoreCase("N")) return;
+            cursor = page.nextCursor;
         }
     }
 
     private void showSystemSummary() {
         System.out.println("\n=== SYSTEM SUMMARY DASHBOARD ===");
-        System.out.println("Total Users: " + fileManager.getTotalUsersCount());
+        System.out.println("Total Users: " + users.size());
+        StringBuilder tiers = new StringBuilder();
+        for (Rank r : Rank.values()) tiers.append(tiers.length() == 0 ? "" : ", ").append(r.label).append(" ").append(rankBoard.count(r));
+        System.out.println("By Rank: " + tiers);
         System.out.println("Total Active Vouchers: " + fileManager.getTotalVouchersCount());
         System.out.println("Last Scheduler Run: " + fileManager.readLastSchedulerRun());
         System.out.println("Total System Revenue: PHP " + String.format("%,.2f", fileManager.readSystemRevenue()));
@@ -134,7 +187,7 @@ public class AdminControl {
         System.out.print("Are you sure you want to delete user '" + target + "'? (Y/N): ");
         String confirm = sc.nextLine().trim().toUpperCase();
         if (confirm.equals("Y")) {
-            users.remove(target);
+            AccountEvents.removed(users.remove(target));
             fileManager.saveUsers(users);
             System.out.println("User '" + target + "' successfully deleted.");
             logAdminAction("Deleted user: " + target);
@@ -145,6 +198,7 @@ public class AdminControl {
         System.out.print("Are you sure you want to delete ALL users? (Y/N): ");
         String confirm = sc.nextLine().trim().toUpperCase();
         if (confirm.equals("Y")) {
+            for (UserAccount u : users.values()) AccountEvents.removed(u);
             users.clear();
             fileManager.saveUsers(users);
             System.out.println("All user accounts have been deleted.");
@@ -156,24 +210,8 @@ public class AdminControl {
         System.out.print("WARNING: This will clear ALL system data (logs, vouchers, users). \nProceed? (Y/N): ");
         String confirm = sc.nextLine().trim().toUpperCase();
         if (confirm.equals("Y")) {
-            String[] files = {
-                DATA_DIR + "users.txt",
-                DATA_DIR + "transactions.txt",
-                DATA_DIR + "vouchers.txt",
-                DATA_DIR + "voucher_log.txt",
-                DATA_DIR + "points_log.txt",
-                DATA_DIR + "interest_log.txt",
-                DATA_DIR + "system_revenue.txt",
-                DATA_DIR + "scheduler_log.txt",
-                ADMIN_LOG
-            };
-            for (String file : files) {
-                try (PrintWriter pw = new PrintWriter(file)) {
-                    pw.print("");
-                } catch (IOException e) {
-                    System.out.println("Error clearing " + file);
-                }
-            }
+            fileManager.clearAllData();
+            for (UserAccount u : users.values()) AccountEvents.removed(u);
             users.clear();
             fileManager.saveUsers(users);
             System.out.println("All system text files have been cleared.");
@@ -183,86 +221,372 @@ public class AdminControl {
 
     private void viewAdminLog() {
         System.out.println("\n=== ADMIN ACTIVITY LOG ===");
-        try (BufferedReader br = new BufferedReader(new FileReader(ADMIN_LOG))) {
-            String line;
-            while ((line = br.readLine()) != null) System.out.println(line);
+        try {
+            fileManager.forEachLine(StorageEngine.Log.ADMIN, System.out::println);
         } catch (IOException e) {
             System.out.println("Error reading admin log.");
         }
     }
 
     private void generateVouchers(Scanner sc) {
+        CampaignEngine campaigns = scheduler.getCampaigns();
         while (true) {
             System.out.println("\n+==========================================================+");
             System.out.println("|                   VOUCHER GENERATION MENU                |");
             System.out.println("+==========================================================+");
             System.out.println("| [1] Generate Monthly Vouchers                            |");
-            System.out.println("| [2] Generate Holiday Vouchers                            |");
+            System.out.println("| [2] Run Today's Campaigns (holidays etc.)                |");
             System.out.println("| [3] Generate One Voucher per User                        |");
-            System.out.println("| [4] Back                                                 |");
+            System.out.println("| [4] Run a Campaign by Name                               |");
+            System.out.println("| [5] Campaigns & Issuance Stats                           |");
+            System.out.println("| [6] Back                                                 |");
             System.out.println("+----------------------------------------------------------+");
             System.out.print("Choose: ");
             String ch = sc.nextLine().trim();
 
             switch (ch) {
-                case "1" -> {
-                    VoucherSystem.generateMonthlyVouchers(users);
-                    System.out.println("Monthly vouchers generated successfully.");
-                    logAdminAction("Generated monthly vouchers.");
-                }
+                case "1" -> runCampaign(campaigns, "monthly");
                 case "2" -> {
-                    VoucherSystem.generateHolidayVoucher(users);
-                    logAdminAction("Generated holiday vouchers.");
+                    int issued = campaigns.runDay(AppClock.today());
+                    System.out.println(issued + " voucher(s) issued by today's campaigns.");
+                    logAdminAction("Ran today's campaigns (" + issued + " vouchers).");
                 }
-                case "3" -> {
-                    generateSingleVoucherForAllUsers();
-                    logAdminAction("Generated one voucher per user.");
+                case "3" -> runCampaign(campaigns, "one-per-user");
+                case "4" -> {
+                    System.out.print("Campaign name: ");
+                    runCampaign(campaigns, sc.nextLine().trim());
                 }
-                case "4" -> { return; }
+                case "5" -> viewCampaigns(sc, campaigns);
+                case "6" -> { return; }
                 default -> System.out.println("Invalid choice.");
             }
         }
     }
 
-    private void generateSingleVoucherForAllUsers() {
-        File voucherFile = new File(DATA_DIR + "vouchers.txt");
-        Set<String> existingUsersWithVouchers = new HashSet<>();
+    private void runCampaign(CampaignEngine campaigns, String name) {
+        int issued = campaigns.runNow(name);
+        if (issued < 0) {
+            System.out.println("No campaign named '" + name + "' in " + campaigns.getLocation() + ".");
+            return;
+        }
+        System.out.println(issued + " voucher(s) issued by campaign '" + name + "'.");
+        logAdminAction("Ran campaign " + name + " (" + issued + " vouchers).");
+    }
+
+    private void viewCampaigns(Scanner sc, CampaignEngine campaigns) {
+        System.out.println("\n=== CAMPAIGNS ===");
+        for (CampaignEngine.Campaign c : campaigns.getCampaigns()) System.out.println("  " + c);
+        Map<String, Long> today = campaigns.preview(AppClock.today());
+        System.out.println(today.isEmpty() ? "No campaign is due today." : "Due today (accounts targeted): " + today);
+        Map<String, CampaignEngine.Stats> stats = campaigns.getStats();
+        if (stats.isEmpty()) {
+            System.out.println("No campaign has run since startup.");
+        } else {
+            System.out.printf("%n%-16s %6s %12s %10s %16s %-11s %8s%n", "Campaign", "Runs", "Evaluated", "Issued", "Value (PHP)", "Last Run", "Last ms");
+            for (Map.Entry<String, CampaignEngine.Stats> e : stats.entrySet()) {
+                CampaignEngine.Stats s = e.getValue();
+                System.out.printf("%-16s %,6d %,12d %,10d %,16.2f %-11s %,8d%n", e.getKey(), s.getRuns(), s.getEvaluated(),
+                        s.getIssued(), s.getValue(), s.getLastRun(), s.getLastMillis());
+            }
+        }
+        System.out.print("Reload campaigns from " + campaigns.getLocation() + "? (Y/N): ");
+        if (sc.nextLine().trim().equalsIgnoreCase("Y")) {
+            campaigns.reload();
+            System.out.println(campaigns.getCampaigns().size() + " campaign(s) loaded.");
+            logAdminAction("Reloaded voucher campaigns.");
+        }
+    }
+
+    private void viewMerchantReport() {
+        System.out.println("\n=== MERCHANT REPORT ===");
+        System.out.printf("%-7s %-24s %16s %8s %14s %8s  %s%n", "ID", "Merchant", "Lifetime (PHP)", "Count", "Unsettled", "Count", "Last Settled");
+        for (MerchantLedger.Merchant m : merchants.listByVolume()) {
+            System.out.printf("%-7s %-24s %,16.2f %8d %,14.2f %8d  %s%n", m.getId(), m.getName(),
+                    m.getLifetimeTotal(), m.getLifetimeCount(), m.getPendingTotal(), m.getPendingCount(),
+                    m.getLastSettled().isEmpty() ? "never" : m.getLastSettled());
+        }
+    }
+
+    private void viewVelocity(Scanner sc) {
+        System.out.println("\n=== VELOCITY RULES (op,window,maxCount,maxAmount) ===");
+        for (VelocityMonitor.Rule rule : velocity.getRules()) System.out.println("  " + rule);
+        System.out.println("Checks: " + velocity.getChecks() + "  Blocked: " + velocity.getRejections()
+                + "  Accounts tracked: " + velocity.getTrackedAccounts());
+        System.out.printf("Added latency: p50 %.1f us, p99 %.1f us, p99.9 %.1f us%n",
+                velocity.latencyPercentileMicros(50), velocity.latencyPercentileMicros(99), velocity.latencyPercentileMicros(99.9));
+        System.out.print("Reload rules from " + velocity.getRulesLocation() + "? (Y/N): ");
+        if (sc.nextLine().trim().equalsIgnoreCase("Y")) {
+            velocity.reloadRules();
+            System.out.println(velocity.getRules().size() + " rule(s) loaded.");
+            logAdminAction("Reloaded velocity rules.");
+        }
+    }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(voucherFile))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length >= 2) {
-                    existingUsersWithVouchers.add(parts[0].trim().toLowerCase());
+    private void generateStatements(Scanner sc) {
+        System.out.print("Statement month (yyyy-MM, Enter for last month, B to go back): ");
+        String input = sc.nextLine().trim();
+        if (input.equalsIgnoreCase("B")) return;
+        YearMonth month;
+        try {
+            month = input.isEmpty() ? AppClock.currentMonth().minusMonths(1) : YearMonth.parse(input);
+        } catch (DateTimeParseException e) {
+            System.out.println("Invalid month.");
+            return;
+        }
+        System.out.println("Generating statements for " + month + "...");
+        StatementGenerator.Result result = new StatementGenerator(fileManager, users).generate(month);
+        System.out.println(result.statements + " statement(s) written to " + result.directory);
+        System.out.println("Log lines read: " + result.linesRead + " (unparsed: " + result.unparsed + ") in " + result.elapsedMillis + " ms.");
+        logAdminAction("Generated " + result.statements + " statements for " + month + ".");
+    }
+
+    private void compactDataFiles() {
+        System.out.println("Compacting data files (wallet operations continue meanwhile)...");
+        List<CompactionService.Result> results = compaction.compactAll();
+        if (results.isEmpty()) {
+            System.out.println("A compaction is already running.");
+            return;
+        }
+        long total = 0;
+        for (CompactionService.Result r : results) {
+            System.out.printf("  %-18s %,14d bytes reclaimed  (%d ms)%n", r.target, r.bytesReclaimed, r.elapsedMillis);
+            total += r.bytesReclaimed;
+        }
+        System.out.printf("Total reclaimed from live files: %,d bytes.%n", total);
+        logAdminAction("Compacted data files (" + total + " bytes).");
+    }
+
+    private void showAllocationStats() {
+        if (!OperationProfiler.isSupported()) {
+            System.out.println("This JVM does not report per-thread allocation.");
+        } else {
+            Map<String, OperationProfiler.Stat> stats = OperationProfiler.snapshot();
+            if (stats.isEmpty()) System.out.println("No operations recorded yet.");
+            else {
+                System.out.printf("%-20s %10s %12s %12s %10s %8s%n", "Operation", "Calls", "Avg bytes", "Max bytes", "Budget", "Over");
+                for (Map.Entry<String, OperationProfiler.Stat> e : stats.entrySet()) {
+                    OperationProfiler.Stat s = e.getValue();
+                    Long budget = OperationProfiler.BUDGETS.get(e.getKey());
+                    System.out.printf("%-20s %,10d %,12d %,12d %10s %,8d%s%n", e.getKey(), s.getCalls(), s.getAverageBytes(),
+                            s.getMaxBytes(), budget == null ? "-" : String.format("%,d", budget), s.getOverBudget(),
+                            budget != null && s.getAverageBytes() > budget ? "  <- avg over budget" : "");
                 }
             }
-        } catch (IOException e) {
-            System.out.println("Error reading existing vouchers.");
         }
+        System.out.printf("%nStop-the-world GC pauses since start: %,d  (total %,d ms, longest %,d ms)%n",
+                OperationProfiler.getGcPauses(), OperationProfiler.getGcPauseMillis(), OperationProfiler.getGcMaxPauseMillis());
+        for (Map.Entry<String, long[]> e : OperationProfiler.collectorTotals().entrySet()) {
+            System.out.printf("  %-24s %,8d collections  %,10d ms%n", e.getKey(), e.getValue()[0], e.getValue()[1]);
+        }
+    }
 
-        try (PrintWriter pw = new PrintWriter(new FileWriter(voucherFile, true))) {
-            for (UserAccount user : users.values()) {
-                if (existingUsersWithVouchers.contains(user.getUsername().toLowerCase())) {
-                    System.out.println("User '" + user.getUsername() + "' already has a voucher. Skipped.");
-                    continue;
+    private void showRankBoard() {
+        System.out.println("\n=== ACCOUNTS BY RANK ===");
+        for (Rank r : Rank.values()) {
+            System.out.printf("  %-9s %,10d   (from PHP %,.0f transacted)%n", r.label, rankBoard.count(r), r.threshold);
+        }
+        System.out.println("Rank changes since start (from -> to):");
+        boolean any = false;
+        for (Rank from : Rank.values()) {
+            for (Rank to : Rank.values()) {
+                long n = rankBoard.transitions(from, to);
+                if (n == 0) continue;
+                System.out.printf("  %-9s -> %-9s %,10d%n", from.label, to.label, n);
+                any = true;
+            }
+        }
+        if (!any) System.out.println("  none");
+
+        for (AccountIndex.SortKey key : RankBoard.BOARDS) {
+            boolean money = key != AccountIndex.SortKey.POINTS;
+            System.out.println("\n=== TOP " + rankBoard.getSize() + " BY " + key + " ===");
+            int place = 0;
+            for (RankBoard.Entry e : rankBoard.top(key)) {
+                UserAccount u = users.get(e.username);
+                System.out.printf(money ? "%4d. %-20s %-9s PHP %,16.2f%n" : "%4d. %-20s %-9s %,10.0f pts%n",
+                        ++place, e.username, u == null ? "-" : u.getRank(), e.value);
+            }
+            if (place == 0) System.out.println("  no accounts");
+        }
+    }
+
+    private void logIntegrity(Scanner sc) {
+        List<LogChain> chains = new ArrayList<>(fileManager.getChains());
+        while (true) {
+            System.out.println("\n+==========================================================+");
+            System.out.println("|                      LOG INTEGRITY                       |");
+            System.out.println("+==========================================================+");
+            if (chains.isEmpty()) System.out.println("| No chained logs (in-memory storage).                     |");
+            for (LogChain c : chains) {
+                if (c.isDamaged()) System.out.printf("| %-18s DAMAGED: %s%n", c.getLog().fileName, c.getDamage());
+                else System.out.printf("| %-18s %,12d entries  %,6d checkpoints%n", c.getLog().fileName, c.getEntries(), c.getCheckpoints().size());
+            }
+            System.out.println("| [1] Verify All Chained Logs                              |");
+            System.out.println("| [2] Prove One Entry                                      |");
+            System.out.println("| [3] Show Current Roots                                   |");
+            System.out.println("| [4] Rebuild a Damaged Chain                              |");
+            System.out.println("| [0/B] Back                                               |");
+            System.out.println("+----------------------------------------------------------+");
+            System.out.print("Choose: ");
+            String ch = sc.nextLine().trim().toUpperCase();
+            switch (ch) {
+                case "0", "B" -> {
+                    return;
+                }
+                case "1" -> {
+                    int threads = Runtime.getRuntime().availableProcessors();
+                    for (LogChain c : chains) {
+                        try {
+                            LogChain.Report r = c.verify(threads);
+                            System.out.printf("%s: %,d entries, %,d blocks, %,d checkpoints in %,d ms on %d thread(s) - %s%n",
+                                    r.log, r.entries, r.blocks, r.checkpointsChecked, r.elapsedMillis, r.threads, r.ok() ? "INTACT" : "TAMPERED");
+                            for (String problem : r.problems) System.out.println("    " + problem);
+                            if (r.newer > 0) System.out.println("    " + r.newer + " entries appended during the check were not included.");
+                        } catch (IOException e) {
+                            System.out.println("Error verifying " + c.getLog().fileName + ": " + e.getMessage());
+                        }
+                    }
+                    logAdminAction("Verified log hash chains.");
                 }
+                case "2" -> proveEntry(sc, chains);
+                case "3" -> {
+                    // Copy these somewhere outside the data directory; a later verification
+                    // against a saved root shows the history was not rewritten wholesale.
+                    fileManager.sealLogs();
+                    for (LogChain c : chains) {
+                        if (c.isDamaged()) System.out.printf("%-18s damaged, no root%n", c.getLog().fileName);
+                        else System.out.printf("%-18s %,12d entries  root %s%n", c.getLog().fileName, c.getSealed(), LogChain.hex(c.root()));
+                    }
+                }
+                case "4" -> rebuildChains(sc, chains);
+                default -> System.out.println("Invalid choice.");
+            }
+        }
+    }
 
-                String rank = user.getRank();
-                double value = switch (rank) {
-                    case "Bronze" -> (Math.random() * 20) + 1;
-                    case "Silver" -> (Math.random() * 50) + 50;
-                    case "Gold" -> (Math.random() * 150) + 100;
-                    case "Platinum" -> (Math.random() * 200) + 250;
-                    default -> (Math.random() * 10) + 1;
-                };
-
-                String code = "VCHR-" + user.getUsername().toUpperCase() + "-" + (int) (Math.random() * 9000 + 1000);
-                pw.println(user.getUsername() + "," + code + "," + String.format("%.2f", value));
-                fileManager.logVoucher(user.getUsername(), code, value);
-                System.out.println("Voucher created for " + user.getUsername() + " (" + code + ") - PHP " + String.format("%.2f", value));
+    // A rebuilt chain vouches for the log as it is now, edits included, so this asks first
+    // and leaves a record in the admin log.
+    private void rebuildChains(Scanner sc, List<LogChain> chains) {
+        List<LogChain> damaged = new ArrayList<>();
+        for (LogChain c : chains) if (c.isDamaged()) damaged.add(c);
+        if (damaged.isEmpty()) {
+            System.out.println("No hash chain is damaged.");
+            return;
+        }
+        for (LogChain c : damaged) {
+            String reason = c.getDamage();
+            System.out.println(c.getLog().fileName + ": " + reason);
+            System.out.print("Rebuild it from the log as it stands? The old files are kept as *.damaged. (Y/N): ");
+            if (!sc.nextLine().trim().equalsIgnoreCase("Y")) continue;
+            try {
+                long entries = c.rebuild();
+                logAdminAction("Rebuilt the damaged hash chain for " + c.getLog().fileName + " (" + reason + ") over " + entries + " entries.");
+                System.out.printf("Rebuilt the hash chain for %s over %,d entries.%n", c.getLog().fileName, entries);
+            } catch (IOException | UncheckedIOException e) {
+                System.out.println("Error rebuilding " + c.getLog().fileName + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void proveEntry(Scanner sc, List<LogChain> chains) {
+        for (int i = 0; i < chains.size(); i++) System.out.println("[" + (i + 1) + "] " + chains.get(i).getLog().fileName);
+        System.out.print("Log: ");
+        String pick = sc.nextLine().trim();
+        System.out.print("Entry number (1 = oldest): ");
+        String number = sc.nextLine().trim();
+        long index;
+        LogChain chain;
+        try {
+            chain = chains.get(Integer.parseInt(pick) - 1);
+            index = Long.parseLong(number) - 1;
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            System.out.println("Invalid choice.");
+            return;
+        }
+        String[] line = {null};
+        long[] seen = {0};
+        try {
+            fileManager.forEachLine(chain.getLog(), l -> {
+                if (seen[0]++ == index) line[0] = l;
+            });
+            long start = System.nanoTime();
+            LogChain.Proof proof = chain.prove(index);
+            long micros = (System.nanoTime() - start) / 1000;
+            if (line[0] == null) {
+                System.out.println("Entry not found in the log.");
+                return;
             }
+            System.out.println(line[0]);
+            System.out.printf("Proof: %d hashes against root %s (%,d entries), built in %,d us - %s%n", proof.hashes(),
+                    LogChain.hex(proof.root), proof.entries, micros, proof.verify(line[0]) ? "VALID" : "DOES NOT MATCH");
+        } catch (IllegalArgumentException e) {
+            System.out.println("No such entry (it may not be sealed yet).");
         } catch (IOException e) {
-            System.out.println("Error generating vouchers.");
+            System.out.println("Error reading " + chain.getLog().fileName + ": " + e.getMessage());
+        }
+    }
+
+    private void reconcileLedger() {
+        System.out.println("Reconciling balances against the logs...");
+        LedgerReconciler.Report report = new LedgerReconciler(fileManager, users).reconcile();
+        fileManager.saveReconciliationReport(report);
+        PrintWriter out = new PrintWriter(System.out, true);
+        report.writeTo(out, 20);
+        out.flush();
+        System.out.println("Full report saved to " + fileManager.getReconciliationReportLocation());
+    }
+
+    private void bulkData(Scanner sc) {
+        BulkDataTool tool = new BulkDataTool(fileManager, users, scheduler.getInterestAccrual());
+        while (true) {
+            System.out.println("\n+==========================================================+");
+            System.out.println("|                  BULK IMPORT / EXPORT                    |");
+            System.out.println("+==========================================================+");
+            System.out.println("| [1] Import Accounts (CSV)                                |");
+            System.out.println("| [2] Import Vouchers (CSV)                                |");
+            System.out.println("| [3] Import Transactions (CSV)                            |");
+            System.out.println("| [4] Export Accounts (CSV)                                |");
+            System.out.println("| [5] Export Vouchers (CSV)                                |");
+            System.out.println("| [6] Export Transactions (CSV)                            |");
+            System.out.println("| [0/B] Back                                               |");
+            System.out.println("+----------------------------------------------------------+");
+            System.out.print("Choose: ");
+            String ch = sc.nextLine().trim().toUpperCase();
+            if (ch.equals("0") || ch.equals("B")) return;
+            if (!ch.matches("[1-6]")) {
+                System.out.println("Invalid choice.");
+                continue;
+            }
+
+            System.out.print("CSV file path: ");
+            String path = sc.nextLine().trim();
+            long start = System.currentTimeMillis();
+            try {
+                switch (ch) {
+                    case "1", "2", "3" -> {
+                        BulkDataTool.ImportReport report = switch (ch) {
+                            case "1" -> tool.importAccounts(path);
+                            case "2" -> tool.importVouchers(path);
+                            default -> tool.importTransactions(path);
+                        };
+                        System.out.println("Imported " + report.accepted + " record(s), rejected " + report.rejected.size() + ".");
+                        for (String r : report.rejected) System.out.println("  " + r);
+                        logAdminAction("Bulk import from " + path + ": " + report.accepted + " accepted.");
+                    }
+                    default -> {
+                        int n = switch (ch) {
+                            case "4" -> tool.exportAccounts(path);
+                            case "5" -> tool.exportVouchers(path);
+                            default -> tool.exportTransactions(path);
+                        };
+                        System.out.println("Exported " + n + " record(s) to " + path + ".");
+                        logAdminAction("Bulk export to " + path + ": " + n + " records.");
+                    }
+                }
+                System.out.println("Completed in " + (System.currentTimeMillis() - start) + " ms.");
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Bulk operation failed: " + e.getMessage());
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,70 @@
+package azurewallet.system;
+
+import java.time.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The wallet's notion of "now". Business time (lockouts, voucher expiry, scheduler
+// periods, log timestamps, velocity windows) reads this clock instead of the system
+// clock, so a simulation can swap in a Simulated clock and run years in seconds.
+// Durations that measure our own work (benchmarks, "completed in" timings) stay on the
+// system clock.
+public final class AppClock {
+    private static volatile Clock clock = Clock.systemDefaultZone();
+
+    private AppClock() {}
+
+    // Install before any accounts are loaded or jobs scheduled.
+    public static void use(Clock c) {
+        clock = c;
+    }
+
+    public static Clock get() { return clock; }
+
+    public static long millis() { return clock.millis(); }
+
+    public static LocalDate today() { return LocalDate.now(clock); }
+
+    public static LocalDateTime now() { return LocalDateTime.now(clock); }
+
+    public static YearMonth currentMonth() { return YearMonth.now(clock); }
+
+    // A clock that only moves when told to. Safe to read from any thread.
+    public static class Simulated extends Clock {
+        private final AtomicLong millis;
+        private final ZoneId zone;
+
+        public Simulated(LocalDateTime start, ZoneId zone) {
+            this(new AtomicLong(start.atZone(zone).toInstant().toEpochMilli()), zone);
+        }
+
+        private Simulated(AtomicLong millis, ZoneId zone) {
+            this.millis = millis;
+            this.zone = zone;
+        }
+
+        public void advance(Duration d) {
+            millis.addAndGet(d.toMillis());
+        }
+
+        // Moves forward to the given time; never backwards.
+        public void advanceTo(LocalDateTime t) {
+            long target = t.atZone(zone).toInstant().toEpochMilli();
+            millis.accumulateAndGet(target, Math::max);
+        }
+
+        @Override
+        public ZoneId getZone() { return zone; }
+
+        // Shares the same underlying time, so advancing either moves both.
+        @Override
+        public Clock withZone(ZoneId z) {
+            return z.equals(zone) ? this : new Simulated(millis, z);
+        }
+
+        @Override
+        public long millis() { return millis.get(); }
+
+        @Override
+        public Instant instant() { return Instant.ofEpochMilli(millis.get()); }
+    }
+}
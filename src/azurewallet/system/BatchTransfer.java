@@ -0,0 +1,150 @@
+package azurewallet.system;
+
+import java.io.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import azurewallet.models.UserAccount;
+
+// Payroll-style send-to-many. The whole batch is validated against the sender's limit
+// and balance, and the total debited, under the sender's lock; each recipient is looked
+// up once there and that account is the one credited. Credits then take only the
+// receiver's lock, one at a time, and the log lines (one write) and the single users.txt
+// save happen with no account lock held, as in WalletOperations.sendMoney, so a batch
+// never nests two accounts' locks or an account lock inside the users.txt save.
+public class BatchTransfer {
+    public static final int MAX_LEGS = 1_000;
+
+    private final FileManager fileManager;
+    private final Map<String, UserAccount> users;
+    private final InterestAccrual interest;
+    private final VelocityMonitor velocity;
+
+    public BatchTransfer(FileManager fileManager, Map<String, UserAccount> users, InterestAccrual interest, VelocityMonitor velocity) {
+        this.fileManager = fileManager;
+        this.users = users;
+        this.interest = interest;
+        this.velocity = velocity;
+    }
+
+    public static class Leg {
+        public final String recipient;
+        public final double amount;
+        public String status = "PENDING";
+
+        public Leg(String recipient, double amount) {
+            this.recipient = recipient;
+            this.amount = amount;
+        }
+    }
+
+    public static class Result {
+        public final List<Leg> legs;
+        public final boolean applied;
+        public final double total;
+
+        Result(List<Leg> legs, boolean applied, double total) {
+            this.legs = legs;
+            this.applied = applied;
+            this.total = total;
+        }
+    }
+
+    // One "recipient,amount" per line; blank lines and lines starting with # are skipped.
+    public static List<Leg> readLegs(String path) throws IOException {
+        List<Leg> legs = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                legs.add(parseLeg(line, ","));
+            }
+        }
+        return legs;
+    }
+
+    // Inline form: "ana:500, ben:1200"
+    public static List<Leg> parseLegs(String inline) {
+        List<Leg> legs = new ArrayList<>();
+        for (String part : inline.split(",")) {
+            if (!part.isBlank()) legs.add(parseLeg(part.trim(), ":"));
+        }
+        return legs;
+    }
+
+    private static Leg parseLeg(String text, String separator) {
+        int at = text.lastIndexOf(separator);
+        String recipient = at < 0 ? text : text.substring(0, at);
+        double amount;
+        try {
+            amount = at < 0 ? 0 : Double.parseDouble(text.substring(at + 1).trim());
+        } catch (NumberFormatException e) {
+            amount = Double.NaN;
+        }
+        return new Leg(recipient.trim().toLowerCase(), amount);
+    }
+
+    public Result execute(UserAccount sender, List<Leg> legs) {
+        double total = 0;
+        List<UserAccount> receivers = new ArrayList<>(legs.size());
+        synchronized (sender) {
+            interest.accrue(sender);
+            boolean valid = !legs.isEmpty() && legs.size() <= MAX_LEGS;
+            for (Leg leg : legs) {
+                UserAccount receiver = users.get(leg.recipient);
+                receivers.add(receiver);
+                String problem = validate(sender, leg, receiver);
+                leg.status = problem == null ? "OK" : problem;
+                if (problem != null) valid = false;
+                else total += leg.amount;
+            }
+            if (legs.size() > MAX_LEGS) {
+                for (Leg leg : legs) leg.status = "REJECTED (more than " + MAX_LEGS + " recipients)";
+            }
+            if (valid && total > sender.getBalance()) {
+                for (Leg leg : legs) leg.status = "REJECTED (batch total exceeds balance)";
+                valid = false;
+            }
+            if (valid) {
+                // One admission under the batch rules, whatever the number of recipients.
+                String problem = velocity.admit(sender, VelocityMonitor.Op.BATCH, 1, total);
+                if (problem != null) {
+                    for (Leg leg : legs) leg.status = "REJECTED (" + problem + ")";
+                    valid = false;
+                }
+            }
+            if (!valid) {
+                for (Leg leg : legs) {
+                    if (leg.status.equals("OK")) leg.status = "NOT SENT (batch rejected)";
+                }
+                return new Result(legs, false, total);
+            }
+            sender.withdraw(total);
+        }
+
+        LocalDateTime now = AppClock.now();
+        List<String> lines = new ArrayList<>(legs.size() * 2);
+        for (int i = 0; i < legs.size(); i++) {
+            Leg leg = legs.get(i);
+            UserAccount receiver = receivers.get(i);
+            synchronized (receiver) {
+                interest.accrue(receiver);
+                receiver.deposit(leg.amount);
+            }
+            lines.add(fileManager.formatTransaction(now, sender.getUsername(), "Sent to " + leg.recipient, leg.amount));
+            lines.add(fileManager.formatTransaction(now, leg.recipient, "Received from " + sender.getUsername(), leg.amount));
+            leg.status = "SENT";
+        }
+        fileManager.appendTransactionLines(lines);
+        fileManager.saveUsers(users);
+        return new Result(legs, true, total);
+    }
+
+    private String validate(UserAccount sender, Leg leg, UserAccount receiver) {
+        if (receiver == null) return "REJECTED (recipient not found)";
+        if (leg.recipient.equals(sender.getUsername())) return "REJECTED (cannot send to yourself)";
+        if (Double.isNaN(leg.amount) || leg.amount <= 0) return "REJECTED (invalid amount)";
+        if (leg.amount > sender.getSendLimit()) return "REJECTED (exceeds send limit)";
+        return null;
+    }
+}
@@ -0,0 +1,359 @@
+package azurewallet.system;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import azurewallet.models.UserAccount;
+import azurewallet.models.VoucherIndex;
+
+// Fixed-layout binary records (DataOutputStream): no string splitting or number parsing
+// on load. Files carry a .bin suffix so they can sit next to the text files in one data
+// directory. Each file starts with a magic number and format version; with a data key
+// configured, that whole stream sits inside DataCipher records.
+//
+// Version 2 added a type byte to voucher records. Every other file has the same layout in
+// both versions and is read either way; a version 1 vouchers.bin is rewritten as version 2
+// when the engine starts.
+public class BinaryStorageEngine implements StorageEngine {
+    private static final int MAGIC = 0x415A5702; // "AZW" + format version 2
+    private static final int MAGIC_V1 = 0x415A5701;
+    private static final int VOUCHER = 0;
+    private static final int TOMBSTONE = 1;
+
+    private final String dataDir;
+    private long tombstones;
+    private final DataCipher cipher;
+
+    public BinaryStorageEngine(String dataDir) {
+        this(dataDir, DataCipher.get());
+    }
+
+    public BinaryStorageEngine(String dataDir, DataCipher cipher) {
+        this.dataDir = dataDir;
+        this.cipher = cipher;
+        new File(dataDir).mkdirs();
+        File[] existing = new File(dataDir).listFiles((d, name) -> name.endsWith(".bin"));
+        if (existing == null) return;
+        try {
+            for (File f : existing) cipher.adopt(f.toPath());
+            upgradeVouchers();
+        } catch (IOException e) {
+            System.out.println("| Error initializing data files: " + e.getMessage());
+        }
+    }
+
+    // Appending typed records to a version 1 file would make it unreadable, so the old
+    // records are rewritten before anything is appended.
+    private synchronized void upgradeVouchers() throws IOException {
+        try (Input in = open(path("vouchers"))) {
+            if (in == null || in.version != 1) return;
+        }
+        List<VoucherIndex.Voucher> vouchers = loadVouchers();
+        saveVouchers(vouchers);
+        System.out.println("| Upgraded vouchers.bin to format version 2 (" + vouchers.size() + " vouchers).");
+    }
+
+    private String path(String name) {
+        return dataDir + name + ".bin";
+    }
+
+    @Override
+    public String describe() {
+        return "binary files in " + dataDir;
+    }
+
+    // =============== ACCOUNTS ===============
+
+    @Override
+    public Map<String, UserAccount> loadAccounts() {
+        Map<String, UserAccount> users = new ConcurrentHashMap<>();
+        try (DataInputStream in = open(path("users"))) {
+            if (in == null) return users;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String username = in.readUTF();
+                String pinHash = in.readUTF();
+                String mobile = in.readUTF();
+                double balance = in.readDouble();
+                int points = in.readInt();
+                double totalTransacted = in.readDouble();
+                String rank = in.readUTF();
+                int failedAttempts = in.readInt();
+                long lockEndTime = in.readLong();
+                int accrual = in.readInt();
+                users.put(username, new UserAccount(username, pinHash, mobile, balance, points, totalTransacted,
+                        rank, failedAttempts, lockEndTime, accrual < 0 ? null : YearMonth.of(accrual / 12, accrual % 12 + 1)));
+            }
+        } catch (IOException e) {
+            System.out.println("| Error loading users.                                    |");
+        }
+        return users;
+    }
+
+    @Override
+    public void saveAccounts(Collection<UserAccount> accounts) throws IOException {
+        List<UserAccount> snapshot = new ArrayList<>(accounts);
+        rewrite(path("users"), out -> {
+            out.writeInt(snapshot.size());
+            for (UserAccount u : snapshot) {
+                synchronized (u) {
+                    out.writeUTF(u.getUsername());
+                    out.writeUTF(u.getPinHash());
+                    out.writeUTF(u.getMobile());
+                    out.writeDouble(u.getBalance());
+                    out.writeInt(u.getPoints());
+                    out.writeDouble(u.getTotalTransacted());
+                    out.writeUTF(u.getRank());
+                    out.writeInt(u.getFailedAttempts());
+                    out.writeLong(u.getLockEndTime());
+                    YearMonth ym = u.getLastAccrual();
+                    out.writeInt(ym == null ? -1 : ym.getYear() * 12 + ym.getMonthValue() - 1);
+                }
+            }
+        });
+    }
+
+    // =============== VOUCHERS ===============
+
+    // Vouchers are a sequence of records with no count, so issuing can append. Each record
+    // starts with a type byte: a voucher, or a tombstone removing an earlier one. Version 1
+    // files hold untyped voucher records only.
+    @Override
+    public List<VoucherIndex.Voucher> loadVouchers() {
+        Map<String, VoucherIndex.Voucher> live = new LinkedHashMap<>();
+        long dead = 0;
+        synchronized (this) {
+            try (Input in = open(path("vouchers"))) {
+                if (in != null) {
+                    while (true) {
+                        int type = recordType(in);
+                        if (type < 0) break;
+                        String username = in.readUTF();
+                        String code = in.readUTF();
+                        if (type == TOMBSTONE) {
+                            live.remove(username + "," + code);
+                            dead++;
+                        } else {
+                            live.put(username + "," + code, new VoucherIndex.Voucher(username, code, in.readDouble(), LocalDate.ofEpochDay(in.readLong())));
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("Error loading vouchers.");
+            }
+            tombstones = dead;
+        }
+        return new ArrayList<>(live.values());
+    }
+
+    @Override
+    public synchronized void appendVouchers(List<VoucherIndex.Voucher> vouchers) throws IOException {
+        try (DataOutputStream out = append(path("vouchers"))) {
+            for (VoucherIndex.Voucher v : vouchers) writeVoucher(out, v);
+        }
+    }
+
+    @Override
+    public synchronized void saveVouchers(Collection<VoucherIndex.Voucher> vouchers) throws IOException {
+        rewrite(path("vouchers"), out -> {
+            for (VoucherIndex.Voucher v : vouchers) writeVoucher(out, v);
+        });
+        tombstones = 0;
+    }
+
+    @Override
+    public synchronized void removeVouchers(List<VoucherIndex.Voucher> vouchers) throws IOException {
+        try (DataOutputStream out = append(path("vouchers"))) {
+            for (VoucherIndex.Voucher v : vouchers) {
+                out.writeByte(TOMBSTONE);
+                out.writeUTF(v.getUsername());
+                out.writeUTF(v.getCode());
+            }
+        }
+        tombstones += vouchers.size();
+    }
+
+    // Binary records load fast enough that compaction simply rewrites the live set while
+    // holding the engine lock.
+    @Override
+    public synchronized long compactVouchers() throws IOException {
+        long before = new File(path("vouchers")).length();
+        if (tombstones == 0 || before == 0) return 0;
+        saveVouchers(loadVouchers());
+        return before - new File(path("vouchers")).length();
+    }
+
+    @Override
+    public synchronized long voucherTombstones() {
+        return tombstones;
+    }
+
+    // The next voucher record's type byte, or -1 at the end of the file.
+    private static int recordType(Input in) throws IOException {
+        if (in.version != 1) return in.read();
+        in.mark(1);
+        int next = in.read();
+        in.reset();
+        return next < 0 ? -1 : VOUCHER;
+    }
+
+    private static void writeVoucher(DataOutputStream out, VoucherIndex.Voucher v) throws IOException {
+        out.writeByte(VOUCHER);
+        out.writeUTF(v.getUsername());
+        out.writeUTF(v.getCode());
+        out.writeDouble(v.getValue());
+        out.writeLong(v.getExpiry().toEpochDay());
+    }
+
+    // =============== EVENT LOGS ===============
+
+    // Log lines are length-prefixed UTF-8, so a line is never limited to 64 KB.
+    @Override
+    public synchronized void append(Log log, List<String> lines) throws IOException {
+        try (DataOutputStream out = append(path(log.fileName))) {
+            for (String line : lines) {
+                byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+
+    @Override
+    public void forEach(Log log, Consumer<String> action) throws IOException {
+        try (DataInputStream in = open(path(log.fileName))) {
+            if (in == null) return;
+            byte[] buf = new byte[256];
+            while (true) {
+                int len;
+                try {
+                    len = in.readInt();
+                } catch (EOFException eof) {
+                    return;
+                }
+                if (len > buf.length) buf = new byte[Math.max(len, buf.length * 2)];
+                in.readFully(buf, 0, len);
+                action.accept(new String(buf, 0, len, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void clear(Log log) throws IOException {
+        rewrite(path(log.fileName), out -> { });
+    }
+
+    @Override
+    public synchronized void replace(Log log, List<String> lines) throws IOException {
+        rewrite(path(log.fileName), out -> {
+            for (String line : lines) {
+                byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        });
+    }
+
+    // =============== STATE ===============
+
+    @Override
+    public Map<String, String> loadState(String name) {
+        Map<String, String> state = new ConcurrentHashMap<>();
+        try (DataInputStream in = open(path(name))) {
+            if (in == null) return state;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) state.put(in.readUTF(), in.readUTF());
+        } catch (IOException e) {
+            System.out.println("| Error loading " + name + ".");
+        }
+        return state;
+    }
+
+    @Override
+    public synchronized void saveState(String name, Map<String, String> state) throws IOException {
+        Map<String, String> snapshot = new HashMap<>(state);
+        rewrite(path(name), out -> {
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, String> e : snapshot.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeUTF(e.getValue());
+            }
+        });
+    }
+
+    // =============== DOCUMENTS ===============
+
+    @Override
+    public String loadDocument(String name) throws IOException {
+        return DocumentFiles.load(dataDir, name);
+    }
+
+    @Override
+    public void saveDocument(String name, String text) throws IOException {
+        DocumentFiles.save(dataDir, name, text);
+    }
+
+    @Override
+    public String documentLocation(String name) {
+        return DocumentFiles.path(dataDir, name).toString();
+    }
+
+    // =============== FILE HELPERS ===============
+
+    private interface Body {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    // A file being read, with the format version from its header.
+    private static final class Input extends DataInputStream {
+        final int version;
+
+        Input(InputStream in, int version) {
+            super(in);
+            this.version = version;
+        }
+    }
+
+    // Null when the file does not exist yet; otherwise positioned after the header.
+    private Input open(String file) throws IOException {
+        Path p = Paths.get(file);
+        if (!Files.exists(p)) return null;
+        InputStream raw = new BufferedInputStream(cipher.open(Files.newInputStream(p)), 1 << 16);
+        try {
+            int magic = new DataInputStream(raw).readInt();
+            if (magic != MAGIC && magic != MAGIC_V1) throw new IOException("not an Azure binary file: " + file);
+            return new Input(raw, magic == MAGIC ? 2 : 1);
+        } catch (EOFException empty) {
+            // Zero-length file: treat it as having no records.
+            raw.close();
+            return new Input(InputStream.nullInputStream(), 2);
+        } catch (IOException e) {
+            raw.close();
+            throw e;
+        }
+    }
+
+    // The cipher buffers a whole batch into one record, so no extra buffering here.
+    private DataOutputStream append(String file) throws IOException {
+        Path p = Paths.get(file);
+        boolean fresh = !Files.exists(p) || Files.size(p) == 0;
+        DataOutputStream out = new DataOutputStream(cipher.appendTo(p));
+        if (fresh) out.writeInt(MAGIC);
+        return out;
+    }
+
+    private void rewrite(String target, Body body) throws IOException {
+        Path tmp = Paths.get(target + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                cipher.create(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16)), 1 << 16))) {
+            out.writeInt(MAGIC);
+            body.write(out);
+        }
+        Files.move(tmp, Paths.get(target), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
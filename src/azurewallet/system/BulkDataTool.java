@@ -0,0 +1,300 @@
+package azurewallet.system;
+
+import java.io.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import azurewallet.models.AccountEvents;
+import azurewallet.models.HashUtil;
+import azurewallet.models.UserAccount;
+import azurewallet.models.VoucherIndex;
+import azurewallet.models.VoucherSystem;
+
+// Streams CSV in and out of the data files. Input is read in fixed-size chunks that are
+// parsed and validated on a worker pool; results are consumed in input order so every
+// target file is written in a single sequential pass. Checks that depend on earlier
+// rows (duplicate usernames and mobiles) run in that ordered pass too, so the first
+// occurrence in the file always wins.
+//
+// Imported balances and points are logged as "Opening balance" transactions and
+// "earned ... (imported)" points lines, so the ledger reconciler accounts for them.
+//
+// accounts:     username,pin-or-sha256,mobile[,balance,points,totalTransacted]
+// vouchers:     username,code,value,expiry(yyyy-mm-dd)
+// transactions: timestamp(iso),username,type,amount
+public class BulkDataTool {
+    private static final int CHUNK_LINES = 10_000;
+
+    private final FileManager fileManager;
+    private final Map<String, UserAccount> users;
+    private final InterestAccrual interest;
+    private final int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    public BulkDataTool(FileManager fileManager, Map<String, UserAccount> users, InterestAccrual interest) {
+        this.fileManager = fileManager;
+        this.users = users;
+        this.interest = interest;
+    }
+
+    public static class ImportReport {
+        public int accepted;
+        public final List<String> rejected = new ArrayList<>();
+
+        void reject(long lineNo, String reason) {
+            // Keep the report bounded on very large inputs.
+            if (rejected.size() < 1000) rejected.add("line " + lineNo + ": " + reason);
+        }
+    }
+
+    // One parsed chunk: accepted values with their line numbers, plus per-line rejections.
+    private static class Chunk<T> {
+        final List<T> accepted = new ArrayList<>();
+        final List<Long> acceptedLines = new ArrayList<>();
+        final TreeMap<Long, String> rejected = new TreeMap<>();
+    }
+
+    // =============== IMPORT ===============
+
+    public ImportReport importAccounts(String csvPath) throws IOException {
+        // Only touched by the ordered drain.
+        Set<String> usernames = new HashSet<>();
+        Set<String> mobiles = new HashSet<>();
+        for (UserAccount u : users.values()) {
+            usernames.add(u.getUsername());
+            mobiles.add(u.getMobile());
+        }
+
+        ImportReport report = streamChunks(csvPath, line -> {
+            String[] p = splitCsv(line);
+            if (p.length != 3 && p.length != 6) throw new IllegalArgumentException("expected 3 or 6 fields");
+            String username = p[0].trim().toLowerCase();
+            String secret = p[1].trim();
+            String mobile = p[2].trim();
+            if (username.length() < 2) throw new IllegalArgumentException("invalid username");
+            if (!mobile.matches("^09\\d{9}$")) throw new IllegalArgumentException("invalid mobile " + mobile);
+            String pinHash;
+            if (secret.matches("\\d{4}")) pinHash = HashUtil.hash(secret);
+            else if (secret.matches("[0-9a-f]{64}")) pinHash = secret;
+            else throw new IllegalArgumentException("PIN must be 4 digits or a SHA-256 hash");
+
+            double balance = p.length == 6 ? Double.parseDouble(p[3]) : 0.0;
+            int points = p.length == 6 ? Integer.parseInt(p[4]) : 0;
+            double transacted = p.length == 6 ? Double.parseDouble(p[5]) : 0.0;
+            if (balance < 0 || points < 0 || transacted < 0) throw new IllegalArgumentException("negative amount");
+
+            UserAccount acc = new UserAccount(username, pinHash, mobile, balance, points, transacted, "Bronze", 0, 0);
+            acc.updateRank();
+            return acc;
+        }, acc -> {
+            if (usernames.contains(acc.getUsername())) return "duplicate username " + acc.getUsername();
+            if (mobiles.contains(acc.getMobile())) return "duplicate mobile " + acc.getMobile();
+            usernames.add(acc.getUsername());
+            mobiles.add(acc.getMobile());
+            return null;
+        }, chunk -> {
+            List<String> openings = new ArrayList<>();
+            for (UserAccount acc : chunk) {
+                interest.accrue(acc);
+                users.put(acc.getUsername(), acc);
+                AccountEvents.changed(acc);
+                if (acc.getBalance() > 0) {
+                    openings.add(fileManager.formatTransaction(AppClock.now(), acc.getUsername(), "Opening balance", acc.getBalance()));
+                }
+                if (acc.getPoints() > 0) fileManager.logPoints(acc.getUsername(), "earned", acc.getPoints(), "imported");
+            }
+            fileManager.appendTransactionLines(openings);
+        });
+
+        if (report.accepted > 0) fileManager.saveUsers(users);
+        return report;
+    }
+
+    public ImportReport importVouchers(String csvPath) throws IOException {
+        // Only touched by the ordered drain.
+        Set<String> seen = new HashSet<>();
+        return streamChunks(csvPath, line -> {
+            String[] p = splitCsv(line);
+            if (p.length != 4) throw new IllegalArgumentException("expected 4 fields");
+            String username = p[0].trim().toLowerCase();
+            if (!users.containsKey(username)) throw new IllegalArgumentException("unknown user " + username);
+            double value = Double.parseDouble(p[2]);
+            if (value <= 0) throw new IllegalArgumentException("invalid value");
+            return new VoucherIndex.Voucher(username, p[1].trim(), value, LocalDate.parse(p[3].trim()));
+        }, v -> {
+            if (!seen.add(v.getUsername() + "," + v.getCode()) || VoucherSystem.hasVoucher(v.getUsername(), v.getCode())) {
+                return "duplicate voucher " + v.getCode() + " for " + v.getUsername();
+            }
+            return null;
+        }, VoucherSystem::issueVouchers);
+    }
+
+    public ImportReport importTransactions(String csvPath) throws IOException {
+        return streamChunks(csvPath, line -> {
+            String[] p = splitCsv(line);
+            if (p.length != 4) throw new IllegalArgumentException("expected 4 fields");
+            String username = p[1].trim().toLowerCase();
+            if (!users.containsKey(username)) throw new IllegalArgumentException("unknown user " + username);
+            return fileManager.formatTransaction(LocalDateTime.parse(p[0].trim()), username, p[2], Double.parseDouble(p[3]));
+        }, null, fileManager::appendTransactionLines);
+    }
+
+    // Reads CHUNK_LINES-sized chunks, parses them in parallel and hands accepted records to
+    // the sink in input order. admit (optional) runs on that ordered path and returns a
+    // rejection reason or null. At most 2 chunks per worker are in flight, bounding memory.
+    private <T> ImportReport streamChunks(String csvPath, Function<String, T> parser, Function<T, String> admit,
+                                          Consumer<List<T>> sink) throws IOException {
+        ImportReport report = new ImportReport();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Deque<Future<Chunk<T>>> inFlight = new ArrayDeque<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(csvPath), 1 << 16)) {
+            long lineNo = 0;
+            List<String> lines = new ArrayList<>(CHUNK_LINES);
+            String line;
+            long chunkStart = 1;
+            while ((line = br.readLine()) != null) {
+                lineNo++;
+                if (lineNo == 1 && isHeader(line)) continue;
+                if (lines.isEmpty()) chunkStart = lineNo;
+                lines.add(line);
+                if (lines.size() == CHUNK_LINES) {
+                    inFlight.add(pool.submit(parseTask(lines, chunkStart, parser)));
+                    lines = new ArrayList<>(CHUNK_LINES);
+                    if (inFlight.size() >= threads * 2) drain(inFlight.poll(), admit, sink, report);
+                }
+            }
+            if (!lines.isEmpty()) inFlight.add(pool.submit(parseTask(lines, chunkStart, parser)));
+            while (!inFlight.isEmpty()) drain(inFlight.poll(), admit, sink, report);
+        } finally {
+            pool.shutdownNow();
+        }
+        return report;
+    }
+
+    private <T> Callable<Chunk<T>> parseTask(List<String> lines, long firstLine, Function<String, T> parser) {
+        return () -> {
+            Chunk<T> chunk = new Chunk<>();
+            for (int i = 0; i < lines.size(); i++) {
+                if (lines.get(i).isBlank()) continue;
+                try {
+                    chunk.accepted.add(parser.apply(lines.get(i)));
+                    chunk.acceptedLines.add(firstLine + i);
+                } catch (RuntimeException e) {
+                    chunk.rejected.put(firstLine + i, e.getMessage());
+                }
+            }
+            return chunk;
+        };
+    }
+
+    private <T> void drain(Future<Chunk<T>> future, Function<T, String> admit, Consumer<List<T>> sink, ImportReport report) throws IOException {
+        Chunk<T> chunk;
+        try {
+            chunk = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Import failed: " + e.getCause().getMessage(), e);
+        }
+        List<T> admitted = chunk.accepted;
+        if (admit != null) {
+            admitted = new ArrayList<>(chunk.accepted.size());
+            for (int i = 0; i < chunk.accepted.size(); i++) {
+                String reason = admit.apply(chunk.accepted.get(i));
+                if (reason == null) admitted.add(chunk.accepted.get(i));
+                else chunk.rejected.put(chunk.acceptedLines.get(i), reason);
+            }
+        }
+        sink.accept(admitted);
+        report.accepted += admitted.size();
+        for (Map.Entry<Long, String> r : chunk.rejected.entrySet()) report.reject(r.getKey(), r.getValue());
+    }
+
+    // =============== EXPORT ===============
+
+    public int exportAccounts(String csvPath) throws IOException {
+        int count = 0;
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(csvPath), 1 << 16))) {
+            pw.println("username,pinHash,mobile,balance,points,totalTransacted");
+            for (UserAccount u : users.values()) {
+                pw.println(u.getUsername() + "," + u.getPinHash() + "," + u.getMobile() + "," + u.getBalance()
+                        + "," + u.getPoints() + "," + u.getTotalTransacted());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int exportVouchers(String csvPath) throws IOException {
+        int count = 0;
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(csvPath), 1 << 16))) {
+            pw.println("username,code,value,expiry");
+            for (UserAccount u : users.values()) {
+                for (VoucherIndex.Voucher v : VoucherSystem.getUserVouchers(u.getUsername())) {
+                    pw.println(v.toFileFormat());
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    // Streams transactions.txt line by line into CSV; nothing is held beyond one line.
+    public int exportTransactions(String csvPath) throws IOException {
+        int[] count = {0};
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(csvPath), 1 << 16))) {
+            pw.println("timestamp,username,type,amount");
+            fileManager.forEachTransactionLine(line -> {
+                int dash = line.indexOf(" - ");
+                int colon = line.indexOf(": ", dash);
+                int php = line.lastIndexOf(" - PHP ");
+                if (dash < 0 || colon < 0 || php < colon) return;
+                String amount = line.substring(php + 7).replace(",", "");
+                pw.println(line.substring(0, dash) + "," + line.substring(dash + 3, colon) + ","
+                        + quoteCsv(line.substring(colon + 2, php)) + "," + amount);
+                count[0]++;
+            });
+        }
+        return count[0];
+    }
+
+    // =============== CSV HELPERS ===============
+
+    private static boolean isHeader(String line) {
+        String lower = line.toLowerCase();
+        return lower.startsWith("username,") || lower.startsWith("timestamp,");
+    }
+
+    static String[] splitCsv(String line) {
+        if (line.indexOf('"') < 0) return line.split(",", -1);
+        List<String> fields = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    sb.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        fields.add(sb.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    static String quoteCsv(String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0) return field;
+        return "\"" + field.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -0,0 +1,531 @@
+package azurewallet.system;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.time.Period;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import azurewallet.models.UserAccount;
+import azurewallet.models.VoucherIndex;
+import azurewallet.models.VoucherSystem;
+
+// Declarative voucher campaigns. The campaigns.txt document (a file in the data directory
+// with the file backends) holds value tables (a PHP range per rank) and campaigns (when
+// they run, who qualifies, which table pays):
+//
+//   table,holiday,Bronze=50-100,Silver=150-300,Gold=400-600,Platinum=800-1000
+//   campaign,xmas,12-25,XMAS{yyyy},holiday,1m
+//   campaign,gold-bonus,monthly:15,*,standard,14d,rank=Gold+Platinum,points>=100
+//
+// A day's campaigns are targeted together in one pass over the population: each
+// partition copies its accounts' rank, points, balance and lifetime transacted into
+// primitive columns once, then every campaign's predicates run as tight loops over those
+// columns, narrowing a selection mask. Adding campaigns adds column loops, not scans of
+// the account map. Days with no campaign in window do not touch the accounts at all.
+public class CampaignEngine {
+    private static final String FILE = "campaigns.txt";
+    private static final String[] DEFAULTS = {
+        "# Value tables: table,name,Bronze=min-max,Silver=min-max,Gold=min-max,Platinum=min-max",
+        "table,standard,Bronze=1-20,Silver=50-100,Gold=100-250,Platinum=250-500",
+        "table,holiday,Bronze=50-100,Silver=150-300,Gold=400-600,Platinum=800-1000",
+        "# What the admin's one-voucher-per-user run has always paid (Platinum tops out at 450).",
+        "table,admin,Bronze=1-21,Silver=50-100,Gold=100-250,Platinum=250-450",
+        "#",
+        "# Campaigns: campaign,name,window,code,table,validity[,predicate...]",
+        "#   window    MM-dd | MM-dd..MM-dd (every year) | yyyy-MM-dd..yyyy-MM-dd | monthly:D | manual",
+        "#   code      * for a random per-user code, or fixed text; {yyyy} and {MM} are filled in",
+        "#   validity  Nd, Nm or Ny after the issue day",
+        "#   predicate rank=Gold+Platinum | points>=N | points<N | balance>=N | balance<N",
+        "#             | transacted>=N | transacted<N | novoucher",
+        "campaign,monthly,monthly:1,*,standard,1m",
+        "campaign,one-per-user,manual,*,admin,1m,novoucher",
+        "campaign,new-year,01-01,NEWYR{yyyy},holiday,1m",
+        "campaign,edsa,02-25,EDSA{yyyy},holiday,1m",
+        "campaign,araw,04-09,ARAW{yyyy},holiday,1m",
+        "campaign,independence,06-12,INDEP{yyyy},holiday,1m",
+        "campaign,all-saints,11-01,SAINT{yyyy},holiday,1m",
+        "campaign,bonifacio,11-30,BONI{yyyy},holiday,1m",
+        "campaign,christmas,12-25,XMAS{yyyy},holiday,1m",
+        "campaign,rizal,12-30,RIZAL{yyyy},holiday,1m"
+    };
+    // Column index for UserAccount.getRank(); anything else is paid as Bronze.
+    private static final String[] RANKS = {"Bronze", "Silver", "Gold", "Platinum"};
+    private static final int PARALLEL_THRESHOLD = 50_000;
+
+    private final FileManager fileManager;
+    private final Map<String, UserAccount> users;
+    private final int partitions = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private volatile List<Campaign> campaigns = List.of();
+
+    public CampaignEngine(FileManager fileManager, Map<String, UserAccount> users) {
+        this.fileManager = fileManager;
+        this.users = users;
+        reload();
+    }
+
+    // =============== DEFINITIONS ===============
+
+    // Rank-indexed [min, max) PHP ranges.
+    public static class ValueTable {
+        final String name;
+        final double[] min = new double[RANKS.length];
+        final double[] max = new double[RANKS.length];
+
+        ValueTable(String name) {
+            this.name = name;
+        }
+
+        double draw(int rank, Random rnd) {
+            double v = min[rank] + rnd.nextDouble() * (max[rank] - min[rank]);
+            return Math.round(v * 100) / 100.0;
+        }
+    }
+
+    private enum WindowKind { YEARLY, DATES, MONTHLY, MANUAL }
+
+    private static class Window {
+        WindowKind kind;
+        MonthDay fromDay, toDay;
+        LocalDate from, to;
+        int dayOfMonth;
+
+        boolean contains(LocalDate d) {
+            return switch (kind) {
+                case MANUAL -> false;
+                case MONTHLY -> d.getDayOfMonth() == Math.min(dayOfMonth, d.lengthOfMonth());
+                case DATES -> !d.isBefore(from) && !d.isAfter(to);
+                case YEARLY -> {
+                    MonthDay md = MonthDay.from(d);
+                    // A window such as 12-20..01-05 wraps over the new year.
+                    yield fromDay.isAfter(toDay)
+                            ? !md.isBefore(fromDay) || !md.isAfter(toDay)
+                            : !md.isBefore(fromDay) && !md.isAfter(toDay);
+                }
+            };
+        }
+    }
+
+    // Column predicate: clears mask[i] for accounts that do not qualify.
+    private interface Filter {
+        void apply(Columns c, boolean[] mask);
+    }
+
+    public static class Campaign {
+        final String name;
+        final Window window;
+        final String code;
+        final ValueTable table;
+        final Period validity;
+        final List<Filter> filters;
+        final boolean needsVoucherColumn;
+        final String definition;
+
+        Campaign(String name, Window window, String code, ValueTable table, Period validity,
+                 List<Filter> filters, boolean needsVoucherColumn, String definition) {
+            this.name = name;
+            this.window = window;
+            this.code = code;
+            this.table = table;
+            this.validity = validity;
+            this.filters = filters;
+            this.needsVoucherColumn = needsVoucherColumn;
+            this.definition = definition;
+        }
+
+        public String getName() { return name; }
+
+        @Override
+        public String toString() { return definition; }
+
+        // Null for per-user random codes.
+        String fixedCode(LocalDate day) {
+            if (code.equals("*")) return null;
+            return code.replace("{yyyy}", String.valueOf(day.getYear()))
+                       .replace("{MM}", String.format("%02d", day.getMonthValue()));
+        }
+    }
+
+    public static class Stats {
+        private final AtomicLong runs = new AtomicLong();
+        private final AtomicLong evaluated = new AtomicLong();
+        private final AtomicLong issued = new AtomicLong();
+        private final DoubleAdder value = new DoubleAdder();
+        private volatile String lastRun = "";
+        private volatile long lastMillis;
+
+        public long getRuns() { return runs.get(); }
+        public long getEvaluated() { return evaluated.get(); }
+        public long getIssued() { return issued.get(); }
+        public double getValue() { return value.sum(); }
+        public String getLastRun() { return lastRun; }
+        public long getLastMillis() { return lastMillis; }
+    }
+
+    public List<Campaign> getCampaigns() { return campaigns; }
+
+    // Stats for every campaign that has run since startup, by name.
+    public Map<String, Stats> getStats() { return new TreeMap<>(stats); }
+
+    public String getLocation() { return fileManager.documentLocation(FILE); }
+
+    public void reload() {
+        List<String> lines;
+        try {
+            String text = fileManager.loadDocument(FILE);
+            if (text == null) {
+                text = String.join(System.lineSeparator(), DEFAULTS) + System.lineSeparator();
+                fileManager.saveDocument(FILE, text);
+            }
+            lines = text.lines().toList();
+        } catch (IOException e) {
+            System.out.println("Error loading campaigns; using defaults.");
+            lines = List.of(DEFAULTS);
+        }
+        campaigns = List.copyOf(parse(lines));
+    }
+
+    static List<Campaign> parse(List<String> lines) {
+        Map<String, ValueTable> tables = new HashMap<>();
+        List<String[]> pending = new ArrayList<>();
+        int lineNo = 0;
+        for (String raw : lines) {
+            lineNo++;
+            String line = raw.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] p = line.split(",");
+            if (p[0].equals("table")) {
+                ValueTable t = parseTable(p);
+                if (t == null) System.out.println("Ignoring invalid value table on line " + lineNo + ": " + line);
+                else tables.put(t.name, t);
+            } else if (p[0].equals("campaign")) {
+                pending.add(p);
+            } else {
+                System.out.println("Ignoring unknown campaign line " + lineNo + ": " + line);
+            }
+        }
+        // Tables may be declared after the campaigns that use them.
+        List<Campaign> result = new ArrayList<>();
+        for (String[] p : pending) {
+            Campaign c = parseCampaign(p, tables);
+            if (c == null) System.out.println("Ignoring invalid campaign: " + String.join(",", p));
+            else result.add(c);
+        }
+        return result;
+    }
+
+    private static ValueTable parseTable(String[] p) {
+        if (p.length != 2 + RANKS.length) return null;
+        ValueTable t = new ValueTable(p[1].trim());
+        boolean[] seen = new boolean[RANKS.length];
+        try {
+            for (int i = 2; i < p.length; i++) {
+                String[] kv = p[i].trim().split("=");
+                int rank = rankIndex(kv[0].trim());
+                String[] range = kv[1].split("-");
+                if (rank < 0 || range.length != 2) return null;
+                t.min[rank] = Double.parseDouble(range[0].trim());
+                t.max[rank] = Double.parseDouble(range[1].trim());
+                if (t.max[rank] < t.min[rank]) return null;
+                seen[rank] = true;
+            }
+        } catch (RuntimeException e) {
+            return null;
+        }
+        for (boolean s : seen) if (!s) return null;
+        return t;
+    }
+
+    private static Campaign parseCampaign(String[] p, Map<String, ValueTable> tables) {
+        if (p.length < 6) return null;
+        try {
+            Window window = parseWindow(p[2].trim());
+            ValueTable table = tables.get(p[4].trim());
+            Period validity = parseValidity(p[5].trim());
+            String code = p[3].trim();
+            if (window == null || table == null || validity == null || code.isEmpty()) return null;
+            List<Filter> filters = new ArrayList<>();
+            boolean voucherColumn = false;
+            for (int i = 6; i < p.length; i++) {
+                String pred = p[i].trim();
+                if (pred.equals("novoucher")) voucherColumn = true;
+                Filter f = parseFilter(pred);
+                if (f == null) return null;
+                filters.add(f);
+            }
+            return new Campaign(p[1].trim(), window, code, table, validity, List.copyOf(filters), voucherColumn, String.join(",", p));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Window parseWindow(String s) {
+        Window w = new Window();
+        if (s.equals("manual")) {
+            w.kind = WindowKind.MANUAL;
+        } else if (s.startsWith("monthly:")) {
+            w.kind = WindowKind.MONTHLY;
+            w.dayOfMonth = Integer.parseInt(s.substring(8));
+            if (w.dayOfMonth < 1 || w.dayOfMonth > 31) return null;
+        } else {
+            String[] range = s.split("\\.\\.");
+            String from = range[0], to = range.length > 1 ? range[1] : range[0];
+            if (from.length() == 5) {
+                w.kind = WindowKind.YEARLY;
+                w.fromDay = MonthDay.parse("--" + from);
+                w.toDay = MonthDay.parse("--" + to);
+            } else {
+                w.kind = WindowKind.DATES;
+                w.from = LocalDate.parse(from);
+                w.to = LocalDate.parse(to);
+            }
+        }
+        return w;
+    }
+
+    private static Period parseValidity(String s) {
+        int n = Integer.parseInt(s.substring(0, s.length() - 1));
+        return switch (s.charAt(s.length() - 1)) {
+            case 'd' -> Period.ofDays(n);
+            case 'm' -> Period.ofMonths(n);
+            case 'y' -> Period.ofYears(n);
+            default -> null;
+        };
+    }
+
+    private static Filter parseFilter(String pred) {
+        if (pred.equals("novoucher")) {
+            return (c, mask) -> {
+                for (int i = 0; i < c.size; i++) mask[i] &= !c.hasVoucher[i];
+            };
+        }
+        if (pred.startsWith("rank=")) {
+            boolean[] allowed = new boolean[RANKS.length];
+            for (String r : pred.substring(5).split("\\+")) {
+                int idx = rankIndex(r.trim());
+                if (idx < 0) return null;
+                allowed[idx] = true;
+            }
+            return (c, mask) -> {
+                for (int i = 0; i < c.size; i++) mask[i] &= allowed[c.rank[i]];
+            };
+        }
+        boolean atLeast = pred.contains(">=");
+        String[] kv = pred.split(atLeast ? ">=" : "<");
+        if (kv.length != 2) return null;
+        double bound = Double.parseDouble(kv[1].trim());
+        return switch (kv[0].trim()) {
+            case "points" -> atLeast
+                    ? (c, mask) -> { for (int i = 0; i < c.size; i++) mask[i] &= c.points[i] >= bound; }
+                    : (c, mask) -> { for (int i = 0; i < c.size; i++) mask[i] &= c.points[i] < bound; };
+            case "balance" -> atLeast
+                    ? (c, mask) -> { for (int i = 0; i < c.size; i++) mask[i] &= c.balance[i] >= bound; }
+                    : (c, mask) -> { for (int i = 0; i < c.size; i++) mask[i] &= c.balance[i] < bound; };
+            case "transacted" -> atLeast
+                    ? (c, mask) -> { for (int i = 0; i < c.size; i++) mask[i] &= c.transacted[i] >= bound; }
+                    : (c, mask) -> { for (int i = 0; i < c.size; i++) mask[i] &= c.transacted[i] < bound; };
+            default -> null;
+        };
+    }
+
+    private static int rankIndex(String rank) {
+        for (int i = 0; i < RANKS.length; i++) if (RANKS[i].equalsIgnoreCase(rank)) return i;
+        return -1;
+    }
+
+    // =============== TARGETING ===============
+
+    // One partition's accounts, copied into primitive columns.
+    private static class Columns {
+        final int size;
+        final UserAccount[] accounts;
+        final int[] rank;
+        final int[] points;
+        final double[] balance;
+        final double[] transacted;
+        boolean[] hasVoucher;
+
+        Columns(List<UserAccount> slice) {
+            size = slice.size();
+            accounts = slice.toArray(new UserAccount[0]);
+            rank = new int[size];
+            points = new int[size];
+            balance = new double[size];
+            transacted = new double[size];
+            for (int i = 0; i < size; i++) {
+                UserAccount a = accounts[i];
+                rank[i] = Math.max(0, rankIndex(a.getRank()));
+                points[i] = a.getPoints();
+                balance[i] = a.getBalance();
+                transacted[i] = a.getTotalTransacted();
+            }
+        }
+    }
+
+    // Scheduler entry point: issues every campaign whose window contains the day.
+    public int runDay(LocalDate day) {
+        List<Campaign> due = new ArrayList<>();
+        for (Campaign c : campaigns) if (c.window.contains(day)) due.add(c);
+        return due.isEmpty() ? 0 : issue(due, day);
+    }
+
+    // Admin entry point: runs one campaign for today regardless of its window. Returns the
+    // number of vouchers issued, or -1 if there is no campaign with that name.
+    public int runNow(String name) {
+        for (Campaign c : campaigns) {
+            if (c.name.equalsIgnoreCase(name)) return issue(List.of(c), AppClock.today());
+        }
+        return -1;
+    }
+
+    // Dry run: how many accounts each campaign due on the day would reach. Issues nothing.
+    public Map<String, Long> preview(LocalDate day) {
+        List<Campaign> due = new ArrayList<>();
+        for (Campaign c : campaigns) if (c.window.contains(day)) due.add(c);
+        Map<String, Long> counts = new LinkedHashMap<>();
+        if (due.isEmpty()) return counts;
+        List<Partial> partials = targetAll(new ArrayList<>(users.values()), due, day, false);
+        for (int i = 0; i < due.size(); i++) {
+            long n = 0;
+            for (Partial p : partials) n += p.issued[i];
+            counts.merge(due.get(i).name, n, Long::sum);
+        }
+        return counts;
+    }
+
+    // Every campaign sees the population as it was before this run, so two campaigns on
+    // the same day cannot affect each other's targeting.
+    private int issue(List<Campaign> due, LocalDate day) {
+        long start = System.currentTimeMillis();
+        List<UserAccount> population = new ArrayList<>(users.values());
+        List<Partial> partials = targetAll(population, due, day, true);
+        if (partials == null) return 0;
+
+        List<VoucherIndex.Voucher> batch = new ArrayList<>();
+        for (Partial p : partials) batch.addAll(p.vouchers);
+        List<VoucherIndex.Voucher> skipped = batch.isEmpty() ? List.of() : VoucherSystem.issueVouchers(batch);
+        if (!skipped.isEmpty()) uncount(partials, skipped);
+
+        long elapsed = System.currentTimeMillis() - start;
+        for (int i = 0; i < due.size(); i++) {
+            Stats s = stats.computeIfAbsent(due.get(i).name, k -> new Stats());
+            long issued = 0;
+            double value = 0;
+            for (Partial p : partials) {
+                issued += p.issued[i];
+                value += p.value[i];
+            }
+            s.runs.incrementAndGet();
+            s.evaluated.addAndGet(population.size());
+            s.issued.addAndGet(issued);
+            s.value.add(value);
+            s.lastRun = day.toString();
+            s.lastMillis = elapsed;
+        }
+        return batch.size() - skipped.size();
+    }
+
+    // Takes vouchers the user already held (same fixed code) back out of the run's stats.
+    private static void uncount(List<Partial> partials, List<VoucherIndex.Voucher> skipped) {
+        Set<VoucherIndex.Voucher> dup = Collections.newSetFromMap(new IdentityHashMap<>());
+        dup.addAll(skipped);
+        for (Partial p : partials) {
+            for (int j = 0; j < p.vouchers.size(); j++) {
+                VoucherIndex.Voucher v = p.vouchers.get(j);
+                if (!dup.contains(v)) continue;
+                int c = p.campaign.get(j);
+                p.issued[c]--;
+                p.value[c] -= v.getValue();
+            }
+        }
+    }
+
+    // Splits the population into contiguous slices, one per worker; small populations are
+    // targeted inline. Null if a worker failed.
+    private List<Partial> targetAll(List<UserAccount> population, List<Campaign> due, LocalDate day, boolean issue) {
+        boolean voucherColumn = due.stream().anyMatch(c -> c.needsVoucherColumn);
+
+        int parts = population.size() < PARALLEL_THRESHOLD ? 1 : partitions;
+        int sliceSize = (population.size() + parts - 1) / Math.max(parts, 1);
+        List<Callable<Partial>> work = new ArrayList<>();
+        for (int p = 0; p < parts; p++) {
+            List<UserAccount> slice = population.subList(Math.min(p * sliceSize, population.size()),
+                    Math.min((p + 1) * sliceSize, population.size()));
+            // Seeds are drawn in partition order, so a seeded run issues the same vouchers.
+            Random rnd = issue ? VoucherSystem.forkRandom() : null;
+            work.add(() -> target(slice, due, day, rnd, voucherColumn, issue));
+        }
+
+        List<Partial> partials = new ArrayList<>();
+        if (parts == 1) {
+            try {
+                partials.add(work.get(0).call());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        } else {
+            ExecutorService pool = Executors.newFixedThreadPool(parts);
+            try {
+                for (Future<Partial> f : pool.invokeAll(work)) partials.add(f.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                System.out.println("Campaign targeting failed: " + e.getCause());
+                return null;
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return partials;
+    }
+
+    private static class Partial {
+        final List<VoucherIndex.Voucher> vouchers = new ArrayList<>();
+        final List<Integer> campaign = new ArrayList<>(); // index into due, per voucher
+        final long[] issued;
+        final double[] value;
+
+        Partial(int campaigns) {
+            issued = new long[campaigns];
+            value = new double[campaigns];
+        }
+    }
+
+    private static Partial target(List<UserAccount> slice, List<Campaign> due, LocalDate day, Random rnd,
+                                  boolean voucherColumn, boolean issue) {
+        Columns cols = new Columns(slice);
+        if (voucherColumn) {
+            String[] names = new String[cols.size];
+            for (int i = 0; i < cols.size; i++) names[i] = cols.accounts[i].getUsername();
+            cols.hasVoucher = VoucherSystem.hasVouchers(names);
+        }
+        Partial out = new Partial(due.size());
+        boolean[] mask = new boolean[cols.size];
+        for (int c = 0; c < due.size(); c++) {
+            Campaign campaign = due.get(c);
+            Arrays.fill(mask, true);
+            for (Filter f : campaign.filters) f.apply(cols, mask);
+            LocalDate expiry = day.plus(campaign.validity);
+            String fixed = campaign.fixedCode(day);
+            if (!issue) {
+                for (int i = 0; i < cols.size; i++) if (mask[i]) out.issued[c]++;
+                continue;
+            }
+            for (int i = 0; i < cols.size; i++) {
+                if (!mask[i]) continue;
+                String user = cols.accounts[i].getUsername();
+                double value = campaign.table.draw(cols.rank[i], rnd);
+                String code = fixed != null ? fixed : VoucherSystem.generateVoucherCode(user, rnd);
+                out.vouchers.add(new VoucherIndex.Voucher(user, code, value, expiry));
+                out.campaign.add(c);
+                out.issued[c]++;
+                out.value[c] += value;
+            }
+        }
+        return out;
+    }
+}
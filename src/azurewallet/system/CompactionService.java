@@ -0,0 +1,68 @@
+package azurewallet.system;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import azurewallet.models.VoucherSystem;
+
+// Shrinks the data files while the wallet keeps running. Voucher removals are appended
+// as tombstones and folded away here; event logs are sealed into compressed segments
+// once their live file grows large. The storage engine does the actual snapshot, tail
+// catch-up and atomic swap. Only one run happens at a time.
+public class CompactionService {
+    private static final long LOG_SEAL_BYTES = 64L * 1024 * 1024;
+    private static final long MIN_TOMBSTONES = 1_000;
+
+    private final StorageEngine storage;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public CompactionService(StorageEngine storage) {
+        this.storage = storage;
+    }
+
+    public static class Result {
+        public final String target;
+        public final long bytesReclaimed;
+        public final long elapsedMillis;
+
+        Result(String target, long bytesReclaimed, long elapsedMillis) {
+            this.target = target;
+            this.bytesReclaimed = bytesReclaimed;
+            this.elapsedMillis = elapsedMillis;
+        }
+    }
+
+    // Compacts vouchers and every log now, regardless of size. Empty if another run is
+    // already in progress.
+    public List<Result> compactAll() {
+        return run(true);
+    }
+
+    // Scheduled entry point: vouchers once tombstones outnumber live vouchers, logs once
+    // their live file passes LOG_SEAL_BYTES.
+    public List<Result> compactIfNeeded() {
+        return run(false);
+    }
+
+    private List<Result> run(boolean force) {
+        if (!running.compareAndSet(false, true)) return List.of();
+        List<Result> results = new ArrayList<>();
+        try {
+            long tombstones = storage.voucherTombstones();
+            if (force || tombstones > Math.max(MIN_TOMBSTONES, VoucherSystem.getTotalVouchersCount())) {
+                long start = System.currentTimeMillis();
+                results.add(new Result("vouchers", storage.compactVouchers(), System.currentTimeMillis() - start));
+            }
+            for (StorageEngine.Log log : StorageEngine.Log.values()) {
+                if (!force && storage.activeLogBytes(log) < LOG_SEAL_BYTES) continue;
+                long start = System.currentTimeMillis();
+                results.add(new Result(log.fileName, storage.compactLog(log), System.currentTimeMillis() - start));
+            }
+        } catch (IOException e) {
+            System.out.println("Compaction failed: " + e.getMessage());
+        } finally {
+            running.set(false);
+        }
+        return results;
+    }
+}
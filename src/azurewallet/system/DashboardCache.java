@@ -0,0 +1,131 @@
+package azurewallet.system;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import azurewallet.models.AccountListener;
+import azurewallet.models.UserAccount;
+import azurewallet.models.VoucherSystem;
+
+// What the login path shows a user: balance, rank, points, voucher count and the last few
+// transactions. Summaries are built on first use and dropped by exactly the events that
+// change them: account changes, voucher changes for that user, and new transaction lines.
+// Recent activity is seeded from the transaction log once at startup and then kept from
+// the transaction listener, so a login never scans a file.
+public class DashboardCache implements AccountListener {
+    public static final int RECENT = 3;
+
+    public static class Summary {
+        public final String username;
+        public final String rank;
+        public final double balance;
+        public final int points;
+        public final int vouchers;
+        public final List<String> recent; // newest first, "MM-dd HH:mm type - PHP amount"
+
+        Summary(UserAccount acc, int vouchers, List<String> recent) {
+            this.username = acc.getUsername();
+            this.rank = acc.getRank();
+            this.balance = acc.getBalance();
+            this.points = acc.getPoints();
+            this.vouchers = vouchers;
+            this.recent = recent;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Summary> summaries = new ConcurrentHashMap<>();
+    // Last RECENT transaction lines per user, oldest first; guarded by the deque itself.
+    private final ConcurrentHashMap<String, ArrayDeque<String>> recent = new ConcurrentHashMap<>();
+    // Bumped by every invalidation, so a summary built across one is not published.
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public DashboardCache(FileManager fileManager) {
+        try {
+            fileManager.forEachTransactionLine(this::transactionLogged);
+        } catch (IOException e) {
+            System.out.println("Error reading recent activity.");
+        }
+        fileManager.addTransactionListener(this::transactionLogged);
+        fileManager.addClearListener(this::clear);
+        VoucherSystem.addListener(this::vouchersChanged);
+    }
+
+    public Summary get(UserAccount acc) {
+        Summary s = summaries.get(acc.getUsername());
+        if (s != null) {
+            hits.incrementAndGet();
+            return s;
+        }
+        misses.incrementAndGet();
+        long seen = invalidations.get();
+        List<String> latest = new ArrayList<>(RECENT);
+        ArrayDeque<String> lines = recent.get(acc.getUsername());
+        if (lines != null) {
+            synchronized (lines) {
+                lines.descendingIterator().forEachRemaining(latest::add);
+            }
+        }
+        s = new Summary(acc, VoucherSystem.countUserVouchers(acc.getUsername()), Collections.unmodifiableList(latest));
+        summaries.putIfAbsent(acc.getUsername(), s);
+        if (invalidations.get() != seen) summaries.remove(acc.getUsername(), s);
+        return s;
+    }
+
+    public long getHits() { return hits.get(); }
+
+    public long getMisses() { return misses.get(); }
+
+    public int size() { return summaries.size(); }
+
+    // =============== INVALIDATION ===============
+
+    @Override
+    public void accountChanged(UserAccount acc) {
+        invalidate(acc.getUsername());
+    }
+
+    @Override
+    public void accountRemoved(UserAccount acc) {
+        recent.remove(acc.getUsername());
+        invalidate(acc.getUsername());
+    }
+
+    private void vouchersChanged(String username) {
+        if (username == null) clearSummaries();
+        else invalidate(username);
+    }
+
+    private void invalidate(String username) {
+        invalidations.incrementAndGet();
+        summaries.remove(username);
+    }
+
+    private void clearSummaries() {
+        invalidations.incrementAndGet();
+        summaries.clear();
+    }
+
+    // Lines look like "time - username: type - PHP amount".
+    private void transactionLogged(String line) {
+        int dash = line.indexOf(" - ");
+        int colon = dash < 0 ? -1 : line.indexOf(": ", dash + 3);
+        if (colon < 0) return;
+        String username = line.substring(dash + 3, colon);
+        String time = dash >= 16 ? line.substring(5, 16).replace('T', ' ') : line.substring(0, dash);
+        String entry = time + " " + line.substring(colon + 2);
+        ArrayDeque<String> lines = recent.computeIfAbsent(username, u -> new ArrayDeque<>(RECENT));
+        synchronized (lines) {
+            if (lines.size() == RECENT) lines.removeFirst();
+            lines.addLast(entry);
+        }
+        invalidate(username);
+    }
+
+    private void clear() {
+        recent.clear();
+        clearSummaries();
+    }
+}
@@ -0,0 +1,674 @@
+package azurewallet.system;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+// Optional at-rest encryption for data files (AES-GCM). Enable it with either
+//   -Dazure.storage.key=<base64 AES key>
+//   -Dazure.storage.keyfile=/path/outside/the/data/dir   (created with a new key if missing)
+//
+// An encrypted file is a header followed by sealed records:
+//
+//   header  "AZE2" | 16-byte file id
+//   record  plaintext length (int, top bit = final) | 12-byte nonce | ciphertext + 16-byte tag
+//
+// Each record is authenticated together with the file id, its sequence number in the
+// file and its final flag (the STREAM construction), so records cannot be moved between
+// files, reordered, duplicated or dropped from the middle. Every write ends on a record
+// flagged final: a rewrite ends with one, and each append batch ends with one. A reader
+// that reaches the end of a file on a record that is not final reports it truncated. A
+// whole batch cut off the end still ends on the previous batch's final record; the
+// hash-chained logs cover that.
+//
+// A record holds at most CHUNK bytes, so reads stream one chunk at a time. Appends take
+// the file's next sequence number from its record index, so encrypted appends to one
+// file are serialized here. Compaction re-seals the tail, since its records' sequence
+// numbers change in the new file.
+//
+// Readers detect the header, so plaintext files from before encryption was enabled
+// still load, and "AZE1" files (authenticated against the file id only) still read and
+// are upgraded under the same file id on adopt() or on the first append.
+public final class DataCipher {
+    private static final int MAGIC = 0x415A4532; // "AZE2"
+    private static final int MAGIC_V1 = 0x415A4531; // "AZE1"
+    private static final int ID_BYTES = 16;
+    static final int HEADER = 4 + ID_BYTES;
+    private static final int NONCE = 12;
+    private static final int TAG_BITS = 128;
+    private static final int OVERHEAD = 4 + NONCE + TAG_BITS / 8;
+    private static final int FINAL = 0x80000000;
+    private static final int CHUNK = 64 * 1024;
+    private static final int INDEX_STEP = 4 * 1024;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    public static final DataCipher PLAINTEXT = new DataCipher(null);
+
+    private static volatile DataCipher current;
+
+    private final SecretKey key;
+    private final ThreadLocal<Cipher> ciphers;
+    // Nonces are a random 4-byte prefix and a 64-bit counter starting at a random value
+    // (the deterministic construction of NIST SP 800-38D 8.2.1), so sealing a one-line
+    // append does not wait on the system entropy source.
+    private final int noncePrefix = RANDOM.nextInt();
+    private final AtomicLong nonceCounter = new AtomicLong(RANDOM.nextLong());
+    private final Map<Object, RecordIndex> indexes = new ConcurrentHashMap<>();
+
+    private DataCipher(SecretKey key) {
+        this.key = key;
+        this.ciphers = ThreadLocal.withInitial(() -> {
+            try {
+                return Cipher.getInstance("AES/GCM/NoPadding");
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("AES-GCM is not available", e);
+            }
+        });
+    }
+
+    public static DataCipher withKey(byte[] keyBytes) {
+        if (keyBytes.length != 16 && keyBytes.length != 24 && keyBytes.length != 32) {
+            throw new IllegalArgumentException("AES keys are 16, 24 or 32 bytes");
+        }
+        return new DataCipher(new SecretKeySpec(keyBytes, "AES"));
+    }
+
+    public static byte[] newKey() {
+        byte[] k = new byte[32];
+        RANDOM.nextBytes(k);
+        return k;
+    }
+
+    // The process-wide cipher, read from the system properties on first use.
+    public static DataCipher get() {
+        DataCipher c = current;
+        if (c == null) {
+            synchronized (DataCipher.class) {
+                if (current == null) current = fromConfig();
+                c = current;
+            }
+        }
+        return c;
+    }
+
+    public static void use(DataCipher cipher) {
+        current = cipher;
+    }
+
+    private static DataCipher fromConfig() {
+        String inline = System.getProperty("azure.storage.key");
+        if (inline != null && !inline.isBlank()) return withKey(Base64.getDecoder().decode(inline.trim()));
+        String keyFile = System.getProperty("azure.storage.keyfile");
+        if (keyFile == null || keyFile.isBlank()) return PLAINTEXT;
+        Path p = Paths.get(keyFile);
+        try {
+            if (!Files.exists(p)) createKeyFile(p);
+            return withKey(Base64.getDecoder().decode(Files.readString(p).trim()));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read data key file " + p + ": " + e.getMessage(), e);
+        }
+    }
+
+    // The file is created owner-only in the same call that creates it, so the key is never
+    // readable under the default umask. If another process created it first, its key wins.
+    private static void createKeyFile(Path p) throws IOException {
+        try {
+            try {
+                Files.createFile(p, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+            } catch (UnsupportedOperationException e) {
+                // Not a POSIX file system; rely on the directory's permissions.
+                Files.createFile(p);
+            }
+        } catch (FileAlreadyExistsException e) {
+            return;
+        }
+        Files.writeString(p, Base64.getEncoder().encodeToString(newKey()) + System.lineSeparator(), StandardOpenOption.WRITE);
+        System.out.println("| Generated a new data key in " + p);
+    }
+
+    public boolean isEnabled() { return key != null; }
+
+    // =============== RECORDS ===============
+
+    private static byte[] newFileId() {
+        byte[] id = new byte[ID_BYTES];
+        RANDOM.nextBytes(id);
+        return id;
+    }
+
+    private static byte[] header(byte[] fileId) {
+        return ByteBuffer.allocate(HEADER).putInt(MAGIC).put(fileId).array();
+    }
+
+    // Legacy records are bound to the file id alone.
+    private static byte[] aad(byte[] fileId, long seq, boolean last, boolean legacy) {
+        if (legacy) return fileId;
+        return ByteBuffer.allocate(ID_BYTES + 9).put(fileId).putLong(seq).put((byte) (last ? 1 : 0)).array();
+    }
+
+    // Appends the record for plain[off, off+len) to out as record number seq.
+    private void seal(byte[] fileId, long seq, boolean last, byte[] plain, int off, int len, OutputStream out) throws IOException {
+        byte[] nonce = ByteBuffer.allocate(NONCE).putInt(noncePrefix).putLong(nonceCounter.getAndIncrement()).array();
+        try {
+            Cipher c = ciphers.get();
+            c.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, nonce));
+            c.updateAAD(aad(fileId, seq, last, false));
+            byte[] sealed = c.doFinal(plain, off, len);
+            int field = last ? len | FINAL : len;
+            byte[] lenBytes = {(byte) (field >>> 24), (byte) (field >>> 16), (byte) (field >>> 8), (byte) field};
+            out.write(lenBytes);
+            out.write(nonce);
+            out.write(sealed);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("encryption failed", e);
+        }
+    }
+
+    // Seals plain as records first, first + 1, ... with the last one flagged final.
+    private byte[] sealBatch(byte[] fileId, long first, byte[] plain) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(plain.length + OVERHEAD * (1 + plain.length / CHUNK));
+        long seq = first;
+        for (int off = 0; off < plain.length; off += CHUNK) {
+            int len = Math.min(CHUNK, plain.length - off);
+            seal(fileId, seq++, off + len == plain.length, plain, off, len, out);
+        }
+        return out.toByteArray();
+    }
+
+    // Decrypts into plain and returns the plaintext length.
+    private int open(byte[] fileId, long seq, boolean last, boolean legacy, byte[] nonce, byte[] sealed, int sealedLen, byte[] plain) throws IOException {
+        try {
+            Cipher c = ciphers.get();
+            c.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, nonce));
+            c.updateAAD(aad(fileId, seq, last, legacy));
+            return c.doFinal(sealed, 0, sealedLen, plain, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("data file failed authentication (wrong key, tampered or reordered records)", e);
+        }
+    }
+
+    // 2 for an "AZE2" header, 1 for "AZE1", 0 for a plaintext (or missing) file.
+    private static int versionOf(byte[] head) {
+        if (head.length < HEADER) return 0;
+        int magic = ByteBuffer.wrap(head).getInt();
+        return magic == MAGIC ? 2 : magic == MAGIC_V1 ? 1 : 0;
+    }
+
+    private static byte[] readHeader(Path file) throws IOException {
+        if (!Files.exists(file) || Files.size(file) < HEADER) return new byte[0];
+        try (InputStream in = Files.newInputStream(file)) {
+            return in.readNBytes(HEADER);
+        }
+    }
+
+    // Reads the file id if the file starts with an encryption header, else null.
+    public static byte[] fileIdOf(Path file) throws IOException {
+        byte[] head = readHeader(file);
+        return versionOf(head) == 0 ? null : Arrays.copyOfRange(head, 4, HEADER);
+    }
+
+    public static boolean isEncrypted(Path file) throws IOException {
+        return fileIdOf(file) != null;
+    }
+
+    // =============== WRITING ===============
+
+    // New file contents: writes a header with a fresh file id, then records as the
+    // buffer fills. Passes through unchanged when encryption is off.
+    public OutputStream create(OutputStream raw) throws IOException {
+        if (!isEnabled()) return raw;
+        return create(raw, newFileId());
+    }
+
+    private OutputStream create(OutputStream raw, byte[] fileId) throws IOException {
+        raw.write(header(fileId));
+        return new SealingOutputStream(raw, fileId, 0, true);
+    }
+
+    // Body of a new file whose header the caller has written (or plaintext): bytes go out
+    // as records bound to fileId from sequence number 0. Closing the result seals the
+    // final record and leaves raw open.
+    OutputStream continueAfter(byte[] fileId, OutputStream raw) {
+        if (fileId == null) {
+            return new FilterOutputStream(raw) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+        }
+        return new SealingOutputStream(raw, fileId, 0, false);
+    }
+
+    // Appends plain to an existing file in one write: sealed records when the file is
+    // encrypted (fileId is the caller's cached id, null for a plaintext file), the bytes
+    // themselves when it is plaintext. Encrypted appends to one file take its record
+    // index lock, since each needs the next sequence number.
+    public void append(Path file, byte[] fileId, byte[] plain) throws IOException {
+        if (fileId == null) {
+            try (FileOutputStream out = new FileOutputStream(file.toFile(), true)) {
+                out.write(plain);
+            }
+            return;
+        }
+        if (plain.length == 0) return;
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        RecordIndex index = index(file, attrs);
+        synchronized (index) {
+            index.extend(file, fileId, attrs.size());
+            if (!index.legacy) {
+                byte[] sealed = sealBatch(index.fileId, index.records, plain);
+                try (FileOutputStream out = new FileOutputStream(file.toFile(), true)) {
+                    out.write(sealed);
+                }
+                index.appended(plain.length);
+                return;
+            }
+        }
+        adopt(file);
+        append(file, fileId, plain);
+    }
+
+    // Appends through a stream (one writer at a time): a new or empty file gets a header
+    // first, an encrypted file gets records under its existing id, a plaintext file gets
+    // plain bytes.
+    public OutputStream appendTo(Path file) throws IOException {
+        boolean fresh = !Files.exists(file) || Files.size(file) == 0;
+        byte[] head = fresh ? new byte[0] : readHeader(file);
+        int version = versionOf(head);
+        if (version == 1) adopt(file);
+        long next = 0;
+        byte[] id = null;
+        if (version != 0) {
+            RecordIndex index = index(file);
+            synchronized (index) {
+                index.extend(file, Arrays.copyOfRange(head, 4, HEADER));
+                id = index.fileId;
+                next = index.records;
+            }
+        }
+        OutputStream raw = new BufferedOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND), 1 << 16);
+        if (fresh) return create(raw);
+        return id == null ? raw : new SealingOutputStream(raw, id, next, true);
+    }
+
+    // Line-oriented helpers for small data files outside the storage engine.
+    public PrintWriter writer(Path file) throws IOException {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                create(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)), StandardCharsets.UTF_8)));
+    }
+
+    public PrintWriter appendWriter(Path file) throws IOException {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(appendTo(file), StandardCharsets.UTF_8)));
+    }
+
+    static byte[] headerFor(byte[] fileId) {
+        return header(fileId);
+    }
+
+    // Empties a file, leaving a fresh header and an empty final record when encryption
+    // is on, so a file cut back to its header reads as truncated.
+    public void reset(Path file) throws IOException {
+        if (!isEnabled()) {
+            Files.write(file, new byte[0]);
+            return;
+        }
+        byte[] id = newFileId();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(HEADER + OVERHEAD);
+        out.write(header(id));
+        seal(id, 0, true, new byte[0], 0, 0, out);
+        Files.write(file, out.toByteArray());
+    }
+
+    // Brings an existing file in line with the current mode: an empty or plaintext file is
+    // rewritten encrypted, and an "AZE1" file is re-sealed under its own id. Refuses to
+    // run without a key over files that are encrypted, since plaintext appends would
+    // corrupt them.
+    public void adopt(Path file) throws IOException {
+        byte[] head = readHeader(file);
+        int version = versionOf(head);
+        if (!isEnabled()) {
+            if (version != 0) throw new IllegalStateException(file + " is encrypted; start with azure.storage.key or azure.storage.keyfile.");
+            return;
+        }
+        // Empty files get their header from whoever writes first.
+        if (version == 2 || !Files.exists(file) || Files.size(file) == 0) return;
+        byte[] id = version == 1 ? Arrays.copyOfRange(head, 4, HEADER) : newFileId();
+        Path tmp = Paths.get(file + ".enc");
+        try (InputStream in = open(file);
+             OutputStream out = create(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16), id)) {
+            in.transferTo(out);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Buffers up to CHUNK bytes per record. A full buffer is sealed once more bytes
+    // arrive, and close() seals the rest as the final record (empty if need be). flush()
+    // does not seal: a batch is on disk as complete only once its final record is.
+    private final class SealingOutputStream extends OutputStream {
+        private final OutputStream raw;
+        private final byte[] fileId;
+        private final boolean closeRaw;
+        private final byte[] buf = new byte[CHUNK];
+        private long seq;
+        private int used;
+        private boolean closed;
+
+        SealingOutputStream(OutputStream raw, byte[] fileId, long seq, boolean closeRaw) {
+            this.raw = raw;
+            this.fileId = fileId;
+            this.seq = seq;
+            this.closeRaw = closeRaw;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (used == CHUNK) sealBuffer(false);
+            buf[used++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (used == CHUNK) sealBuffer(false);
+                int n = Math.min(len, CHUNK - used);
+                System.arraycopy(b, off, buf, used, n);
+                used += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void sealBuffer(boolean last) throws IOException {
+            seal(fileId, seq++, last, buf, 0, used, raw);
+            used = 0;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            raw.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            sealBuffer(true);
+            raw.flush();
+            if (closeRaw) raw.close();
+        }
+    }
+
+    // =============== READING ===============
+
+    // Plaintext view of a data file's bytes, streamed one record at a time. Plaintext
+    // files pass through unchanged.
+    public InputStream open(InputStream raw) throws IOException {
+        BufferedInputStream in = raw instanceof BufferedInputStream b ? b : new BufferedInputStream(raw, 1 << 16);
+        in.mark(HEADER);
+        byte[] head = in.readNBytes(HEADER);
+        int magic = head.length < 4 ? 0 : ByteBuffer.wrap(head).getInt();
+        if (magic != MAGIC && magic != MAGIC_V1) {
+            in.reset();
+            return in;
+        }
+        if (head.length < HEADER) throw new IOException("truncated encryption header");
+        if (!isEnabled()) throw new IOException("file is encrypted but no data key is configured");
+        return new OpeningInputStream(in, Arrays.copyOfRange(head, 4, HEADER), magic == MAGIC_V1, 0);
+    }
+
+    public InputStream open(Path file) throws IOException {
+        return open(Files.newInputStream(file));
+    }
+
+    public BufferedReader reader(Path file) throws IOException {
+        return new BufferedReader(new InputStreamReader(open(file), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    // Random access: a stream starting at a plaintext offset. Each encrypted file gets an
+    // in-memory index with a checkpoint about every INDEX_STEP bytes of plaintext, built
+    // from the record length fields alone and extended as the file grows, so a read only
+    // decrypts a few KB of records (or one full record) before the offset. Appends are
+    // often single lines, so walking every record header per read would be far slower.
+    public InputStream openAt(Path file, long plaintextOffset) throws IOException {
+        byte[] id = fileIdOf(file);
+        if (id == null) {
+            InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+            in.skipNBytes(Math.min(plaintextOffset, Files.size(file)));
+            return in;
+        }
+        if (!isEnabled()) throw new IOException("file is encrypted but no data key is configured");
+        RecordIndex index = index(file);
+        long rawStart, plainStart, seq;
+        boolean legacy;
+        synchronized (index) {
+            index.extend(file, id);
+            int i = index.floor(index.plain, plaintextOffset);
+            rawStart = index.raw[i];
+            plainStart = index.plain[i];
+            seq = index.seq[i];
+            legacy = index.legacy;
+        }
+        InputStream raw = new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+        raw.skipNBytes(rawStart);
+        InputStream in = new OpeningInputStream(raw, id, legacy, seq);
+        in.skipNBytes(plaintextOffset - plainStart);
+        return in;
+    }
+
+    // Length of the plaintext a reader would see, without decrypting anything.
+    public long plaintextLength(Path file) throws IOException {
+        if (!Files.exists(file)) return 0;
+        byte[] id = fileIdOf(file);
+        if (id == null) return Files.size(file);
+        RecordIndex index = index(file);
+        synchronized (index) {
+            index.extend(file, id);
+            return index.scannedPlain;
+        }
+    }
+
+    // Plaintext offset of a record boundary given as a file offset, e.g. a size taken
+    // between appends, without decrypting anything.
+    long plaintextOffset(Path file, long rawOffset) throws IOException {
+        byte[] id = fileIdOf(file);
+        if (id == null) return rawOffset;
+        RecordIndex index = index(file);
+        synchronized (index) {
+            index.extend(file, id);
+            return index.plainAt(file, rawOffset);
+        }
+    }
+
+    private RecordIndex index(Path file) throws IOException {
+        return index(file, Files.readAttributes(file, BasicFileAttributes.class));
+    }
+
+    private RecordIndex index(Path file, BasicFileAttributes attrs) {
+        Object key = attrs.fileKey();
+        return indexes.computeIfAbsent(key == null ? file.toAbsolutePath() : key, k -> new RecordIndex());
+    }
+
+    // Checkpoints (plaintext offset, file offset, record number) at record boundaries.
+    // Keyed by the file's identity, so a rewrite or compaction (a new file moved into
+    // place) starts a fresh index; a file that shrank or changed id is re-scanned.
+    private static final class RecordIndex {
+        byte[] fileId;
+        boolean legacy;
+        long[] plain = new long[16];
+        long[] raw = new long[16];
+        long[] seq = new long[16];
+        int size;
+        long scannedRaw, scannedPlain, records;
+
+        void extend(Path file, byte[] id) throws IOException {
+            extend(file, id, Files.size(file));
+        }
+
+        void extend(Path file, byte[] id, long fileSize) throws IOException {
+            if (fileId == null || !Arrays.equals(fileId, id) || fileSize < scannedRaw) {
+                byte[] head = readHeader(file);
+                if (versionOf(head) == 0) throw new IOException(file + " is not an encrypted data file");
+                fileId = Arrays.copyOfRange(head, 4, HEADER);
+                legacy = versionOf(head) == 1;
+                size = 0;
+                scannedRaw = HEADER;
+                scannedPlain = 0;
+                records = 0;
+                add(0, HEADER, 0);
+            }
+            if (scannedRaw + OVERHEAD > fileSize) return;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+                in.skipNBytes(scannedRaw);
+                while (scannedRaw + OVERHEAD <= fileSize) {
+                    int len = in.readInt() & ~FINAL;
+                    if (scannedRaw + OVERHEAD + len > fileSize) break; // torn or still being written
+                    in.skipNBytes(OVERHEAD - 4 + len);
+                    appended(len);
+                }
+            }
+        }
+
+        // Accounts for one whole record of len plaintext bytes at the scanned end, or for
+        // a batch appended here (split into records the way sealBatch splits it).
+        void appended(int len) {
+            do {
+                int n = Math.min(len, CHUNK);
+                if (scannedPlain - plain[size - 1] >= INDEX_STEP) add(scannedPlain, scannedRaw, records);
+                scannedRaw += OVERHEAD + n;
+                scannedPlain += n;
+                records++;
+                len -= n;
+            } while (len > 0);
+        }
+
+        // Walks record headers from the nearest checkpoint to a record boundary.
+        long plainAt(Path file, long rawOffset) throws IOException {
+            if (rawOffset == scannedRaw) return scannedPlain;
+            int i = floor(raw, rawOffset);
+            long r = raw[i], p = plain[i];
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+                in.skipNBytes(r);
+                while (r < rawOffset) {
+                    int len = in.readInt() & ~FINAL;
+                    in.skipNBytes(OVERHEAD - 4 + len);
+                    r += OVERHEAD + len;
+                    p += len;
+                }
+            }
+            if (r != rawOffset) throw new IOException("offset " + rawOffset + " is not a record boundary");
+            return p;
+        }
+
+        private void add(long plainOffset, long rawOffset, long record) {
+            if (size == plain.length) {
+                plain = Arrays.copyOf(plain, size * 2);
+                raw = Arrays.copyOf(raw, size * 2);
+                seq = Arrays.copyOf(seq, size * 2);
+            }
+            plain[size] = plainOffset;
+            raw[size] = rawOffset;
+            seq[size] = record;
+            size++;
+        }
+
+        // Last checkpoint at or before the offset, in plain or raw terms.
+        int floor(long[] offsets, long offset) {
+            int lo = 0, hi = size - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (offsets[mid] <= offset) lo = mid;
+                else hi = mid - 1;
+            }
+            return lo;
+        }
+    }
+
+    private final class OpeningInputStream extends InputStream {
+        private final InputStream raw;
+        private final byte[] fileId;
+        private final boolean legacy;
+        private final byte[] nonce = new byte[NONCE];
+        private final byte[] sealed = new byte[CHUNK + TAG_BITS / 8];
+        private final byte[] plain = new byte[CHUNK];
+        private long seq;
+        // Whether the last record read was final. A stream started past the header (by
+        // openAt, at a checkpoint) always has a record ahead of it.
+        private boolean atFinal;
+        private int pos, limit;
+        private boolean eof;
+
+        OpeningInputStream(InputStream raw, byte[] fileId, boolean legacy, long seq) {
+            this.raw = raw;
+            this.fileId = fileId;
+            this.legacy = legacy;
+            this.seq = seq;
+        }
+
+        private boolean fill() throws IOException {
+            while (!eof && pos == limit) {
+                byte[] lenBytes = raw.readNBytes(4);
+                if (lenBytes.length == 0) {
+                    eof = true;
+                    if (!legacy && !atFinal) throw new IOException("data file is truncated (it does not end on a final record)");
+                    break;
+                }
+                int field = lenBytes.length < 4 ? -1 : ByteBuffer.wrap(lenBytes).getInt();
+                boolean last = !legacy && (field & FINAL) != 0;
+                int len = lenBytes.length < 4 ? -1 : field & ~FINAL;
+                int sealedLen = len + TAG_BITS / 8;
+                if (len > CHUNK) throw new IOException("corrupt encrypted record length " + len);
+                if (len < 0 || raw.readNBytes(nonce, 0, NONCE) < NONCE || raw.readNBytes(sealed, 0, sealedLen) < sealedLen) {
+                    // A crash mid-append can leave a torn record; the appends before it are intact.
+                    System.out.println("Ignoring an incomplete encrypted record at the end of a data file.");
+                    eof = true;
+                    break;
+                }
+                limit = DataCipher.this.open(fileId, seq++, last, legacy, nonce, sealed, sealedLen, plain);
+                atFinal = last;
+                pos = 0;
+            }
+            return pos < limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? plain[pos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!fill()) return -1;
+            int n = Math.min(len, limit - pos);
+            System.arraycopy(plain, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            raw.close();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package azurewallet.system;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+// Documents for the file backends: plain UTF-8 text under the data directory, so people
+// can read and edit them, each saved through a temp file and an atomic rename.
+final class DocumentFiles {
+
+    private DocumentFiles() {}
+
+    static Path path(String dataDir, String name) {
+        if (name.isEmpty() || name.startsWith("/") || name.contains("..")) throw new IllegalArgumentException("bad document name: " + name);
+        return Paths.get(dataDir, name.replace('/', File.separatorChar));
+    }
+
+    static String load(String dataDir, String name) throws IOException {
+        Path p = path(dataDir, name);
+        return Files.exists(p) ? Files.readString(p, StandardCharsets.UTF_8) : null;
+    }
+
+    static void save(String dataDir, String name, String text) throws IOException {
+        Path p = path(dataDir, name);
+        Files.createDirectories(p.getParent());
+        Path tmp = p.resolveSibling(p.getFileName() + ".tmp");
+        Files.writeString(tmp, text, StandardCharsets.UTF_8);
+        Files.move(tmp, p, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
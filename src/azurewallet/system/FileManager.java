@@ -3,153 +3,283 @@ package azurewallet.system;
 import java.io.*;
 import java.util.*;
 import azurewallet.models.UserAccount;
+import azurewallet.models.VoucherIndex;
+import azurewallet.models.VoucherSystem;
 import java.text.DecimalFormat;
 
 public class FileManager {
 
-    private static final String DATA_DIR = System.getProperty("user.dir") + "/src/azurewallet/data/";
-    private static final String USERS_FILE = DATA_DIR + "users.txt";
-    private static final String TRANSACTIONS_FILE = DATA_DIR + "transactions.txt";
-    private static final String VOUCHERS_FILE = DATA_DIR + "vouchers.txt";
-    private static final String VOUCHER_LOG_FILE = DATA_DIR + "voucher_log.txt";
-    private static final String POINTS_LOG_FILE = DATA_DIR + "points_log.txt";
-    private static final String INTEREST_LOG_FILE = DATA_DIR + "interest_log.txt";
-    private static final String SYSTEM_REVENUE_FILE = DATA_DIR + "system_revenue.txt";
-    private static final String SCHEDULER_FILE = DATA_DIR + "scheduler_log.txt";
+    private static final String SCHEDULER_STATE = "scheduler_state";
+    private static final String RECONCILIATION_REPORT = "reconciliation_report.txt";
+    // Logs whose entries are hash-chained (see LogChain).
+    private static final EnumSet<StorageEngine.Log> CHAINED = EnumSet.of(StorageEngine.Log.TRANSACTIONS, StorageEngine.Log.ADMIN);
 
+    private final String dataDir;
+    private final StorageEngine storage;
+    private final Object usersLock = new Object();
     private final DecimalFormat df = new DecimalFormat("#,##0.00");
+    private final List<java.util.function.Consumer<String>> transactionListeners = new java.util.concurrent.CopyOnWriteArrayList<>();
+    private final List<Runnable> clearListeners = new java.util.concurrent.CopyOnWriteArrayList<>();
+    private final Map<StorageEngine.Log, LogChain> chains = new EnumMap<>(StorageEngine.Log.class);
 
     public FileManager() {
-        try {
-            File folder = new File(DATA_DIR);
-            if (!folder.exists()) folder.mkdirs();
-
-            new File(USERS_FILE).createNewFile();
-            new File(TRANSACTIONS_FILE).createNewFile();
-            new File(VOUCHERS_FILE).createNewFile();
-            new File(VOUCHER_LOG_FILE).createNewFile();
-            new File(POINTS_LOG_FILE).createNewFile();
-            new File(INTEREST_LOG_FILE).createNewFile();
-            new File(SYSTEM_REVENUE_FILE).createNewFile();
-            new File(SCHEDULER_FILE).createNewFile();
-
-            System.out.println("+----------------------------------------------------------+");
-            System.out.println("| Data directory initialized: " + DATA_DIR);
-            System.out.println("+----------------------------------------------------------+");
-        } catch (IOException e) {
-            System.out.println("| Error initializing data files: " + e.getMessage());
+        this(StorageEngines.dataDir(), StorageEngines.fromConfig());
+    }
+
+    public FileManager(String dataDir, StorageEngine storage) {
+        this.dataDir = dataDir;
+        this.storage = storage;
+        if (storage.isPersistent()) new File(dataDir).mkdirs();
+        VoucherSystem.useStorage(storage);
+
+        System.out.println("+----------------------------------------------------------+");
+        System.out.println("| Data directory initialized: " + dataDir);
+        System.out.println("| Storage: " + storage.describe());
+        // Sidecars on disk would outlive in-memory logs and refuse to match them next run.
+        if (storage.isPersistent()) {
+            for (StorageEngine.Log log : CHAINED) chains.put(log, new LogChain(dataDir, storage, log, DataCipher.get()));
         }
+        System.out.println("+----------------------------------------------------------+");
     }
 
     // ====================== USER MANAGEMENT ======================
 
     public Map<String, UserAccount> loadUsers() {
-        Map<String, UserAccount> users = new HashMap<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(USERS_FILE))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] p = line.split(",");
-                if (p.length >= 9) {
-                    UserAccount acc = new UserAccount(
-                        p[0], p[1], p[2],
-                        Double.parseDouble(p[3]),
-                        Integer.parseInt(p[4]),
-                        Double.parseDouble(p[5]),
-                        p[6],
-                        Integer.parseInt(p[7]),
-                        Long.parseLong(p[8])
-                    );
-                    users.put(p[0], acc);
-                }
-            }
-        } catch (IOException e) {
-            System.out.println("| Error loading users.                                    |");
-        }
+        long mark = OperationProfiler.begin();
+        Map<String, UserAccount> users = storage.loadAccounts();
+        if (mark >= 0) OperationProfiler.record("loadUsers/account", OperationProfiler.end("loadUsers", mark), users.size());
         return users;
     }
 
+    // Parses one users.txt line (UserAccount.toFileFormat); null if it is incomplete.
+    public static UserAccount parseUser(String line) {
+        String[] p = line.split(",");
+        if (p.length < 9) return null;
+        return new UserAccount(
+            p[0], p[1], p[2],
+            Double.parseDouble(p[3]),
+            Integer.parseInt(p[4]),
+            Double.parseDouble(p[5]),
+            p[6],
+            Integer.parseInt(p[7]),
+            Long.parseLong(p[8]),
+            p.length >= 10 && !p[9].isEmpty() ? java.time.YearMonth.parse(p[9]) : null
+        );
+    }
+
+    // Has its own lock so a full rewrite of users.txt never holds up log appends.
     public void saveUsers(Map<String, UserAccount> users) {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(USERS_FILE))) {
-            for (UserAccount u : users.values()) {
-                pw.println(u.toFileFormat());
+        synchronized (usersLock) {
+            long mark = OperationProfiler.begin();
+            try {
+                storage.saveAccounts(users.values());
+            } catch (IOException e) {
+                System.out.println("| Error saving users.                                     |");
             }
-        } catch (IOException e) {
-            System.out.println("| Error saving users.                                     |");
+            if (mark >= 0) OperationProfiler.record("saveUsers/account", OperationProfiler.end("saveUsers", mark), users.size());
         }
     }
 
     // ====================== TRANSACTION LOGS ======================
 
-    public void logTransaction(String username, String type, double amount) {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(TRANSACTIONS_FILE, true))) {
-            pw.println(java.time.LocalDateTime.now() + " - " + username + ": " + type + " - PHP " + df.format(amount));
+    public synchronized void logTransaction(String username, String type, double amount) {
+        long mark = OperationProfiler.begin();
+        try {
+            String line = formatTransaction(AppClock.now(), username, type, amount);
+            appendLines(StorageEngine.Log.TRANSACTIONS, List.of(line));
+            for (java.util.function.Consumer<String> l : transactionListeners) l.accept(line);
         } catch (IOException e) {
             System.out.println("| Error logging transaction.                              |");
         }
+        OperationProfiler.end("logTransaction", mark);
+    }
+
+    // Receives every transaction line after it is appended (replication, caches).
+    public void addTransactionListener(java.util.function.Consumer<String> listener) {
+        transactionListeners.add(listener);
+    }
+
+    public String formatTransaction(java.time.LocalDateTime time, String username, String type, double amount) {
+        synchronized (df) {
+            return time + " - " + username + ": " + type + " - PHP " + df.format(amount);
+        }
     }
 
-    public void logPoints(String username, String action, int points, String note) {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(POINTS_LOG_FILE, true))) {
-            pw.println(java.time.LocalDateTime.now() + " - " + username + " " + action + " " + points + " points (" + note + ")");
+    // Appends pre-formatted transaction lines in a single write.
+    public synchronized void appendTransactionLines(List<String> lines) {
+        if (lines.isEmpty()) return;
+        try {
+            appendLines(StorageEngine.Log.TRANSACTIONS, lines);
+            for (java.util.function.Consumer<String> l : transactionListeners) lines.forEach(l);
+        } catch (IOException e) {
+            System.out.println("| Error logging transaction.                              |");
+        }
+    }
+
+    public void forEachTransactionLine(java.util.function.Consumer<String> action) throws IOException {
+        forEachLine(StorageEngine.Log.TRANSACTIONS, action);
+    }
+
+    // Streams a log line by line without holding more than one line in memory.
+    public void forEachLine(StorageEngine.Log log, java.util.function.Consumer<String> action) throws IOException {
+        storage.forEach(log, action);
+    }
+
+    public String getDataDir() { return dataDir; }
+
+    public StorageEngine getStorage() { return storage; }
+
+    private void append(StorageEngine.Log log, String line) throws IOException {
+        appendLines(log, List.of(line));
+    }
+
+    // Every log append goes through here, under this object's lock, so a chained log's
+    // hash chain sees lines in file order.
+    private void appendLines(StorageEngine.Log log, List<String> lines) throws IOException {
+        storage.append(log, lines);
+        LogChain chain = chains.get(log);
+        if (chain != null) chain.add(lines);
+    }
+
+    // ====================== LOG INTEGRITY ======================
+
+    public LogChain getChain(StorageEngine.Log log) { return chains.get(log); }
+
+    public Collection<LogChain> getChains() { return chains.values(); }
+
+    // Hashes whatever the chained logs have queued (maintenance task).
+    public void sealLogs() {
+        for (LogChain chain : chains.values()) {
+            try {
+                chain.seal();
+            } catch (IOException e) {
+                System.out.println("Error sealing the hash chain for " + chain.getLog().fileName + ".");
+            }
+        }
+    }
+
+    // Seals and marks the chains cleanly closed, so the next start skips the catch-up scan.
+    public void closeLogs() {
+        for (LogChain chain : chains.values()) {
+            try {
+                chain.close();
+            } catch (IOException e) {
+                System.out.println("Error closing the hash chain for " + chain.getLog().fileName + ".");
+            }
+        }
+    }
+
+    public synchronized void logPoints(String username, String action, int points, String note) {
+        long mark = OperationProfiler.begin();
+        try {
+            append(StorageEngine.Log.POINTS, AppClock.now() + " - " + username + " " + action + " " + points + " points (" + note + ")");
         } catch (IOException e) {
             System.out.println("| Error logging points.                                   |");
         }
+        OperationProfiler.end("logPoints", mark);
     }
 
-    public void logInterest(String username, double amount) {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(INTEREST_LOG_FILE, true))) {
-            pw.println(java.time.LocalDateTime.now() + " - " + username + ": +PHP " + df.format(amount));
+    public synchronized void logInterest(String username, double amount) {
+        long mark = OperationProfiler.begin();
+        try {
+            append(StorageEngine.Log.INTEREST, AppClock.now() + " - " + username + ": +PHP " + df.format(amount));
         } catch (IOException e) {
             System.out.println("| Error logging interest.                                 |");
         }
+        OperationProfiler.end("logInterest", mark);
     }
 
-    public void logVoucher(String username, String code, double value) {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(VOUCHER_LOG_FILE, true))) {
-            pw.println(java.time.LocalDateTime.now() + " - " + username + " redeemed " + code + " (PHP " + df.format(value) + ")");
+    public synchronized void logVoucher(String username, String code, double value) {
+        long mark = OperationProfiler.begin();
+        try {
+            append(StorageEngine.Log.VOUCHER_LOG, AppClock.now() + " - " + username + " redeemed " + code + " (PHP " + df.format(value) + ")");
         } catch (IOException e) {
             System.out.println("| Error logging voucher redemption.                       |");
         }
+        OperationProfiler.end("logVoucher", mark);
     }
 
-    public void logSystemRevenue(double fee) {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(SYSTEM_REVENUE_FILE, true))) {
-            pw.println(java.time.LocalDateTime.now() + " - +PHP " + df.format(fee));
+    public synchronized void logSystemRevenue(double fee) {
+        long mark = OperationProfiler.begin();
+        try {
+            append(StorageEngine.Log.REVENUE, AppClock.now() + " - +PHP " + df.format(fee));
         } catch (IOException e) {
             System.out.println("| Error logging system revenue.                           |");
         }
+        OperationProfiler.end("logSystemRevenue", mark);
+    }
+
+    public synchronized void logAdminAction(String action) {
+        try {
+            append(StorageEngine.Log.ADMIN, AppClock.now() + " - " + action);
+        } catch (IOException e) {
+            System.out.println("Error logging admin action.");
+        }
+    }
+
+    // The idempotency journal (IdempotencyStore) is written only by the store, which
+    // serialises its appends and rewrites itself, so these skip this object's lock.
+    public void appendIdempotency(String line) throws IOException {
+        storage.append(StorageEngine.Log.IDEMPOTENCY, List.of(line));
+    }
+
+    public void rewriteIdempotency(List<String> lines) throws IOException {
+        storage.replace(StorageEngine.Log.IDEMPOTENCY, lines);
+    }
+
+    // Appends one merchant payment record ("paymentDate,id,name,amount").
+    public synchronized void logMerchantPayment(String record) throws IOException {
+        appendLines(StorageEngine.Log.MERCHANT_PAYMENTS, List.of(record));
+    }
+
+    // Appends merchant settlement records ("paymentDate,id,name,count,net") in one write.
+    public synchronized void logSettlements(List<String> records) throws IOException {
+        appendLines(StorageEngine.Log.MERCHANT_SETTLEMENTS, records);
+    }
+
+    // Empties every event log, the voucher store and the scheduler state; accounts are
+    // saved by the caller. Listeners run after this object's lock is released, since some
+    // of them log through it while holding their own.
+    public void clearAllData() {
+        synchronized (this) {
+            for (StorageEngine.Log log : StorageEngine.Log.values()) {
+                try {
+                    storage.clear(log);
+                    LogChain chain = chains.get(log);
+                    if (chain != null) chain.reset();
+                } catch (IOException e) {
+                    System.out.println("Error clearing " + log.fileName);
+                }
+            }
+            VoucherSystem.clearAll();
+            saveSchedulerState(Map.of());
+        }
+        for (Runnable l : clearListeners) l.run();
+    }
+
+    // Told after clearAllData() has emptied every log (caches built from them, and
+    // components that keep their own state in the engine).
+    public void addClearListener(Runnable listener) {
+        clearListeners.add(listener);
     }
 
     // ====================== DATA READING ======================
 
     public double readSystemRevenue() {
-        double total = 0.0;
-        try (BufferedReader br = new BufferedReader(new FileReader(SYSTEM_REVENUE_FILE))) {
-            String line;
-            while ((line = br.readLine()) != null) {
+        double[] total = {0.0};
+        try {
+            storage.forEach(StorageEngine.Log.REVENUE, line -> {
                 if (line.contains("PHP")) {
                     String amt = line.substring(line.indexOf("PHP") + 4).replace(",", "");
-                    total += Double.parseDouble(amt);
+                    total[0] += Double.parseDouble(amt);
                 }
-            }
+            });
         } catch (Exception ignored) {}
-        return total;
-    }
-
-    public int getTotalUsersCount() {
-        int count = 0;
-        try (BufferedReader br = new BufferedReader(new FileReader(USERS_FILE))) {
-            while (br.readLine() != null) count++;
-        } catch (IOException e) {}
-        return count;
+        return total[0];
     }
 
     public int getTotalVouchersCount() {
-        int count = 0;
-        try (BufferedReader br = new BufferedReader(new FileReader(VOUCHERS_FILE))) {
-            while (br.readLine() != null) count++;
-        } catch (IOException e) {}
-        return count;
+        return VoucherSystem.getTotalVouchersCount();
     }
 
     // ====================== DISPLAY HELPERS ======================
@@ -158,11 +288,10 @@ public class FileManager {
         System.out.println("+==========================================================+");
         System.out.println("|                    TRANSACTION HISTORY                   |");
         System.out.println("+==========================================================+");
-        try (BufferedReader br = new BufferedReader(new FileReader(TRANSACTIONS_FILE))) {
-            String line;
-            while ((line = br.readLine()) != null) {
+        try {
+            storage.forEach(StorageEngine.Log.TRANSACTIONS, line -> {
                 if (line.contains(username)) System.out.println("| " + line);
-            }
+            });
         } catch (IOException e) {
             System.out.println("| Error reading transactions.                             |");
         }
@@ -173,44 +302,87 @@ public class FileManager {
         System.out.println("+==========================================================+");
         System.out.println("|                       MY VOUCHERS                        |");
         System.out.println("+==========================================================+");
-        try (BufferedReader br = new BufferedReader(new FileReader(VOUCHERS_FILE))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (line.startsWith(username + ",")) System.out.println("| " + line);
-            }
-        } catch (IOException e) {
-            System.out.println("| Error reading vouchers.                                 |");
+        for (VoucherIndex.Voucher v : VoucherSystem.getUserVouchers(username)) {
+            System.out.println("| " + v.toFileFormat());
         }
         System.out.println("+==========================================================+");
     }
 
     public int countUserVouchers(String username) {
-        int count = 0;
-        try (BufferedReader br = new BufferedReader(new FileReader(VOUCHERS_FILE))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (line.startsWith(username + ",")) count++;
-            }
-        } catch (IOException e) {}
-        return count;
+        return VoucherSystem.countUserVouchers(username);
     }
 
     // ====================== SCHEDULER LOGS ======================
 
-    public void logSchedulerRun() {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(SCHEDULER_FILE, true))) {
-            pw.println(java.time.LocalDateTime.now() + " - Scheduler executed");
+    public synchronized void logSchedulerRun(String job, String period) {
+        try {
+            append(StorageEngine.Log.SCHEDULER, AppClock.now() + " - Scheduler executed " + job + " for " + period);
         } catch (IOException e) {
             System.out.println("| Error logging scheduler.                                |");
         }
     }
 
     public String readLastSchedulerRun() {
-        String last = "N/A";
-        try (BufferedReader br = new BufferedReader(new FileReader(SCHEDULER_FILE))) {
-            String line;
-            while ((line = br.readLine()) != null) last = line;
+        String[] last = {"N/A"};
+        try {
+            storage.forEach(StorageEngine.Log.SCHEDULER, line -> last[0] = line);
         } catch (IOException e) {}
-        return last;
+        return last[0];
+    }
+
+    // Last completed period per job, one "job=period" line each.
+    public Map<String, String> loadSchedulerState() {
+        return storage.loadState(SCHEDULER_STATE);
+    }
+
+    public synchronized void saveSchedulerState(Map<String, String> state) {
+        try {
+            storage.saveState(SCHEDULER_STATE, state);
+        } catch (IOException e) {
+            System.out.println("| Error saving scheduler state.                           |");
+        }
+    }
+
+    // ====================== REPORTS ======================
+
+    public void saveReconciliationReport(LedgerReconciler.Report report) {
+        StringWriter out = new StringWriter();
+        try (PrintWriter pw = new PrintWriter(out)) {
+            pw.println("Generated: " + AppClock.now());
+            report.writeTo(pw);
+        }
+        try {
+            storage.saveDocument(RECONCILIATION_REPORT, out.toString());
+        } catch (IOException e) {
+            System.out.println("| Error saving reconciliation report.                     |");
+        }
+    }
+
+    public String getReconciliationReportLocation() {
+        return storage.documentLocation(RECONCILIATION_REPORT);
+    }
+
+    // ====================== DOCUMENTS ======================
+    // Config, reports and statements go through the engine too, so a backend that keeps
+    // nothing on disk writes none of them either.
+
+    public String loadDocument(String name) throws IOException {
+        return storage.loadDocument(name);
+    }
+
+    public void saveDocument(String name, String text) throws IOException {
+        storage.saveDocument(name, text);
+    }
+
+    public String documentLocation(String name) {
+        return storage.documentLocation(name);
+    }
+
+    public Map<String, String> loadState(String name) {
+        return storage.loadState(name);
+    }
+
+    public void saveState(String name, Map<String, String> state) throws IOException {
+        storage.saveState(name, state);
     }
-}
\ No newline at end of file
+}
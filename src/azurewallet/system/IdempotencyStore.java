@@ -0,0 +1,273 @@
+package azurewallet.system;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Remembers the outcome of wallet requests that carry an idempotency key, so a client
+// retrying after a timeout gets the original answer instead of moving money twice. Keys
+// are scoped to the account, live for a fixed window (azure.idempotency.ttl, e.g. 24h or
+// 90m) and at most azure.idempotency.max of them are kept; the oldest go first.
+//
+// Outcomes are journaled to the storage engine's IDEMPOTENCY log (idempotency.txt with the
+// text backend) as they complete, one line each:
+//
+//   expiresAtMillis,fingerprint,ok,account,key,message
+//
+// where fingerprint is the SHA-256 (hex) of the request description, so two different
+// requests under one key are never taken for the same one. Journals from before it
+// carry 8-digit String.hashCode values, which are still honoured until they expire.
+// The journal is rewritten with only the live keys once it is mostly expired lines.
+// A key is claimed before the operation runs, so a duplicate arriving while the first
+// copy is still in flight is told so rather than run in parallel. The outcome is
+// journaled right after the operation's own writes; a crash between the two can only
+// lose that one key.
+public class IdempotencyStore {
+    private static final Duration DEFAULT_TTL = Duration.ofHours(24);
+    private static final int DEFAULT_MAX = 100_000;
+    private static final int MAX_KEY_LENGTH = 64;
+
+    public static final class Outcome {
+        public final boolean ok;
+        public final String message;
+
+        public Outcome(boolean ok, String message) {
+            this.ok = ok;
+            this.message = message;
+        }
+    }
+
+    private static final Outcome IN_FLIGHT = new Outcome(false, "This request is already being processed.");
+    private static final Outcome KEY_REUSED = new Outcome(false, "Idempotency key was already used for a different request.");
+
+    private static final class Entry {
+        final String id;
+        final String fingerprint;
+        final long expiresAt;
+        volatile Outcome outcome; // null while in flight
+
+        Entry(String id, String fingerprint, long expiresAt, Outcome outcome) {
+            this.id = id;
+            this.fingerprint = fingerprint;
+            this.expiresAt = expiresAt;
+            this.outcome = outcome;
+        }
+    }
+
+    private final FileManager fileManager;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // Claim order, which is also expiry order because every key gets the same window
+    // (apart from in-flight keys that trim() moved to the end).
+    private final ConcurrentLinkedQueue<Entry> order = new ConcurrentLinkedQueue<>();
+    private final Object journalLock = new Object();
+    private long journalLines;
+    private final AtomicLong replays = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    public IdempotencyStore(FileManager fileManager) {
+        this(fileManager, parseTtl(System.getProperty("azure.idempotency.ttl")),
+                Integer.getInteger("azure.idempotency.max", DEFAULT_MAX));
+    }
+
+    public IdempotencyStore(FileManager fileManager, Duration ttl, int maxEntries) {
+        this.fileManager = fileManager;
+        this.ttlMillis = ttl.toMillis();
+        this.maxEntries = maxEntries;
+        load();
+        fileManager.addClearListener(this::clear);
+    }
+
+    static Duration parseTtl(String text) {
+        if (text == null || text.isBlank()) return DEFAULT_TTL;
+        String t = text.trim().toLowerCase();
+        try {
+            long n = Long.parseLong(t.substring(0, t.length() - 1));
+            Duration d = switch (t.charAt(t.length() - 1)) {
+                case 'd' -> Duration.ofDays(n);
+                case 'h' -> Duration.ofHours(n);
+                case 'm' -> Duration.ofMinutes(n);
+                case 's' -> Duration.ofSeconds(n);
+                default -> null;
+            };
+            if (d != null && !d.isNegative() && !d.isZero()) return d;
+        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+            // reported below
+        }
+        System.out.println("Ignoring invalid azure.idempotency.ttl '" + text + "'; using 24h.");
+        return DEFAULT_TTL;
+    }
+
+    // Keys come from clients; keep them to something that fits the journal format.
+    public static boolean isValidKey(String key) {
+        return key != null && !key.isEmpty() && key.length() <= MAX_KEY_LENGTH && key.matches("[A-Za-z0-9_.:-]+");
+    }
+
+    // =============== REQUESTS ===============
+
+    // Claims the key for a request described by fingerprint. Returns null when the caller
+    // should run the operation and then call complete() (or release() if it failed to
+    // run); otherwise returns the answer to give the client straight away.
+    public Outcome begin(String account, String key, String fingerprint) {
+        String id = account + "," + key;
+        long now = AppClock.millis();
+        Entry fresh = new Entry(id, digest(fingerprint), now + ttlMillis, null);
+        while (true) {
+            Entry existing = entries.putIfAbsent(id, fresh);
+            if (existing == null) {
+                order.add(fresh);
+                trim(now);
+                return null;
+            }
+            if (existing.expiresAt <= now) {
+                entries.remove(id, existing);
+                continue;
+            }
+            if (!sameRequest(existing, fresh.fingerprint, fingerprint)) return KEY_REUSED;
+            Outcome done = existing.outcome;
+            if (done == null) return IN_FLIGHT;
+            replays.incrementAndGet();
+            return done;
+        }
+    }
+
+    public void complete(String account, String key, Outcome outcome) {
+        Entry e = entries.get(account + "," + key);
+        if (e == null || e.outcome != null) return;
+        e.outcome = outcome;
+        journal(e);
+    }
+
+    private static String digest(String fingerprint) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(fingerprint.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static boolean sameRequest(Entry e, String digest, String fingerprint) {
+        if (e.fingerprint.length() == digest.length()) return e.fingerprint.equals(digest);
+        return e.fingerprint.equals(Integer.toHexString(fingerprint.hashCode())); // older journal line
+    }
+
+    // Forgets a claim whose operation never ran (e.g. it threw), so a retry can run it.
+    public void release(String account, String key) {
+        Entry e = entries.get(account + "," + key);
+        if (e != null && e.outcome == null) entries.remove(e.id, e);
+    }
+
+    // =============== BOUNDS ===============
+
+    // Drops expired keys from the head of the claim order, then the oldest live ones while
+    // over the size bound. Each key is visited once, so this is O(1) amortised per claim.
+    // Keys still in flight are never dropped: dropping one would let a retry run the
+    // operation alongside the first copy. They go back on the end of the order and are
+    // dropped later, once completed.
+    private void trim(long now) {
+        List<Entry> inFlight = null;
+        Entry head;
+        while ((head = order.peek()) != null && (head.expiresAt <= now || entries.size() > maxEntries)) {
+            if (!order.remove(head)) continue;
+            if (head.outcome == null && entries.get(head.id) == head) {
+                if (inFlight == null) inFlight = new ArrayList<>();
+                inFlight.add(head);
+                continue;
+            }
+            if (head.expiresAt > now && head.outcome != null) evicted.incrementAndGet();
+            entries.remove(head.id, head);
+        }
+        if (inFlight != null) order.addAll(inFlight);
+    }
+
+    // Maintenance: expire keys and rewrite the journal once most of it is dead.
+    public void purge() {
+        trim(AppClock.millis());
+        synchronized (journalLock) {
+            if (journalLines > 1_000 && journalLines > 2L * entries.size()) rewriteJournal();
+        }
+    }
+
+    public int size() { return entries.size(); }
+
+    public long getReplays() { return replays.get(); }
+
+    public long getEvicted() { return evicted.get(); }
+
+    // =============== JOURNAL ===============
+
+    private void load() {
+        long now = AppClock.millis();
+        long[] lines = {0};
+        try {
+            fileManager.forEachLine(StorageEngine.Log.IDEMPOTENCY, line -> {
+                lines[0]++;
+                String[] p = line.split(",", 6);
+                if (p.length < 6) return;
+                long expiresAt = Long.parseLong(p[0]);
+                if (expiresAt <= now) return;
+                Entry e = new Entry(p[3] + "," + p[4], p[1], expiresAt,
+                        new Outcome(p[2].equals("1"), p[5].replace("\\n", "\n")));
+                Entry old = entries.put(e.id, e);
+                if (old != null) order.remove(old);
+                order.add(e);
+            });
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error loading idempotency keys: " + e.getMessage());
+        }
+        journalLines = lines[0];
+        trim(now);
+        synchronized (journalLock) {
+            if (journalLines > 2L * entries.size() + 1_000) rewriteJournal();
+        }
+    }
+
+    // clearAllData(): the journal is already empty; forget the keys too.
+    private void clear() {
+        synchronized (journalLock) {
+            entries.clear();
+            order.clear();
+            journalLines = 0;
+        }
+    }
+
+    private static String format(Entry e) {
+        Outcome o = e.outcome;
+        return e.expiresAt + "," + e.fingerprint + "," + (o.ok ? "1" : "0") + "," + e.id + ","
+                + o.message.replace("\n", "\\n");
+    }
+
+    // One line per completed request, in a single append, like the event logs.
+    private void journal(Entry e) {
+        String line = format(e);
+        synchronized (journalLock) {
+            try {
+                fileManager.appendIdempotency(line);
+                journalLines++;
+            } catch (IOException ex) {
+                System.out.println("Error saving idempotency key.");
+            }
+        }
+    }
+
+    private void rewriteJournal() {
+        List<String> live = new ArrayList<>();
+        for (Entry e : order) {
+            if (e.outcome == null || entries.get(e.id) != e) continue;
+            live.add(format(e));
+        }
+        try {
+            fileManager.rewriteIdempotency(live);
+            journalLines = live.size();
+        } catch (IOException e) {
+            System.out.println("Error compacting idempotency keys.");
+        }
+    }
+}
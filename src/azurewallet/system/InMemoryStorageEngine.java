@@ -0,0 +1,136 @@
+package azurewallet.system;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import azurewallet.models.UserAccount;
+import azurewallet.models.VoucherIndex;
+
+// Keeps everything on the heap and touches no files; meant for simulations and benchmarks.
+// Accounts are stored as their serialized lines so a later load returns fresh objects,
+// just as it would from disk.
+public class InMemoryStorageEngine implements StorageEngine {
+    private volatile List<String> accounts = List.of();
+    // Keyed by "user,code" like the text loader, so a removal is one map operation.
+    private final Map<String, VoucherIndex.Voucher> vouchers = new LinkedHashMap<>();
+    private final Map<Log, List<String>> logs = new EnumMap<>(Log.class);
+    private final Map<String, Map<String, String>> state = new ConcurrentHashMap<>();
+    private final Map<String, String> documents = new ConcurrentHashMap<>();
+
+    public InMemoryStorageEngine() {
+        for (Log log : Log.values()) logs.put(log, new ArrayList<>());
+    }
+
+    @Override
+    public String describe() {
+        return "in-memory (nothing is written to disk)";
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return false;
+    }
+
+    @Override
+    public Map<String, UserAccount> loadAccounts() {
+        Map<String, UserAccount> users = new ConcurrentHashMap<>();
+        for (String line : accounts) {
+            UserAccount acc = FileManager.parseUser(line);
+            if (acc != null) users.put(acc.getUsername(), acc);
+        }
+        return users;
+    }
+
+    @Override
+    public void saveAccounts(Collection<UserAccount> list) {
+        List<String> lines = new ArrayList<>(list.size());
+        for (UserAccount u : list) lines.add(u.toFileFormat());
+        accounts = lines;
+    }
+
+    @Override
+    public synchronized List<VoucherIndex.Voucher> loadVouchers() {
+        return new ArrayList<>(vouchers.values());
+    }
+
+    @Override
+    public synchronized void appendVouchers(List<VoucherIndex.Voucher> list) {
+        for (VoucherIndex.Voucher v : list) vouchers.put(key(v), v);
+    }
+
+    @Override
+    public synchronized void saveVouchers(Collection<VoucherIndex.Voucher> list) {
+        vouchers.clear();
+        appendVouchers(new ArrayList<>(list));
+    }
+
+    @Override
+    public synchronized void removeVouchers(List<VoucherIndex.Voucher> list) {
+        for (VoucherIndex.Voucher v : list) vouchers.remove(key(v));
+    }
+
+    private static String key(VoucherIndex.Voucher v) {
+        return v.getUsername() + "," + v.getCode();
+    }
+
+    @Override
+    public void append(Log log, List<String> lines) {
+        List<String> target = logs.get(log);
+        synchronized (target) {
+            target.addAll(lines);
+        }
+    }
+
+    // Iterates over a snapshot so the action may append to the same log.
+    @Override
+    public void forEach(Log log, Consumer<String> action) {
+        List<String> target = logs.get(log);
+        Object[] snapshot;
+        synchronized (target) {
+            snapshot = target.toArray();
+        }
+        for (Object line : snapshot) action.accept((String) line);
+    }
+
+    @Override
+    public void clear(Log log) {
+        List<String> target = logs.get(log);
+        synchronized (target) {
+            target.clear();
+        }
+    }
+
+    @Override
+    public void replace(Log log, List<String> lines) {
+        List<String> target = logs.get(log);
+        synchronized (target) {
+            target.clear();
+            target.addAll(lines);
+        }
+    }
+
+    @Override
+    public Map<String, String> loadState(String name) {
+        return new ConcurrentHashMap<>(state.getOrDefault(name, Map.of()));
+    }
+
+    @Override
+    public void saveState(String name, Map<String, String> values) {
+        state.put(name, new HashMap<>(values));
+    }
+
+    @Override
+    public String loadDocument(String name) {
+        return documents.get(name);
+    }
+
+    @Override
+    public void saveDocument(String name, String text) {
+        documents.put(name, text);
+    }
+
+    @Override
+    public String documentLocation(String name) {
+        return name + " (in memory)";
+    }
+}
@@ -0,0 +1,55 @@
+package azurewallet.system;
+
+import java.time.YearMonth;
+import java.util.Iterator;
+import java.util.Map;
+import azurewallet.models.UserAccount;
+
+public class InterestAccrual {
+    private final FileManager fileManager;
+    private final Map<String, UserAccount> users;
+    private volatile YearMonth openPeriod;
+    private Iterator<UserAccount> trickleCursor;
+
+    // openPeriod is the last month the scheduler opened, or null on a fresh deployment.
+    // Accounts saved before lazy accrual existed were paid up to that month eagerly.
+    public InterestAccrual(FileManager fileManager, Map<String, UserAccount> users, YearMonth openPeriod) {
+        this.fileManager = fileManager;
+        this.users = users;
+        this.openPeriod = openPeriod != null ? openPeriod : AppClock.currentMonth().minusMonths(1);
+        for (UserAccount acc : users.values()) {
+            if (acc.getLastAccrual() == null) acc.accrueInterest(this.openPeriod);
+        }
+    }
+
+    public YearMonth getOpenPeriod() { return openPeriod; }
+
+    // Scheduler tick: O(1), the interest itself is settled per account on access.
+    public void openPeriod(YearMonth period) {
+        if (period.isAfter(openPeriod)) openPeriod = period;
+    }
+
+    // Brings one account up to date; call before reading or changing its balance.
+    public double accrue(UserAccount acc) {
+        double added = acc.accrueInterest(openPeriod);
+        if (added > 0) {
+            fileManager.logInterest(acc.getUsername(), added);
+        }
+        return added;
+    }
+
+    // Low-priority background pass: settles up to batchSize accounts, resuming where the last call stopped.
+    public synchronized int trickle(int batchSize) {
+        int settled = 0;
+        for (int i = 0; i < batchSize; i++) {
+            if (trickleCursor == null || !trickleCursor.hasNext()) {
+                trickleCursor = users.values().iterator();
+                if (!trickleCursor.hasNext()) break;
+            }
+            UserAccount acc = trickleCursor.next();
+            if (openPeriod.equals(acc.getLastAccrual())) continue;
+            if (accrue(acc) > 0) settled++;
+        }
+        return settled;
+    }
+}
@@ -0,0 +1,133 @@
+package azurewallet.system;
+
+import azurewallet.main.AzureDigitalApp;
+
+// One parsed line from the wallet logs, reduced to its effect on an account.
+// The parsers return null for lines they do not recognise.
+public class LedgerEntry {
+    public enum Category { DEPOSIT, WITHDRAW, PAYMENT, SENT, RECEIVED, VOUCHER, POINTS_EARNED, POINTS_REDEEMED, INTEREST, FEE, OTHER }
+
+    public final String timestamp;
+    public final String username;
+    public final Category category;
+    public final double amount;
+    public final int points;
+    public final String line;
+
+    private LedgerEntry(String timestamp, String username, Category category, double amount, int points, String line) {
+        this.timestamp = timestamp;
+        this.username = username;
+        this.category = category;
+        this.amount = amount;
+        this.points = points;
+        this.line = line;
+    }
+
+    // Change to the account balance this entry implies.
+    public double balanceDelta() {
+        return switch (category) {
+            case DEPOSIT, RECEIVED, VOUCHER, POINTS_REDEEMED, INTEREST -> amount;
+            case WITHDRAW -> -(amount + AzureDigitalApp.WITHDRAW_FEE);
+            case PAYMENT, SENT -> -amount;
+            default -> 0.0;
+        };
+    }
+
+    public int pointsDelta() {
+        return switch (category) {
+            case POINTS_EARNED -> points;
+            case POINTS_REDEEMED -> -points;
+            default -> 0;
+        };
+    }
+
+    // "yyyy-MM" of the entry, taken straight from the ISO timestamp.
+    public String month() {
+        return timestamp.length() >= 7 ? timestamp.substring(0, 7) : "";
+    }
+
+    // =============== PARSERS ===============
+
+    // "<ts> - <user>: <type> - PHP <amount>"
+    public static LedgerEntry parseTransaction(String line) {
+        int dash = line.indexOf(" - ");
+        if (dash < 0) return null;
+        int colon = line.indexOf(": ", dash + 3);
+        int php = line.lastIndexOf(" - PHP ");
+        if (colon < 0 || php < colon) return null;
+        String type = line.substring(colon + 2, php);
+        Category category;
+        // Balances brought in by a bulk import count as deposits.
+        if (type.equals("Deposit") || type.equals("Opening balance")) category = Category.DEPOSIT;
+        else if (type.equals("Withdraw")) category = Category.WITHDRAW;
+        else if (type.startsWith("Paid to ")) category = Category.PAYMENT;
+        else if (type.startsWith("Sent to ")) category = Category.SENT;
+        else if (type.startsWith("Received from ")) category = Category.RECEIVED;
+        else category = Category.OTHER;
+        Double amount = parseAmount(line.substring(php + 7));
+        if (amount == null) return null;
+        return new LedgerEntry(line.substring(0, dash), line.substring(dash + 3, colon), category, amount, 0, line);
+    }
+
+    // "<ts> - <user> redeemed <code> (PHP <amount>)"
+    public static LedgerEntry parseVoucher(String line) {
+        int dash = line.indexOf(" - ");
+        int redeemed = line.indexOf(" redeemed ", dash + 3);
+        int php = line.lastIndexOf("(PHP ");
+        if (dash < 0 || redeemed < 0 || php < redeemed || !line.endsWith(")")) return null;
+        Double amount = parseAmount(line.substring(php + 5, line.length() - 1));
+        if (amount == null) return null;
+        return new LedgerEntry(line.substring(0, dash), line.substring(dash + 3, redeemed), Category.VOUCHER, amount, 0, line);
+    }
+
+    // "<ts> - <user> earned|redeemed <n> points (<note>)"; redemptions note "converted to PHP <value>"
+    public static LedgerEntry parsePoints(String line) {
+        int dash = line.indexOf(" - ");
+        int marker = line.indexOf(" points (", dash + 3);
+        if (dash < 0 || marker < 0) return null;
+        String[] head = line.substring(dash + 3, marker).split(" ");
+        if (head.length != 3) return null;
+        int pts;
+        try {
+            pts = Integer.parseInt(head[2]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (head[1].equals("earned")) {
+            return new LedgerEntry(line.substring(0, dash), head[0], Category.POINTS_EARNED, 0.0, pts, line);
+        }
+        if (head[1].equals("redeemed")) {
+            int php = line.lastIndexOf("PHP ");
+            Double value = php > marker && line.endsWith(")") ? parseAmount(line.substring(php + 4, line.length() - 1)) : null;
+            return new LedgerEntry(line.substring(0, dash), head[0], Category.POINTS_REDEEMED, value != null ? value : pts, pts, line);
+        }
+        return null;
+    }
+
+    // "<ts> - <user>: +PHP <amount>"
+    public static LedgerEntry parseInterest(String line) {
+        int dash = line.indexOf(" - ");
+        int colon = line.indexOf(": +PHP ", dash + 3);
+        if (dash < 0 || colon < 0) return null;
+        Double amount = parseAmount(line.substring(colon + 7));
+        if (amount == null) return null;
+        return new LedgerEntry(line.substring(0, dash), line.substring(dash + 3, colon), Category.INTEREST, amount, 0, line);
+    }
+
+    // "<ts> - +PHP <fee>"; revenue lines carry no user.
+    public static LedgerEntry parseRevenue(String line) {
+        int dash = line.indexOf(" - +PHP ");
+        if (dash < 0) return null;
+        Double amount = parseAmount(line.substring(dash + 8));
+        if (amount == null) return null;
+        return new LedgerEntry(line.substring(0, dash), null, Category.FEE, amount, 0, line);
+    }
+
+    private static Double parseAmount(String text) {
+        try {
+            return Double.parseDouble(text.replace(",", "").trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package azurewallet.system;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+// Streams the four account logs (transactions, vouchers, points, interest) once each,
+// every log on its own reader thread, and routes parsed entries by username to a fixed
+// set of partitions. Each partition runs on its own worker thread, so everything for one
+// account is seen by exactly one thread and needs no locking.
+class LedgerFanOut {
+    private static final int BATCH = 1024;
+    private static final int QUEUE_BATCHES = 64;
+    private static final List<LedgerEntry> END = new ArrayList<>();
+
+    interface Partition {
+        void accept(LedgerEntry e);
+
+        // Called on the partition's own thread once every log has been read.
+        default void finish() throws IOException {}
+    }
+
+    static class Counts {
+        long linesRead;
+        long unparsed;
+    }
+
+    static int defaultPartitions() {
+        return Math.max(2, Runtime.getRuntime().availableProcessors());
+    }
+
+    static Counts run(FileManager fileManager, List<? extends Partition> partitions) throws InterruptedException, ExecutionException {
+        int n = partitions.size();
+        List<BlockingQueue<List<LedgerEntry>>> queues = new ArrayList<>();
+        for (int i = 0; i < n; i++) queues.add(new ArrayBlockingQueue<>(QUEUE_BATCHES));
+
+        ExecutorService pool = Executors.newFixedThreadPool(n + 4);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                BlockingQueue<List<LedgerEntry>> queue = queues.get(i);
+                Partition partition = partitions.get(i);
+                workers.add(pool.submit(() -> {
+                    List<LedgerEntry> batch;
+                    while ((batch = queue.take()) != END) {
+                        for (LedgerEntry e : batch) partition.accept(e);
+                    }
+                    partition.finish();
+                    return null;
+                }));
+            }
+
+            List<Future<long[]>> readers = new ArrayList<>();
+            readers.add(pool.submit(() -> route(fileManager, StorageEngine.Log.TRANSACTIONS, LedgerEntry::parseTransaction, queues)));
+            readers.add(pool.submit(() -> route(fileManager, StorageEngine.Log.VOUCHER_LOG, LedgerEntry::parseVoucher, queues)));
+            readers.add(pool.submit(() -> route(fileManager, StorageEngine.Log.POINTS, LedgerEntry::parsePoints, queues)));
+            readers.add(pool.submit(() -> route(fileManager, StorageEngine.Log.INTEREST, LedgerEntry::parseInterest, queues)));
+
+            Counts counts = new Counts();
+            for (Future<long[]> r : readers) {
+                long[] c = r.get();
+                counts.linesRead += c[0];
+                counts.unparsed += c[1];
+            }
+            for (BlockingQueue<List<LedgerEntry>> q : queues) q.put(END);
+            for (Future<?> w : workers) w.get();
+            return counts;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Streams one log, batching parsed entries per partition; returns {lines, unparsed}.
+    private static long[] route(FileManager fileManager, StorageEngine.Log log, Function<String, LedgerEntry> parser,
+                                List<BlockingQueue<List<LedgerEntry>>> queues) throws IOException, InterruptedException {
+        int n = queues.size();
+        long[] counts = new long[2];
+        List<List<LedgerEntry>> buffers = new ArrayList<>();
+        for (int i = 0; i < n; i++) buffers.add(new ArrayList<>(BATCH));
+        InterruptedException[] interrupted = new InterruptedException[1];
+
+        fileManager.forEachLine(log, line -> {
+            if (interrupted[0] != null) return;
+            counts[0]++;
+            LedgerEntry e = parser.apply(line);
+            if (e == null || e.username == null) {
+                if (!line.isBlank()) counts[1]++;
+                return;
+            }
+            int p = Math.floorMod(e.username.hashCode(), n);
+            List<LedgerEntry> buf = buffers.get(p);
+            buf.add(e);
+            if (buf.size() == BATCH) {
+                try {
+                    queues.get(p).put(buf);
+                } catch (InterruptedException ex) {
+                    interrupted[0] = ex;
+                }
+                buffers.set(p, new ArrayList<>(BATCH));
+            }
+        });
+        if (interrupted[0] != null) throw interrupted[0];
+        for (int p = 0; p < n; p++) {
+            if (!buffers.get(p).isEmpty()) queues.get(p).put(buffers.get(p));
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,164 @@
+package azurewallet.system;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import azurewallet.main.AzureDigitalApp;
+import azurewallet.models.UserAccount;
+
+// Recomputes every account's balance and points from the logs and reports accounts
+// whose stored values have drifted. The logs are read once through LedgerFanOut, so each
+// account's tally lives on exactly one partition thread and memory is bounded by the
+// population, not by log size.
+public class LedgerReconciler {
+    private static final int SAMPLE_ENTRIES = 5;
+
+    private final FileManager fileManager;
+    private final Map<String, UserAccount> users;
+    private final int partitions = LedgerFanOut.defaultPartitions();
+
+    public LedgerReconciler(FileManager fileManager, Map<String, UserAccount> users) {
+        this.fileManager = fileManager;
+        this.users = users;
+    }
+
+    public static class Drift {
+        public final String username;
+        public final double expectedBalance;
+        public final double actualBalance;
+        public final int expectedPoints;
+        public final int actualPoints;
+        public final List<String> recentEntries;
+
+        Drift(String username, double expectedBalance, double actualBalance, int expectedPoints, int actualPoints, List<String> recentEntries) {
+            this.username = username;
+            this.expectedBalance = expectedBalance;
+            this.actualBalance = actualBalance;
+            this.expectedPoints = expectedPoints;
+            this.actualPoints = actualPoints;
+            this.recentEntries = recentEntries;
+        }
+    }
+
+    public static class Report {
+        public long linesRead;
+        public long unparsed;
+        public int accountsChecked;
+        public double expectedRevenue;
+        public double actualRevenue;
+        public long elapsedMillis;
+        public final List<Drift> drifts = new ArrayList<>();
+
+        public boolean revenueMatches() {
+            return Math.abs(expectedRevenue - actualRevenue) < 0.01;
+        }
+
+        public void writeTo(PrintWriter pw) {
+            writeTo(pw, Integer.MAX_VALUE);
+        }
+
+        public void writeTo(PrintWriter pw, int maxDrifts) {
+            pw.println("=== LEDGER RECONCILIATION ===");
+            pw.println("Log lines read: " + linesRead + " (unparsed: " + unparsed + ")");
+            pw.println("Accounts checked: " + accountsChecked + ", drifted: " + drifts.size());
+            pw.printf("Revenue expected PHP %,.2f, logged PHP %,.2f%s%n", expectedRevenue, actualRevenue, revenueMatches() ? "" : "  <-- MISMATCH");
+            for (Drift d : drifts.subList(0, Math.min(maxDrifts, drifts.size()))) {
+                pw.printf("%s: balance expected %,.2f actual %,.2f | points expected %d actual %d%n",
+                        d.username, d.expectedBalance, d.actualBalance, d.expectedPoints, d.actualPoints);
+                for (String e : d.recentEntries) pw.println("    " + e);
+            }
+            if (drifts.size() > maxDrifts) pw.println("... " + (drifts.size() - maxDrifts) + " more drifted account(s) in the saved report.");
+            pw.println("Completed in " + elapsedMillis + " ms.");
+        }
+    }
+
+    // Per-account running totals, owned by a single partition thread.
+    private static class Tally {
+        double balance;
+        int points;
+        int entries;
+        int withdrawals;
+        final ArrayDeque<String> recent = new ArrayDeque<>(SAMPLE_ENTRIES);
+
+        void apply(LedgerEntry e) {
+            balance += e.balanceDelta();
+            points += e.pointsDelta();
+            entries++;
+            if (e.category == LedgerEntry.Category.WITHDRAW) withdrawals++;
+            if (recent.size() == SAMPLE_ENTRIES) recent.removeFirst();
+            recent.addLast(e.line);
+        }
+    }
+
+    public Report reconcile() {
+        long start = System.currentTimeMillis();
+        Report report = new Report();
+        List<Map<String, Tally>> tallies = new ArrayList<>();
+        List<LedgerFanOut.Partition> sinks = new ArrayList<>();
+        for (int i = 0; i < partitions; i++) {
+            Map<String, Tally> owned = new HashMap<>();
+            tallies.add(owned);
+            sinks.add(e -> owned.computeIfAbsent(e.username, k -> new Tally()).apply(e));
+        }
+
+        ExecutorService revenuePool = Executors.newSingleThreadExecutor();
+        try {
+            Future<double[]> revenue = revenuePool.submit(this::sumRevenue);
+            LedgerFanOut.Counts counts = LedgerFanOut.run(fileManager, sinks);
+            report.linesRead += counts.linesRead;
+            report.unparsed += counts.unparsed;
+            double[] rev = revenue.get();
+            report.actualRevenue = rev[0];
+            report.linesRead += (long) rev[1];
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return report;
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Reconciliation failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            revenuePool.shutdownNow();
+        }
+
+        long withdrawals = 0;
+        Set<String> seen = new HashSet<>();
+        for (Map<String, Tally> owned : tallies) {
+            for (Map.Entry<String, Tally> entry : owned.entrySet()) {
+                Tally t = entry.getValue();
+                withdrawals += t.withdrawals;
+                seen.add(entry.getKey());
+                compare(report, entry.getKey(), t);
+            }
+        }
+        // Accounts with no log history must still be empty.
+        for (UserAccount u : users.values()) {
+            if (!seen.contains(u.getUsername())) compare(report, u.getUsername(), new Tally());
+        }
+        report.expectedRevenue = withdrawals * AzureDigitalApp.WITHDRAW_FEE;
+        report.drifts.sort(Comparator.comparing(d -> d.username));
+        report.elapsedMillis = System.currentTimeMillis() - start;
+        return report;
+    }
+
+    private void compare(Report report, String username, Tally t) {
+        UserAccount acc = users.get(username);
+        double actualBalance = acc == null ? 0.0 : acc.getBalance();
+        int actualPoints = acc == null ? 0 : acc.getPoints();
+        if (acc != null) report.accountsChecked++;
+        // Every logged amount is rounded to centavos, so allow half a centavo per entry.
+        double tolerance = 0.01 + 0.005 * t.entries;
+        if (acc == null || Math.abs(t.balance - actualBalance) > tolerance || t.points != actualPoints) {
+            report.drifts.add(new Drift(acc == null ? username + " (no account)" : username,
+                    t.balance, actualBalance, t.points, actualPoints, new ArrayList<>(t.recent)));
+        }
+    }
+
+    private double[] sumRevenue() throws IOException {
+        double[] totals = new double[2];
+        fileManager.forEachLine(StorageEngine.Log.REVENUE, line -> {
+            totals[1]++;
+            LedgerEntry e = LedgerEntry.parseRevenue(line);
+            if (e != null) totals[0] += e.amount;
+        });
+        return totals;
+    }
+}
@@ -0,0 +1,640 @@
+package azurewallet.system;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Tamper evidence for one event log. Every line is a leaf of a Merkle mountain range: an
+// append-only Merkle tree kept as a row of perfect subtrees whose roots are the "peaks".
+// Two sidecar files sit next to the log:
+//
+//   <log>.mmr    32-byte SHA-256 nodes, in the order they were created
+//   <log>.chain  cp,count,root,link,time   one checkpoint per BLOCK entries
+//                open | closed,count       markers for an unclean-shutdown check
+//
+// A checkpoint's link hashes the previous link with its count and root, so checkpoints
+// chain over the whole history. Appending only queues the line; lines are hashed in
+// batches of SEAL_BATCH (or by seal()) and each batch adds its nodes in one write. Blocks
+// are aligned perfect subtrees, so verification hashes blocks in parallel against the
+// stored nodes, and one entry is proven from O(log n) stored nodes.
+//
+// Sidecars that do not open cleanly (a node file that is not a whole MMR, unreadable
+// checkpoints) mark the chain damaged. A damaged chain is left untouched on disk: it is
+// not extended, verification reports it, and only rebuild() (an admin action) starts a
+// new chain over the log as it stands.
+//
+// Someone able to rewrite the log, .mmr and .chain together can forge a consistent
+// history; keep a copy of the root shown in the admin panel somewhere else to anchor it.
+public class LogChain {
+    public static final int BLOCK = 1024; // entries per checkpoint, a power of two
+    private static final int BLOCK_HEIGHT = Integer.numberOfTrailingZeros(BLOCK);
+    private static final int SEAL_BATCH = 256;
+    private static final int HASH = 32;
+    private static final byte LEAF = 0, NODE = 1, BAG = 2;
+    private static final byte[] NO_LINK = new byte[HASH];
+
+    private final StorageEngine storage;
+    private final StorageEngine.Log log;
+    private final DataCipher cipher;
+    private final Path nodesFile;
+    private final Path chainFile;
+    private final MessageDigest sha = sha256();
+
+    private final List<String> pending = new ArrayList<>();
+    private List<Peak> peaks = new ArrayList<>(); // left to right
+    private long leaves;
+    private long nodes;
+    private byte[] nodesId;
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+    private String damage; // why the sidecars were refused, or null
+
+    private static final class Peak {
+        final byte[] hash;
+        final int height;
+        final long pos;
+
+        Peak(byte[] hash, int height, long pos) {
+            this.hash = hash;
+            this.height = height;
+            this.pos = pos;
+        }
+    }
+
+    public static final class Checkpoint {
+        public final long count;
+        public final byte[] root;
+        public final byte[] link;
+        public final String time;
+
+        Checkpoint(long count, byte[] root, byte[] link, String time) {
+            this.count = count;
+            this.root = root;
+            this.link = link;
+            this.time = time;
+        }
+    }
+
+    public LogChain(String dataDir, StorageEngine storage, StorageEngine.Log log, DataCipher cipher) {
+        this.storage = storage;
+        this.log = log;
+        this.cipher = cipher;
+        this.nodesFile = Paths.get(dataDir + log.fileName + ".mmr");
+        this.chainFile = Paths.get(dataDir + log.fileName + ".chain");
+        try {
+            open();
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            markDamaged(e.getMessage());
+        }
+    }
+
+    private void markDamaged(String reason) {
+        damage = reason;
+        pending.clear();
+        System.out.println("| WARNING: the hash chain for " + log.fileName + " is damaged (" + reason + ").");
+        System.out.println("| It is not extended until an admin rebuilds it under [17] Log Integrity.");
+    }
+
+    // =============== OPENING ===============
+
+    private synchronized void open() throws IOException {
+        cipher.adopt(nodesFile);
+        cipher.adopt(chainFile);
+        if (!Files.exists(nodesFile) || Files.size(nodesFile) == 0) cipher.reset(nodesFile);
+        nodesId = DataCipher.fileIdOf(nodesFile);
+        long closedAt = loadCheckpoints();
+
+        long length = cipher.plaintextLength(nodesFile);
+        List<Peak> found = length % HASH == 0 ? peaksOf(length / HASH) : null;
+        if (found == null) {
+            // A torn batch write and tampering look the same here; either way the admin decides.
+            markDamaged(log.fileName + ".mmr holds " + length + " bytes, which is not a whole tree");
+            return;
+        }
+        peaks = new ArrayList<>();
+        for (Peak p : found) peaks.add(new Peak(readNode(p.pos), p.height, p.pos));
+        nodes = length / HASH;
+        leaves = 0;
+        for (Peak p : peaks) leaves += 1L << p.height;
+
+        if (closedAt != leaves) catchUp();
+        writeChainLines(List.of("open"));
+    }
+
+    // Returns the count from a trailing "closed" marker, or -1 after an unclean shutdown.
+    private long loadCheckpoints() throws IOException {
+        checkpoints.clear();
+        long closedAt = -1;
+        if (!Files.exists(chainFile)) return closedAt;
+        try (BufferedReader br = cipher.reader(chainFile)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] p = line.split(",");
+                if (p[0].equals("cp") && p.length == 5) {
+                    checkpoints.add(new Checkpoint(Long.parseLong(p[1]), HexFormat.of().parseHex(p[2]), HexFormat.of().parseHex(p[3]), p[4]));
+                    closedAt = -1;
+                } else if (p[0].equals("closed") && p.length == 2) {
+                    closedAt = Long.parseLong(p[1]);
+                } else if (p[0].equals("open")) {
+                    closedAt = -1;
+                }
+            }
+        }
+        return closedAt;
+    }
+
+    // Lines the chain has not seen: appended after the last seal of a crashed run, or
+    // the whole log the first time chaining runs over it.
+    private void catchUp() throws IOException {
+        long skip = leaves;
+        long[] seen = {0};
+        storage.forEach(log, line -> {
+            if (seen[0]++ < skip) return;
+            pending.add(line);
+            if (pending.size() >= SEAL_BATCH * 16) {
+                try {
+                    seal();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        seal();
+        long added = Math.max(0, seen[0] - skip);
+        if (seen[0] < skip) {
+            System.out.println("| WARNING: " + log.fileName + " has " + seen[0] + " entries but its hash chain has " + skip + ". Run log verification.");
+        } else if (added > 0) {
+            System.out.println("| Hash chain for " + log.fileName + ": sealed " + added + " entries not chained before.");
+        }
+    }
+
+    // =============== APPENDING ===============
+
+    // Queues lines already appended to the log, in log order. Callers hold the lock that
+    // orders their log appends, so the chain sees lines in the order they were written.
+    public synchronized void add(List<String> lines) {
+        if (damage != null) return;
+        pending.addAll(lines);
+        if (pending.size() < SEAL_BATCH) return;
+        try {
+            seal();
+        } catch (IOException e) {
+            System.out.println("Error sealing the hash chain for " + log.fileName + ".");
+        }
+    }
+
+    // Hashes the queued lines and writes their nodes (and any completed checkpoints). The
+    // in-memory state only moves forward once the nodes are on disk.
+    public synchronized void seal() throws IOException {
+        if (pending.isEmpty() || damage != null) return;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(pending.size() * 2 * HASH + 8 * HASH);
+        List<Peak> next = new ArrayList<>(peaks);
+        long count = leaves, size = nodes;
+        List<Checkpoint> done = new ArrayList<>();
+        byte[] link = checkpoints.isEmpty() ? NO_LINK : checkpoints.get(checkpoints.size() - 1).link;
+        for (String line : pending) {
+            size = push(sha, next, leafHash(sha, line), 0, size, out);
+            count++;
+            if (count % BLOCK == 0) {
+                byte[] root = bag(sha, hashes(next));
+                link = link(sha, link, count, root);
+                done.add(new Checkpoint(count, root, link, AppClock.now().toString()));
+            }
+        }
+        cipher.append(nodesFile, nodesId, out.toByteArray());
+        pending.clear();
+        peaks = next;
+        leaves = count;
+        nodes = size;
+        if (!done.isEmpty()) {
+            List<String> lines = new ArrayList<>(done.size());
+            for (Checkpoint c : done) lines.add("cp," + c.count + "," + hex(c.root) + "," + hex(c.link) + "," + c.time);
+            writeChainLines(lines);
+            checkpoints.addAll(done);
+        }
+    }
+
+    // Pushes a node onto the peaks, merging equal heights. Writes the node and every parent
+    // created to out and returns the new node count.
+    private static long push(MessageDigest md, List<Peak> peaks, byte[] hash, int height, long size, ByteArrayOutputStream out) {
+        out.writeBytes(hash);
+        Peak p = new Peak(hash, height, size++);
+        while (!peaks.isEmpty() && peaks.get(peaks.size() - 1).height == p.height) {
+            Peak left = peaks.remove(peaks.size() - 1);
+            byte[] parent = nodeHash(md, left.hash, p.hash);
+            out.writeBytes(parent);
+            p = new Peak(parent, p.height + 1, size++);
+        }
+        peaks.add(p);
+        return size;
+    }
+
+    // Seals and writes the clean-shutdown marker.
+    public synchronized void close() throws IOException {
+        if (damage != null) return;
+        seal();
+        writeChainLines(List.of("closed," + leaves));
+    }
+
+    // Starts an empty chain, after the log itself was cleared.
+    public synchronized void reset() throws IOException {
+        damage = null;
+        pending.clear();
+        peaks = new ArrayList<>();
+        leaves = 0;
+        nodes = 0;
+        checkpoints.clear();
+        Files.deleteIfExists(chainFile);
+        cipher.reset(nodesFile);
+        nodesId = DataCipher.fileIdOf(nodesFile);
+        writeChainLines(List.of("open"));
+    }
+
+    // Replaces a damaged chain with one over the log as it stands now. The old sidecars
+    // are kept as <file>.damaged for inspection. Returns the entries chained. The caller
+    // logs the action; nothing here can tell whether the log itself was edited.
+    public synchronized long rebuild() throws IOException {
+        if (damage == null) throw new IllegalStateException("the hash chain for " + log.fileName + " is not damaged");
+        for (Path p : List.of(nodesFile, chainFile)) {
+            if (Files.exists(p)) Files.move(p, Paths.get(p + ".damaged"), StandardCopyOption.REPLACE_EXISTING);
+        }
+        reset();
+        catchUp();
+        return leaves;
+    }
+
+    private void writeChainLines(List<String> lines) throws IOException {
+        try (PrintWriter pw = cipher.appendWriter(chainFile)) {
+            for (String line : lines) pw.println(line);
+        }
+    }
+
+    // =============== STATE ===============
+
+    public StorageEngine.Log getLog() { return log; }
+
+    public synchronized long getEntries() { return leaves + pending.size(); }
+
+    public synchronized long getSealed() { return leaves; }
+
+    public synchronized boolean isDamaged() { return damage != null; }
+
+    public synchronized String getDamage() { return damage; }
+
+    public synchronized List<Checkpoint> getCheckpoints() { return List.copyOf(checkpoints); }
+
+    // Root over every sealed entry.
+    public synchronized byte[] root() {
+        return bag(sha, hashes(peaks));
+    }
+
+    // =============== PROOFS ===============
+
+    // Inclusion proof for one entry (0-based) against the current root: the sibling hashes
+    // on the way up to its peak, then the peaks. Reads O(log n) stored nodes.
+    public static final class Proof {
+        public final long index;
+        public final long entries;
+        public final byte[] root;
+        final byte[][] siblings;     // bottom-up
+        final boolean[] leftSibling;
+        final byte[][] peaks;
+        final int peak;
+
+        Proof(long index, long entries, byte[] root, byte[][] siblings, boolean[] leftSibling, byte[][] peaks, int peak) {
+            this.index = index;
+            this.entries = entries;
+            this.root = root;
+            this.siblings = siblings;
+            this.leftSibling = leftSibling;
+            this.peaks = peaks;
+            this.peak = peak;
+        }
+
+        public int hashes() { return siblings.length + peaks.length; }
+
+        // True if line is the entry this proof was made for, under root.
+        public boolean verify(String line) {
+            MessageDigest md = sha256();
+            byte[] h = leafHash(md, line);
+            for (int i = 0; i < siblings.length; i++) {
+                h = leftSibling[i] ? nodeHash(md, siblings[i], h) : nodeHash(md, h, siblings[i]);
+            }
+            return MessageDigest.isEqual(h, peaks[peak]) && MessageDigest.isEqual(bag(md, Arrays.asList(peaks)), root);
+        }
+    }
+
+    public synchronized Proof prove(long index) throws IOException {
+        if (damage != null) throw new IOException("the hash chain for " + log.fileName + " is damaged");
+        seal();
+        if (index < 0 || index >= leaves) throw new IllegalArgumentException("no entry " + index + " in " + log.fileName);
+        long first = 0;
+        int which = 0;
+        while (index >= first + (1L << peaks.get(which).height)) first += 1L << peaks.get(which++).height;
+        long pos = peaks.get(which).pos;
+        int height = peaks.get(which).height;
+        long[] at = new long[height];
+        boolean[] left = new boolean[height];
+        while (height > 0) {
+            long leftChild = pos - (1L << height), rightChild = pos - 1;
+            long half = 1L << (height - 1);
+            height--;
+            if (index < first + half) {
+                at[height] = rightChild;
+                pos = leftChild;
+            } else {
+                at[height] = leftChild;
+                left[height] = true;
+                pos = rightChild;
+                first += half;
+            }
+        }
+        byte[][] siblings = readNodes(at);
+        List<byte[]> peakHashes = hashes(peaks);
+        return new Proof(index, leaves, bag(sha, peakHashes), siblings, left, peakHashes.toArray(new byte[0][]), which);
+    }
+
+    // =============== VERIFICATION ===============
+
+    public static final class Report {
+        public final String log;
+        public long entries;
+        public long linesRead;
+        public int blocks;
+        public int threads;
+        public final List<String> problems = new ArrayList<>();
+        public int checkpointsChecked;
+        public long newer;
+        public long elapsedMillis;
+        public String root;
+
+        Report(String log) {
+            this.log = log;
+        }
+
+        public boolean ok() { return problems.isEmpty(); }
+
+        void problem(String p) {
+            if (problems.size() < 20) problems.add(p);
+        }
+    }
+
+    // Re-hashes every sealed entry and checks it against the stored nodes, the checkpoint
+    // chain and the root. Full blocks are hashed on a pool while the log is streamed once;
+    // the nodes above block level, the last partial block and the checkpoints are then
+    // checked in order, which is about n / BLOCK hashes.
+    public Report verify(int threads) throws IOException {
+        long start = System.currentTimeMillis();
+        long sealed, size;
+        List<Checkpoint> cps;
+        byte[] storedRoot;
+        synchronized (this) {
+            if (damage != null) {
+                Report report = new Report(log.fileName);
+                report.problem("hash chain is damaged (" + damage + "); check the log, then rebuild the chain");
+                return report;
+            }
+            seal();
+            sealed = leaves;
+            size = nodes;
+            cps = List.copyOf(checkpoints);
+            storedRoot = bag(sha, hashes(peaks));
+        }
+        Report report = new Report(log.fileName);
+        report.entries = sealed;
+        report.threads = threads;
+        int fullBlocks = (int) (sealed / BLOCK);
+        byte[][] blockRoots = new byte[fullBlocks][];
+        List<String> tail = new ArrayList<>();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Semaphore inFlight = new Semaphore(threads * 2);
+        List<Future<?>> tasks = new ArrayList<>();
+        try {
+            AtomicReference<List<String>> block = new AtomicReference<>(new ArrayList<>(BLOCK));
+            long[] seen = {0};
+            storage.forEach(log, line -> {
+                long i = seen[0]++;
+                if (i >= sealed) {
+                    report.newer++;
+                    return;
+                }
+                if (i >= (long) fullBlocks * BLOCK) {
+                    tail.add(line);
+                    return;
+                }
+                block.get().add(line);
+                if (block.get().size() == BLOCK) {
+                    int k = (int) (i / BLOCK);
+                    List<String> lines = block.getAndSet(new ArrayList<>(BLOCK));
+                    inFlight.acquireUninterruptibly();
+                    tasks.add(pool.submit(() -> {
+                        try {
+                            blockRoots[k] = verifyBlock(k, lines, report);
+                        } finally {
+                            inFlight.release();
+                        }
+                        return null;
+                    }));
+                }
+            });
+            report.linesRead = seen[0];
+            for (Future<?> f : tasks) f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("verification interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("verification failed: " + e.getCause(), e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        report.blocks = fullBlocks;
+        if (report.linesRead < sealed) {
+            report.problem((sealed - report.linesRead) + " chained entries are missing from the end of the log");
+            report.elapsedMillis = System.currentTimeMillis() - start;
+            return report;
+        }
+
+        // Above block level: rebuild the peaks from the recomputed block roots, checking
+        // each parent node and each checkpoint on the way.
+        MessageDigest md = sha256();
+        List<Peak> upper = new ArrayList<>();
+        byte[] link = NO_LINK;
+        int cp = 0;
+        // An edited entry changes every root after it; report where it starts only.
+        boolean rootsDiffer = false, nodesDiffer = false;
+        for (int k = 0; k < fullBlocks; k++) {
+            long rootPos = mmrSize((long) k * BLOCK) + 2L * BLOCK - 2;
+            ByteArrayOutputStream created = new ByteArrayOutputStream();
+            long end = push(md, upper, blockRoots[k], BLOCK_HEIGHT, rootPos, created);
+            byte[] parents = Arrays.copyOfRange(created.toByteArray(), HASH, created.size());
+            if (!nodesDiffer && parents.length > 0 && !Arrays.equals(parents, readNodes(rootPos + 1, (int) (end - rootPos - 1)))) {
+                report.problem("tree nodes above entry " + ((long) (k + 1) * BLOCK) + " do not match");
+                nodesDiffer = true;
+            }
+            long count = (long) (k + 1) * BLOCK;
+            byte[] root = bag(md, hashes(upper));
+            if (cp < cps.size() && cps.get(cp).count == count) {
+                Checkpoint c = cps.get(cp++);
+                link = link(md, link, count, root);
+                report.checkpointsChecked++;
+                if (!MessageDigest.isEqual(c.root, root)) {
+                    if (!rootsDiffer) report.problem("checkpoints from entry " + count + " on do not match the log");
+                    rootsDiffer = true;
+                } else if (!MessageDigest.isEqual(c.link, link)) report.problem("checkpoint chain broken at entry " + count);
+                link = c.link;
+            } else {
+                report.problem("checkpoint for entry " + count + " is missing");
+            }
+        }
+        if (cp < cps.size()) report.problem((cps.size() - cp) + " checkpoint(s) beyond the sealed entries");
+
+        // The last partial block stays below block height, so its nodes are contiguous.
+        long tailStart = mmrSize((long) fullBlocks * BLOCK);
+        List<Peak> tailPeaks = new ArrayList<>();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        long pos = tailStart;
+        for (String line : tail) pos = push(md, tailPeaks, leafHash(md, line), 0, pos, expected);
+        if (pos != size) report.problem("node count " + size + " does not match " + sealed + " entries");
+        else if (!Arrays.equals(expected.toByteArray(), readNodes(tailStart, (int) (pos - tailStart)))) {
+            report.problem("entries " + ((long) fullBlocks * BLOCK + 1) + "-" + sealed + " do not match their hashes");
+        }
+        List<byte[]> all = hashes(upper);
+        all.addAll(hashes(tailPeaks));
+        byte[] recomputed = bag(md, all);
+        if (!MessageDigest.isEqual(recomputed, storedRoot)) report.problem("root does not match the stored peaks");
+        report.root = hex(recomputed);
+        report.elapsedMillis = System.currentTimeMillis() - start;
+        return report;
+    }
+
+    // Recomputes all 2 * BLOCK - 1 nodes of block k and compares them with the stored range.
+    private byte[] verifyBlock(int k, List<String> lines, Report report) throws IOException {
+        MessageDigest md = sha256();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream((2 * BLOCK - 1) * HASH);
+        List<Peak> local = new ArrayList<>();
+        for (String line : lines) push(md, local, leafHash(md, line), 0, 0, expected);
+        long first = mmrSize((long) k * BLOCK);
+        byte[] stored = readNodes(first, 2 * BLOCK - 1);
+        if (!Arrays.equals(expected.toByteArray(), stored)) {
+            synchronized (report) {
+                report.problem("entries " + ((long) k * BLOCK + 1) + "-" + ((long) (k + 1) * BLOCK) + " do not match their hashes");
+            }
+        }
+        return local.get(0).hash;
+    }
+
+    // =============== NODES ===============
+
+    private byte[] readNode(long pos) throws IOException {
+        return readNodes(pos, 1);
+    }
+
+    // Scattered nodes, reading the file through one handle when it is plaintext.
+    private byte[][] readNodes(long[] positions) throws IOException {
+        byte[][] out = new byte[positions.length][];
+        if (nodesId != null) {
+            for (int i = 0; i < positions.length; i++) out[i] = readNode(positions[i]);
+            return out;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(nodesFile.toFile(), "r")) {
+            for (int i = 0; i < positions.length; i++) {
+                out[i] = new byte[HASH];
+                raf.seek(positions[i] * HASH);
+                raf.readFully(out[i]);
+            }
+        }
+        return out;
+    }
+
+    private byte[] readNodes(long pos, int count) throws IOException {
+        byte[] out = new byte[count * HASH];
+        if (count == 0) return out;
+        if (nodesId == null) {
+            try (RandomAccessFile raf = new RandomAccessFile(nodesFile.toFile(), "r")) {
+                raf.seek(pos * HASH);
+                raf.readFully(out);
+            }
+        } else {
+            try (InputStream in = cipher.openAt(nodesFile, pos * HASH)) {
+                if (in.readNBytes(out, 0, out.length) != out.length) throw new EOFException("hash chain node " + pos + " is missing");
+            }
+        }
+        return out;
+    }
+
+    // Number of nodes after n leaves: every leaf plus one parent per merge.
+    static long mmrSize(long n) {
+        return 2 * n - Long.bitCount(n);
+    }
+
+    // Peak positions and heights for a node count, or null if no MMR has that many nodes.
+    private static List<Peak> peaksOf(long size) {
+        List<Peak> list = new ArrayList<>();
+        long pos = 0, remaining = size;
+        for (int h = 62; h >= 0; h--) {
+            long tree = (1L << (h + 1)) - 1;
+            if (tree <= remaining) {
+                list.add(new Peak(null, h, pos + tree - 1));
+                pos += tree;
+                remaining -= tree;
+            }
+        }
+        return remaining == 0 ? list : null;
+    }
+
+    // =============== HASHING ===============
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    // Leaves, parents and the bagged root use different prefixes, so one can never be
+    // passed off as another.
+    private static byte[] leafHash(MessageDigest md, String line) {
+        md.update(LEAF);
+        return md.digest(line.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] nodeHash(MessageDigest md, byte[] left, byte[] right) {
+        md.update(NODE);
+        md.update(left);
+        return md.digest(right);
+    }
+
+    private static byte[] bag(MessageDigest md, List<byte[]> peaks) {
+        if (peaks.isEmpty()) return md.digest();
+        byte[] acc = peaks.get(peaks.size() - 1);
+        for (int i = peaks.size() - 2; i >= 0; i--) {
+            md.update(BAG);
+            md.update(peaks.get(i));
+            acc = md.digest(acc);
+        }
+        return acc;
+    }
+
+    private static byte[] link(MessageDigest md, byte[] previous, long count, byte[] root) {
+        md.update(previous);
+        md.update(ByteBuffer.allocate(8).putLong(count).array());
+        return md.digest(root);
+    }
+
+    private static List<byte[]> hashes(List<Peak> peaks) {
+        List<byte[]> list = new ArrayList<>(peaks.size());
+        for (Peak p : peaks) list.add(p.hash);
+        return list;
+    }
+
+    public static String hex(byte[] bytes) {
+        return HexFormat.of().formatHex(bytes);
+    }
+}
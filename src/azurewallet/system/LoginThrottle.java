@@ -0,0 +1,172 @@
+package azurewallet.system;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import azurewallet.models.UserAccount;
+
+// Sliding-window login throttle. Failed PINs are counted per account and per source
+// (client address) in small fixed-size rings, so a burst of wrong PINs costs memory
+// operations only. Callers without a real per-client source (the console, where every
+// user shares one terminal) pass null and get the per-account limits only; otherwise a
+// few strangers' typos would lock everybody out. Accounts whose lock state changed are remembered and written
+// out in one batch by flushDirty(), which the scheduler calls periodically.
+//
+// The account only stores its failure count, so the time of each account's last failure
+// is kept as engine state ("login_failures", username=millis). After a restart, failures
+// older than the window are dropped instead of counting as if they had just happened.
+public class LoginThrottle {
+    private static final String STATE = "login_failures";
+    private static final long USER_WINDOW_MS = 30 * 60_000;
+    private static final long SOURCE_WINDOW_MS = 10 * 60_000;
+    private static final int SOURCE_LIMIT = 20;
+    private static final long SOURCE_LOCK_MS = 15 * 60_000;
+    private static final int RING_SIZE = 32;
+
+    private final ConcurrentHashMap<String, Window> userWindows = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Window> sourceWindows = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> sourceLocks = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> lastFailures = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final FileManager fileManager;
+
+    // Failure timestamps in a ring; count() only looks at the last RING_SIZE entries.
+    private static class Window {
+        private final long[] times = new long[RING_SIZE];
+        private final UserAccount account; // null for a source window
+        private int next;
+
+        Window(UserAccount account) {
+            this.account = account;
+        }
+
+        synchronized int record(long now, long windowMs) {
+            times[next] = now;
+            next = (next + 1) % RING_SIZE;
+            return count(now, windowMs);
+        }
+
+        // n failures at time t, for an account that already had them before a restart.
+        synchronized void seed(long t, int n) {
+            for (int i = 0; i < Math.min(n, RING_SIZE); i++) times[i] = t;
+            next = Math.min(n, RING_SIZE) % RING_SIZE;
+        }
+
+        synchronized int count(long now, long windowMs) {
+            int n = 0;
+            for (long t : times) if (t != 0 && now - t < windowMs) n++;
+            return n;
+        }
+    }
+
+    public LoginThrottle(FileManager fileManager) {
+        this.fileManager = fileManager;
+        for (Map.Entry<String, String> e : fileManager.loadState(STATE).entrySet()) {
+            try {
+                lastFailures.put(e.getKey(), Long.parseLong(e.getValue()));
+            } catch (NumberFormatException ex) {
+                // treated as unknown, see restored()
+            }
+        }
+    }
+
+    // Lock duration for a number of failures inside the window: 3+ -> 1 min, 6+ -> 5 min,
+    // 9+ -> 10 min, 12+ -> 30 min.
+    static long lockDuration(int failures) {
+        if (failures >= 12) return 1_800_000;
+        if (failures >= 9) return 600_000;
+        if (failures >= 6) return 300_000;
+        if (failures >= 3) return 60_000;
+        return 0;
+    }
+
+    // Milliseconds until this account may try again from this source, 0 if allowed.
+    public long remainingLock(UserAccount acc, String source) {
+        long now = AppClock.millis();
+        long until = acc.getLockEndTime();
+        if (source != null) until = Math.max(until, sourceLocks.getOrDefault(source, 0L));
+        return Math.max(0, until - now);
+    }
+
+    // Returns true if this failure locked the account.
+    public boolean recordFailure(UserAccount acc, String source) {
+        long now = AppClock.millis();
+        int failures = userWindows.computeIfAbsent(acc.getUsername(), k -> restored(acc, now)).record(now, USER_WINDOW_MS);
+        lastFailures.put(acc.getUsername(), now);
+        if (source != null) {
+            int fromSource = sourceWindows.computeIfAbsent(source, k -> new Window(null)).record(now, SOURCE_WINDOW_MS);
+            if (fromSource >= SOURCE_LIMIT) {
+                sourceLocks.put(source, now + SOURCE_LOCK_MS);
+            }
+        }
+
+        long lock = lockDuration(failures);
+        acc.applyLockout(failures, lock > 0 ? now + lock : 0);
+        dirty.add(acc.getUsername());
+        return lock > 0;
+    }
+
+    // A window for an account seen for the first time since startup, carrying over the
+    // failures persisted with it, dated at the stored last-failure time. Failures saved
+    // before that time was kept are dated from the lock they set, otherwise taken as
+    // recent, so a restart never clears them early.
+    private Window restored(UserAccount acc, long now) {
+        Window w = new Window(acc);
+        int failures = acc.getFailedAttempts();
+        if (failures > 0) {
+            Long stored = lastFailures.get(acc.getUsername());
+            long lock = lockDuration(failures);
+            long last = stored != null ? stored
+                    : lock > 0 && acc.getLockEndTime() > 0 ? Math.min(now, acc.getLockEndTime() - lock) : now;
+            if (now - last < USER_WINDOW_MS) w.seed(last, failures);
+        }
+        return w;
+    }
+
+    public void recordSuccess(UserAccount acc) {
+        userWindows.remove(acc.getUsername());
+        if (lastFailures.remove(acc.getUsername()) != null) dirty.add(acc.getUsername());
+        if (acc.getFailedAttempts() != 0 || acc.getLockEndTime() != 0) {
+            acc.resetLock();
+            dirty.add(acc.getUsername());
+        }
+    }
+
+    // Drops windows that have gone quiet, clearing the failure count they leave behind on
+    // the account, and reports whether any lock state is waiting to be persisted. The
+    // last-failure times are saved here; the caller does a single saveUsers() when this
+    // returns true.
+    public boolean flushDirty() {
+        long now = AppClock.millis();
+        userWindows.values().removeIf(w -> {
+            if (w.count(now, USER_WINDOW_MS) > 0) return false;
+            String name = w.account.getUsername();
+            if (w.account.getFailedAttempts() != 0 && w.account.getLockEndTime() <= now) w.account.resetLock();
+            if (lastFailures.remove(name) != null) dirty.add(name);
+            return true;
+        });
+        sourceWindows.values().removeIf(w -> w.count(now, SOURCE_WINDOW_MS) == 0);
+        sourceLocks.values().removeIf(until -> until <= now);
+        boolean any = false;
+        for (Iterator<String> it = dirty.iterator(); it.hasNext(); ) {
+            it.next();
+            it.remove();
+            any = true;
+        }
+        if (any) saveFailures();
+        return any;
+    }
+
+    private void saveFailures() {
+        Map<String, String> state = new HashMap<>();
+        lastFailures.forEach((name, t) -> state.put(name, Long.toString(t)));
+        try {
+            fileManager.saveState(STATE, state);
+        } catch (IOException e) {
+            System.out.println("Error saving login failures.");
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package azurewallet.system;
+
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Merchants paid through Pay Online. Each merchant gets a stable ID and running totals
+// kept in memory; unsettled payments are bucketed by payment date, and the daily
+// settlement nets each closed day into one record per merchant. Reporting reads these
+// aggregates instead of transactions.txt.
+//
+// The registry is engine state ("merchant_registry"), one entry per merchant:
+//
+//   id=name,lifetimeTotal,lifetimeCount,pendingTotal,pendingCount,lastSettled,buckets
+//
+// where buckets is "date/total/count" per unsettled payment date, separated by ';'.
+// Settlements go to the MERCHANT_SETTLEMENTS log as "paymentDate,id,name,count,net", and
+// every payment is appended to MERCHANT_PAYMENTS as "paymentDate,id,name,amount" before
+// it is counted. Those appends are the record of what happened: the registry also stores
+// how many lines of each log it reflects ("payments=N", "settlements=N"), and lines past
+// that are applied again on load, payments first. A crash before the periodic registry
+// save therefore loses no totals and never hands a merchant's ID to another one, and
+// cannot settle a day twice. A merchants.txt registry from before is imported once and
+// renamed.
+public class MerchantLedger {
+    private static final String STATE = "merchant_registry";
+    private static final String APPLIED = "settlements";
+    private static final String PAYMENTS = "payments";
+    private static final String LEGACY_FILE = "merchants.txt";
+
+    private final FileManager fileManager;
+    private final Map<String, Merchant> byKey = new ConcurrentHashMap<>();
+    private final Map<String, Merchant> byId = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private int nextId = 1;
+    // Settlement and payment log lines reflected in the in-memory totals.
+    private long applied;
+    private long payments;
+
+    // Unsettled payments for one merchant and payment date.
+    private static class Bucket {
+        double total;
+        long count;
+    }
+
+    public static class Merchant {
+        private final String id;
+        private final String name;
+        private double lifetimeTotal;
+        private long lifetimeCount;
+        private double pendingTotal;
+        private long pendingCount;
+        private String lastSettled;
+        private final TreeMap<LocalDate, Bucket> pending = new TreeMap<>();
+
+        Merchant(String id, String name) {
+            this.id = id;
+            this.name = name;
+            this.lastSettled = "";
+        }
+
+        public String getId() { return id; }
+        public String getName() { return name; }
+        public synchronized double getLifetimeTotal() { return lifetimeTotal; }
+        public synchronized long getLifetimeCount() { return lifetimeCount; }
+        public synchronized double getPendingTotal() { return pendingTotal; }
+        public synchronized long getPendingCount() { return pendingCount; }
+        public synchronized String getLastSettled() { return lastSettled; }
+
+        synchronized void record(double amount, LocalDate date) {
+            lifetimeTotal += amount;
+            lifetimeCount++;
+            addPending(date, amount, 1);
+        }
+
+        // Negative amounts take a settled part back out of a bucket.
+        private void addPending(LocalDate date, double total, long count) {
+            Bucket b = pending.computeIfAbsent(date, d -> new Bucket());
+            b.total += total;
+            b.count += count;
+            pendingTotal += total;
+            pendingCount += count;
+            if (b.count <= 0) {
+                pending.remove(date);
+                pendingTotal -= b.total;
+                pendingCount -= b.count;
+            }
+            if (pending.isEmpty()) {
+                pendingTotal = 0;
+                pendingCount = 0;
+            }
+        }
+
+        synchronized void settled(LocalDate date, double total, long count) {
+            addPending(date, -total, -count);
+            if (lastSettled.isEmpty() || date.toString().compareTo(lastSettled) > 0) lastSettled = date.toString();
+        }
+
+        synchronized String toStateFormat() {
+            StringJoiner buckets = new StringJoiner(";");
+            for (Map.Entry<LocalDate, Bucket> e : pending.entrySet()) {
+                buckets.add(e.getKey() + "/" + e.getValue().total + "/" + e.getValue().count);
+            }
+            return name + "," + lifetimeTotal + "," + lifetimeCount + "," + pendingTotal + "," + pendingCount + "," + lastSettled + "," + buckets;
+        }
+    }
+
+    public MerchantLedger(FileManager fileManager) {
+        this.fileManager = fileManager;
+        load();
+        fileManager.addClearListener(this::clear);
+    }
+
+    private synchronized void load() {
+        try {
+            Map<String, String> state = fileManager.loadState(STATE);
+            for (Map.Entry<String, String> e : state.entrySet()) {
+                if (!e.getKey().equals(APPLIED) && !e.getKey().equals(PAYMENTS)) add(e.getKey(), e.getValue().split(",", -1));
+            }
+            if (byId.isEmpty() && fileManager.getStorage().isPersistent()) importLegacy();
+            String paid = state.get(PAYMENTS);
+            replayPayments(paid == null ? -1 : Long.parseLong(paid));
+            String done = state.get(APPLIED);
+            replaySettlements(done == null ? -1 : Long.parseLong(done));
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error loading merchants.");
+        }
+    }
+
+    // p = name,lifetimeTotal,lifetimeCount,pendingTotal,pendingCount,lastSettled[,buckets]
+    private void add(String id, String[] p) {
+        if (p.length < 6) return;
+        Merchant m = new Merchant(id, p[0]);
+        m.lifetimeTotal = Double.parseDouble(p[1]);
+        m.lifetimeCount = Long.parseLong(p[2]);
+        m.lastSettled = p[5];
+        if (p.length >= 7 && !p[6].isEmpty()) {
+            for (String bucket : p[6].split(";")) {
+                String[] b = bucket.split("/");
+                m.addPending(LocalDate.parse(b[0]), Double.parseDouble(b[1]), Long.parseLong(b[2]));
+            }
+        } else if (Long.parseLong(p[4]) > 0) {
+            // Older registries kept one undated pending total: settle it as yesterday's.
+            m.addPending(AppClock.today().minusDays(1), Double.parseDouble(p[3]), Long.parseLong(p[4]));
+        }
+        byId.put(m.id, m);
+        byKey.put(key(m.name), m);
+        nextId = Math.max(nextId, Integer.parseInt(m.id.substring(1)) + 1);
+    }
+
+    // merchants.txt lines are "id," followed by the registry fields.
+    private void importLegacy() throws IOException {
+        Path file = Paths.get(fileManager.getDataDir() + LEGACY_FILE);
+        if (!Files.exists(file)) return;
+        DataCipher cipher = DataCipher.get();
+        cipher.adopt(file);
+        try (BufferedReader br = cipher.reader(file)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                int comma = line.indexOf(',');
+                if (comma > 0) add(line.substring(0, comma), line.substring(comma + 1).split(",", -1));
+            }
+        }
+        System.out.println("Imported " + byId.size() + " merchant(s) from " + LEGACY_FILE + ".");
+    }
+
+    // Applies payment lines the saved registry does not reflect yet, registering merchants
+    // first seen in them under their logged ID. A registry saved without the count is
+    // taken as up to date.
+    private void replayPayments(long done) throws IOException {
+        long[] line = {0};
+        fileManager.forEachLine(StorageEngine.Log.MERCHANT_PAYMENTS, l -> {
+            if (done >= 0 && line[0] >= done) {
+                String[] p = l.split(",");
+                if (p.length == 4) {
+                    Merchant m = byId.get(p[1]);
+                    if (m == null) {
+                        m = new Merchant(p[1], p[2]);
+                        byId.put(m.id, m);
+                        byKey.put(key(m.name), m);
+                        nextId = Math.max(nextId, Integer.parseInt(m.id.substring(1)) + 1);
+                    }
+                    m.record(Double.parseDouble(p[3]), LocalDate.parse(p[0]));
+                }
+            }
+            line[0]++;
+        });
+        payments = line[0];
+        if (line[0] != done) dirty.set(true);
+    }
+
+    // Applies settlement lines the saved registry does not reflect yet. A registry saved
+    // without the count (imported, or from before it was kept) is taken as up to date.
+    private void replaySettlements(long done) throws IOException {
+        long[] line = {0};
+        fileManager.forEachLine(StorageEngine.Log.MERCHANT_SETTLEMENTS, l -> {
+            if (done >= 0 && line[0] >= done) {
+                String[] p = l.split(",");
+                Merchant m = p.length == 5 ? byId.get(p[1]) : null;
+                if (m != null) m.settled(LocalDate.parse(p[0]), Double.parseDouble(p[4]), Long.parseLong(p[3]));
+            }
+            line[0]++;
+        });
+        if (line[0] != done) {
+            applied = line[0];
+            dirty.set(true);
+        }
+        flush();
+        if (done < 0) {
+            Path legacy = Paths.get(fileManager.getDataDir() + LEGACY_FILE);
+            if (!dirty.get() && Files.exists(legacy)) Files.move(legacy, Paths.get(legacy + ".imported"), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // clearAllData(): the settlements log is already empty; forget the registry too.
+    private synchronized void clear() {
+        byId.clear();
+        byKey.clear();
+        nextId = 1;
+        applied = 0;
+        payments = 0;
+        dirty.set(true);
+        flush();
+    }
+
+    private static String key(String name) {
+        return name.trim().toLowerCase().replaceAll("\\s+", " ");
+    }
+
+    // Finds the merchant by name, registering it with a new ID on first use.
+    public Merchant resolve(String name) {
+        String clean = name.trim().replace(",", " ").replaceAll("\\s+", " ");
+        Merchant m = byKey.get(key(clean));
+        if (m != null) return m;
+        synchronized (this) {
+            return byKey.computeIfAbsent(key(clean), k -> {
+                Merchant created = new Merchant(String.format("M%05d", nextId++), clean);
+                byId.put(created.id, created);
+                dirty.set(true);
+                return created;
+            });
+        }
+    }
+
+    // Logs the payment before counting it. The ledger lock keeps the logged line count
+    // and the totals in step for flush().
+    public synchronized void recordPayment(Merchant merchant, double amount) {
+        LocalDate today = AppClock.today();
+        try {
+            fileManager.logMerchantPayment(today + "," + merchant.id + "," + merchant.name + "," + amount);
+            payments++;
+        } catch (IOException e) {
+            System.out.println("Error logging merchant payment.");
+        }
+        merchant.record(amount, today);
+        dirty.set(true);
+    }
+
+    public Merchant get(String id) {
+        return byId.get(id);
+    }
+
+    // Sorted by lifetime volume, largest first.
+    public List<Merchant> listByVolume() {
+        List<Merchant> list = new ArrayList<>(byId.values());
+        list.sort(Comparator.comparingDouble(Merchant::getLifetimeTotal).reversed());
+        return list;
+    }
+
+    // Daily job for day: nets every payment dated before it into one record per merchant
+    // and payment date, so a run that catches up several days still files each day under
+    // its own date. Amounts are taken out of the buckets only once the records are logged;
+    // if the append fails they stay pending for the next run.
+    public synchronized int settle(LocalDate day) {
+        List<String> records = new ArrayList<>();
+        List<Runnable> apply = new ArrayList<>();
+        for (Merchant m : byId.values()) {
+            synchronized (m) {
+                for (Map.Entry<LocalDate, Bucket> e : m.pending.headMap(day).entrySet()) {
+                    LocalDate date = e.getKey();
+                    double total = e.getValue().total;
+                    long count = e.getValue().count;
+                    records.add(date + "," + m.id + "," + m.name + "," + count + "," + String.format("%.2f", total));
+                    apply.add(() -> m.settled(date, total, count));
+                }
+            }
+        }
+        if (records.isEmpty()) return 0;
+        try {
+            fileManager.logSettlements(records);
+        } catch (IOException e) {
+            System.out.println("Error writing merchant settlements.");
+            return 0;
+        }
+        apply.forEach(Runnable::run);
+        applied += records.size();
+        dirty.set(true);
+        flush();
+        return records.size();
+    }
+
+    // Persists the registry if anything changed since the last flush.
+    public synchronized void flush() {
+        if (!dirty.getAndSet(false)) return;
+        Map<String, String> state = new HashMap<>();
+        for (Merchant m : byId.values()) state.put(m.id, m.toStateFormat());
+        state.put(APPLIED, Long.toString(applied));
+        state.put(PAYMENTS, Long.toString(payments));
+        try {
+            fileManager.saveState(STATE, state);
+        } catch (IOException e) {
+            dirty.set(true);
+            System.out.println("Error saving merchants.");
+        }
+    }
+}
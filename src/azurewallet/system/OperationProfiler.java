@@ -0,0 +1,135 @@
+package azurewallet.system;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+// Bytes allocated per operation, from the JVM's per-thread allocation counter, plus GC
+// pause totals from collector notifications. Usage:
+//
+//   long mark = OperationProfiler.begin();
+//   ... work ...
+//   OperationProfiler.end("deposit", mark);
+//
+// Nested operations are fine; each is charged everything its thread allocated between
+// its own begin and end. If the JVM has no allocation counter, begin() returns -1 and
+// nothing is recorded.
+public final class OperationProfiler {
+
+    // Bytes per call. bench/AllocationBudgetCheck fails when a hot path exceeds its budget,
+    // and the admin view flags operations whose average goes over.
+    public static final Map<String, Long> BUDGETS = Map.of(
+        "hash", 1_024L,
+        "toFileFormat", 1_024L,
+        "parseUser", 2_048L,
+        "logTransaction", 2_560L,
+        "logPoints", 2_048L,
+        "logInterest", 2_048L,
+        "logVoucher", 2_048L,
+        "logSystemRevenue", 2_048L,
+        "saveUsers/account", 512L
+    );
+
+    private static final com.sun.management.ThreadMXBean THREADS = allocationBean();
+    private static final Map<String, Stat> STATS = new ConcurrentHashMap<>();
+    private static final AtomicLong GC_PAUSES = new AtomicLong();
+    private static final AtomicLong GC_PAUSE_MILLIS = new AtomicLong();
+    private static final AtomicLong GC_MAX_PAUSE_MILLIS = new AtomicLong();
+
+    static {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (!(gc instanceof NotificationEmitter emitter)) continue;
+            emitter.addNotificationListener((n, handback) -> {
+                if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(n.getType())) return;
+                GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData());
+                // Concurrent cycles run beside the application; only count stop-the-world pauses.
+                if (info.getGcName().contains("Concurrent") || info.getGcAction().contains("concurrent")) return;
+                long ms = info.getGcInfo().getDuration();
+                GC_PAUSES.incrementAndGet();
+                GC_PAUSE_MILLIS.addAndGet(ms);
+                GC_MAX_PAUSE_MILLIS.accumulateAndGet(ms, Math::max);
+            }, null, null);
+        }
+    }
+
+    private OperationProfiler() {}
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            bean.setThreadAllocatedMemoryEnabled(true);
+            return bean;
+        }
+        return null;
+    }
+
+    public static class Stat {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final AtomicLong maxBytes = new AtomicLong();
+        private final LongAdder overBudget = new LongAdder();
+
+        public long getCalls() { return calls.sum(); }
+        public long getTotalBytes() { return bytes.sum(); }
+        public long getMaxBytes() { return maxBytes.get(); }
+        public long getOverBudget() { return overBudget.sum(); }
+
+        public long getAverageBytes() {
+            long n = calls.sum();
+            return n == 0 ? 0 : bytes.sum() / n;
+        }
+    }
+
+    public static boolean isSupported() { return THREADS != null; }
+
+    public static long begin() {
+        return THREADS == null ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    // Records and returns the bytes allocated since begin(); -1 when unsupported.
+    public static long end(String op, long mark) {
+        if (mark < 0) return -1;
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - mark;
+        record(op, allocated, 1);
+        return allocated;
+    }
+
+    // Records one batch of n calls (e.g. per-account cost of a whole saveUsers).
+    public static void record(String op, long bytes, long n) {
+        if (n <= 0) return;
+        Stat s = STATS.computeIfAbsent(op, k -> new Stat());
+        s.calls.add(n);
+        s.bytes.add(bytes);
+        long perCall = bytes / n;
+        s.maxBytes.accumulateAndGet(perCall, Math::max);
+        Long budget = BUDGETS.get(op);
+        if (budget != null && perCall > budget) s.overBudget.add(n);
+    }
+
+    public static Map<String, Stat> snapshot() {
+        return new TreeMap<>(STATS);
+    }
+
+    public static void reset() {
+        STATS.clear();
+    }
+
+    public static long getGcPauses() { return GC_PAUSES.get(); }
+    public static long getGcPauseMillis() { return GC_PAUSE_MILLIS.get(); }
+    public static long getGcMaxPauseMillis() { return GC_MAX_PAUSE_MILLIS.get(); }
+
+    // Collector totals since JVM start, including concurrent work: name -> {count, millis}.
+    public static Map<String, long[]> collectorTotals() {
+        Map<String, long[]> totals = new LinkedHashMap<>();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            totals.put(gc.getName(), new long[]{gc.getCollectionCount(), gc.getCollectionTime()});
+        }
+        return totals;
+    }
+}
@@ -0,0 +1,190 @@
+package azurewallet.system;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import azurewallet.models.AccountListener;
+import azurewallet.models.Rank;
+import azurewallet.models.UserAccount;
+
+// Live tier distribution and leaderboards. Tier counts move on rank-transition events, so
+// "how many Gold accounts" is a counter read rather than a population walk. The
+// leaderboards (total transacted, points) keep only the leading accounts: a change costs
+// O(log K), or O(1) for an account nowhere near the top. The population is walked once at
+// startup, and again only if enough leaders fall back that the board can no longer vouch
+// for its top K (points can go down when redeemed).
+public class RankBoard implements AccountListener {
+    public static final AccountIndex.SortKey[] BOARDS = {AccountIndex.SortKey.TOTAL_TRANSACTED, AccountIndex.SortKey.POINTS};
+    private static final int TIERS = Rank.values().length;
+
+    public static class Entry {
+        public final String username;
+        public final double value;
+
+        Entry(String username, double value) {
+            this.username = username;
+            this.value = value;
+        }
+    }
+
+    // Ordering key: value descending, then username ascending to keep keys unique.
+    private static final class Key implements Comparable<Key> {
+        final double value;
+        final String username;
+
+        Key(double value, String username) {
+            this.value = value;
+            this.username = username;
+        }
+
+        @Override
+        public int compareTo(Key o) {
+            int c = Double.compare(o.value, value);
+            return c != 0 ? c : username.compareTo(o.username);
+        }
+    }
+
+    // Tracks up to capacity leaders. Invariant: every account not on the board has a value
+    // no greater than floor, so the board's first K are the true top K as long as it holds
+    // at least K entries (or floor is still -infinity, i.e. nobody has ever been left off).
+    private static final class Board {
+        final AccountIndex.SortKey sortKey;
+        final int capacity;
+        final TreeSet<Key> keys = new TreeSet<>();
+        final Map<String, Key> members = new HashMap<>();
+        double floor = Double.NEGATIVE_INFINITY;
+        long rebuilds;
+
+        Board(AccountIndex.SortKey sortKey, int capacity) {
+            this.sortKey = sortKey;
+            this.capacity = capacity;
+        }
+
+        synchronized void update(String username, double value) {
+            Key old = members.get(username);
+            if (old != null) {
+                if (old.value == value) return;
+                keys.remove(old);
+                members.remove(username);
+                if (value < floor) return; // fell behind someone off the board
+            } else if (value <= floor) {
+                return;
+            }
+            Key k = new Key(value, username);
+            keys.add(k);
+            members.put(username, k);
+            if (keys.size() > capacity) {
+                Key last = keys.pollLast();
+                members.remove(last.username);
+                floor = Math.max(floor, last.value);
+            }
+        }
+
+        synchronized void remove(String username) {
+            Key old = members.remove(username);
+            if (old != null) keys.remove(old);
+        }
+
+        synchronized List<Entry> top(int k, Collection<UserAccount> population) {
+            if (keys.size() < k && floor != Double.NEGATIVE_INFINITY) rebuild(population);
+            List<Entry> out = new ArrayList<>(Math.min(k, keys.size()));
+            for (Key key : keys) {
+                if (out.size() == k) break;
+                out.add(new Entry(key.username, key.value));
+            }
+            return out;
+        }
+
+        void rebuild(Collection<UserAccount> population) {
+            keys.clear();
+            members.clear();
+            floor = Double.NEGATIVE_INFINITY;
+            for (UserAccount acc : population) update(acc.getUsername(), valueOf(acc, sortKey));
+            rebuilds++;
+        }
+    }
+
+    private final Map<String, UserAccount> users;
+    private final int size;
+    private final Board[] boards;
+    private final Map<String, Rank> tierOf = new ConcurrentHashMap<>();
+    private final AtomicLongArray tierCounts = new AtomicLongArray(TIERS);
+    private final AtomicLongArray transitions = new AtomicLongArray(TIERS * TIERS);
+
+    // size is the K shown; each board tracks 2K so a few leaders falling back is absorbed.
+    public RankBoard(Map<String, UserAccount> users, int size) {
+        this.users = users;
+        this.size = size;
+        boards = new Board[BOARDS.length];
+        for (int i = 0; i < BOARDS.length; i++) boards[i] = new Board(BOARDS[i], 2 * size);
+        for (UserAccount acc : users.values()) accountChanged(acc);
+    }
+
+    private static double valueOf(UserAccount acc, AccountIndex.SortKey key) {
+        return switch (key) {
+            case BALANCE -> acc.getBalance();
+            case POINTS -> acc.getPoints();
+            case TOTAL_TRANSACTED -> acc.getTotalTransacted();
+        };
+    }
+
+    // =============== EVENTS ===============
+
+    @Override
+    public void rankChanged(UserAccount acc, String from, String to) {
+        Rank f = Rank.of(from), t = Rank.of(to);
+        // Accounts not yet on the board (being built or imported) join via accountChanged.
+        if (f != t && tierOf.replace(acc.getUsername(), f, t)) {
+            tierCounts.decrementAndGet(f.ordinal());
+            tierCounts.incrementAndGet(t.ordinal());
+            transitions.incrementAndGet(f.ordinal() * TIERS + t.ordinal());
+        }
+    }
+
+    @Override
+    public void accountChanged(UserAccount acc) {
+        Rank r = Rank.of(acc.getRank());
+        Rank prev = tierOf.put(acc.getUsername(), r);
+        if (prev != r) {
+            if (prev != null) tierCounts.decrementAndGet(prev.ordinal());
+            tierCounts.incrementAndGet(r.ordinal());
+        }
+        for (Board b : boards) b.update(acc.getUsername(), valueOf(acc, b.sortKey));
+    }
+
+    @Override
+    public void accountRemoved(UserAccount acc) {
+        Rank prev = tierOf.remove(acc.getUsername());
+        if (prev != null) tierCounts.decrementAndGet(prev.ordinal());
+        for (Board b : boards) b.remove(acc.getUsername());
+    }
+
+    // =============== QUERIES ===============
+
+    public long count(Rank rank) {
+        return tierCounts.get(rank.ordinal());
+    }
+
+    public long transitions(Rank from, Rank to) {
+        return transitions.get(from.ordinal() * TIERS + to.ordinal());
+    }
+
+    public int getSize() { return size; }
+
+    public List<Entry> top(AccountIndex.SortKey sortKey) {
+        for (Board b : boards) {
+            if (b.sortKey == sortKey) return b.top(size, users.values());
+        }
+        throw new IllegalArgumentException("No leaderboard for " + sortKey);
+    }
+
+    public long getRebuilds() {
+        long n = 0;
+        for (Board b : boards) {
+            synchronized (b) {
+                n += b.rebuilds;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,177 @@
+package azurewallet.system;
+
+import java.io.*;
+import java.net.Socket;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import azurewallet.models.UserAccount;
+
+// Read-only replica of a primary's accounts and transactions. Applies the stream from
+// ReplicationServer and answers queries from its own memory, reporting how far behind
+// the primary it is. Reconnects (and resnapshots) automatically if the primary drops or
+// sends a line it cannot parse. Answers the primary's challenge with the shared
+// azure.replication.secret first.
+//
+// The snapshot carries accounts only, so per-user history holds the transactions
+// streamed since the last (re)connect, and the console says so.
+public class ReplicaNode {
+    private static final int HISTORY_PER_USER = 50;
+    private static final long RETRY_MS = 2000;
+    private static final long HEARTBEAT_MS = 1000;
+    private static final DateTimeFormatter SINCE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final String host;
+    private final int port;
+    private final Map<String, UserAccount> accounts = new ConcurrentHashMap<>();
+    private final Map<String, Deque<String>> history = new ConcurrentHashMap<>();
+    private volatile long lastSeq;
+    private volatile long lastPrimaryMillis;
+    private volatile long lastAppliedMillis;
+    private volatile boolean connected;
+    private volatile long applied;
+    private volatile LocalDateTime historySince;
+
+    private final String secret;
+
+    public ReplicaNode(String host, int port) {
+        this.host = host;
+        this.port = port;
+        this.secret = ReplicationServer.secret();
+        if (secret == null) throw new IllegalStateException("azure.replication.secret is not set");
+    }
+
+    public void start() {
+        Thread t = new Thread(this::followLoop, "replica-follow");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void followLoop() {
+        while (true) {
+            try (Socket socket = new Socket(host, port)) {
+                String challenge = ReplicationServer.readLine(socket.getInputStream());
+                if (challenge == null || !challenge.startsWith("C ")) throw new IOException("no challenge");
+                OutputStream out = socket.getOutputStream();
+                out.write(("R " + ReplicationServer.respond(secret, challenge.substring(2)) + "\n").getBytes("UTF-8"));
+                out.flush();
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"), 1 << 16);
+                accounts.clear();
+                history.clear();
+                historySince = AppClock.now();
+                connected = true;
+                String line;
+                while ((line = in.readLine()) != null) apply(line);
+            } catch (IOException e) {
+                // Primary not reachable yet or went away; retry below.
+            }
+            connected = false;
+            try {
+                Thread.sleep(RETRY_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // A line that does not parse is a protocol error: the stream is dropped and the
+    // replica resynchronises from a fresh snapshot.
+    private void apply(String message) throws IOException {
+        try {
+            applyMessage(message);
+        } catch (RuntimeException e) {
+            System.out.println("Malformed replication message (" + e + "); resynchronising.");
+            throw new IOException("malformed replication message", e);
+        }
+    }
+
+    private void applyMessage(String message) {
+        int s1 = message.indexOf(' ');
+        int s2 = message.indexOf(' ', s1 + 1);
+        int s3 = message.indexOf(' ', s2 + 1);
+        char type = message.charAt(0);
+        lastSeq = Long.parseLong(message.substring(s1 + 1, s2));
+        lastPrimaryMillis = Long.parseLong(s3 < 0 ? message.substring(s2 + 1) : message.substring(s2 + 1, s3));
+        lastAppliedMillis = System.currentTimeMillis();
+        applied++;
+        if (s3 < 0) return;
+        String payload = message.substring(s3 + 1);
+        switch (type) {
+            case 'A' -> {
+                UserAccount acc = FileManager.parseUser(payload);
+                if (acc != null) accounts.put(acc.getUsername(), acc);
+            }
+            case 'D' -> {
+                accounts.remove(payload);
+                history.remove(payload);
+            }
+            case 'T' -> {
+                LedgerEntry e = LedgerEntry.parseTransaction(payload);
+                if (e == null) return;
+                Deque<String> h = history.computeIfAbsent(e.username, k -> new ArrayDeque<>());
+                synchronized (h) {
+                    if (h.size() == HISTORY_PER_USER) h.removeFirst();
+                    h.addLast(payload);
+                }
+            }
+            default -> { }
+        }
+    }
+
+    // Primary-to-replica delay of the last applied message. The primary sends at least a
+    // heartbeat every second, so silence beyond that also counts as lag.
+    public long lagMillis() {
+        if (lastPrimaryMillis == 0) return -1;
+        long silence = System.currentTimeMillis() - lastAppliedMillis;
+        return Math.max(0, lastAppliedMillis - lastPrimaryMillis) + Math.max(0, silence - HEARTBEAT_MS);
+    }
+
+    // =============== READ-ONLY CONSOLE ===============
+
+    public void console(Scanner sc) {
+        System.out.println("Replica of " + host + ":" + port + " (read-only). Commands:");
+        System.out.println("  balance <user> | history <user> | summary | lag | exit");
+        while (true) {
+            System.out.print("replica> ");
+            if (!sc.hasNextLine()) return;
+            String[] cmd = sc.nextLine().trim().split("\\s+", 2);
+            switch (cmd[0].toLowerCase()) {
+                case "balance" -> {
+                    UserAccount acc = cmd.length > 1 ? accounts.get(cmd[1].toLowerCase()) : null;
+                    if (acc == null) System.out.println("User not found.");
+                    else acc.displayBalance();
+                    printLag();
+                }
+                case "history" -> {
+                    Deque<String> h = cmd.length > 1 ? history.get(cmd[1].toLowerCase()) : null;
+                    String since = historySince == null ? "connecting" : historySince.format(SINCE_FORMAT);
+                    if (h == null) System.out.println("No transactions replicated since " + since + ".");
+                    else synchronized (h) {
+                        System.out.println("Transactions since " + since + " (earlier ones are on the primary):");
+                        h.forEach(l -> System.out.println("| " + l));
+                    }
+                    printLag();
+                }
+                case "summary" -> {
+                    double total = 0;
+                    for (UserAccount a : accounts.values()) total += a.getBalance();
+                    System.out.println("Accounts: " + accounts.size());
+                    System.out.printf("Total balances: PHP %,.2f%n", total);
+                    System.out.println("Messages applied: " + applied + ", last seq " + lastSeq);
+                    printLag();
+                }
+                case "lag" -> printLag();
+                case "exit", "0" -> { return; }
+                case "" -> { }
+                default -> System.out.println("Unknown command.");
+            }
+        }
+    }
+
+    private void printLag() {
+        long lag = lagMillis();
+        System.out.println("[" + (connected ? "connected" : "DISCONNECTED") + ", replication lag "
+                + (lag < 0 ? "unknown" : lag + " ms") + "]");
+    }
+}
@@ -0,0 +1,221 @@
+package azurewallet.system;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import azurewallet.models.AccountListener;
+import azurewallet.models.UserAccount;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+// Primary side of log shipping. Every replica gets a snapshot of all accounts followed by
+// the live stream of account changes and transaction lines, one message per line:
+//
+//   A <seq> <millis> <users.txt line>     account upserted (PIN hash blanked as "-")
+//   D <seq> <millis> <username>           account removed
+//   T <seq> <millis> <transactions line>  transaction appended
+//   H <seq> <millis>                      heartbeat, lets idle replicas measure lag
+//
+// Each replica has its own bounded queue and writer thread; a replica that falls too far
+// behind is disconnected and will resynchronise from a fresh snapshot when it reconnects.
+//
+// The server listens on the loopback interface unless azure.replication.bind names another
+// address, and a replica must prove it holds the shared secret (azure.replication.secret)
+// before it is sent anything: the primary sends "C <nonce>", the replica answers
+// "R <HMAC-SHA256(secret, nonce)>". Without a secret the server does not start.
+public class ReplicationServer implements AccountListener {
+    private static final int QUEUE_LIMIT = 200_000;
+    private static final long HEARTBEAT_MS = 1000;
+    private static final int HANDSHAKE_TIMEOUT_MS = 5000;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Map<String, UserAccount> users;
+    private final int port;
+    private final AtomicLong seq = new AtomicLong();
+    private final Map<Replica, Boolean> replicas = new ConcurrentHashMap<>();
+    private ServerSocket serverSocket;
+
+    private class Replica {
+        final Socket socket;
+        final BlockingQueue<String> queue = new LinkedBlockingQueue<>(QUEUE_LIMIT);
+
+        Replica(Socket socket) {
+            this.socket = socket;
+        }
+
+        void offer(String message) {
+            if (!queue.offer(message)) {
+                System.out.println("Replica " + socket.getRemoteSocketAddress() + " fell behind; disconnecting.");
+                close();
+            }
+        }
+
+        void close() {
+            replicas.remove(this);
+            try {
+                socket.close();
+            } catch (IOException ignored) {}
+        }
+
+        void pump() {
+            try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"), 1 << 16)) {
+                while (!socket.isClosed()) {
+                    String msg = queue.poll(HEARTBEAT_MS, TimeUnit.MILLISECONDS);
+                    if (msg == null) msg = message('H', "");
+                    out.write(msg);
+                    out.newLine();
+                    // Drain whatever else is ready before flushing.
+                    while ((msg = queue.poll()) != null) {
+                        out.write(msg);
+                        out.newLine();
+                    }
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                // Replica went away; it will reconnect and resync.
+            } finally {
+                close();
+            }
+        }
+    }
+
+    public ReplicationServer(Map<String, UserAccount> users, FileManager fileManager, int port) {
+        this.users = users;
+        this.port = port;
+        fileManager.addTransactionListener(line -> broadcast(message('T', line)));
+    }
+
+    public void start() throws IOException {
+        if (secret() == null) throw new IOException("azure.replication.secret is not set");
+        String bind = System.getProperty("azure.replication.bind");
+        InetAddress address = bind == null || bind.isBlank() ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bind);
+        serverSocket = new ServerSocket(port, 50, address);
+        Thread acceptor = new Thread(this::acceptLoop, "replication-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        System.out.println("Replication primary listening on " + address.getHostAddress() + ":" + port + ".");
+    }
+
+    public void stop() {
+        try {
+            if (serverSocket != null) serverSocket.close();
+        } catch (IOException ignored) {}
+        for (Replica r : replicas.keySet()) r.close();
+    }
+
+    public int getReplicaCount() { return replicas.size(); }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread t = new Thread(() -> admit(socket), "replication-auth-" + socket.getRemoteSocketAddress());
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) System.out.println("Replication accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    // Runs off the accept thread so a silent client cannot hold up others.
+    private void admit(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+            byte[] nonce = new byte[16];
+            RANDOM.nextBytes(nonce);
+            OutputStream out = socket.getOutputStream();
+            out.write(("C " + LogChain.hex(nonce) + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            String answer = readLine(socket.getInputStream());
+            byte[] expected = ("R " + respond(secret(), LogChain.hex(nonce))).getBytes(StandardCharsets.UTF_8);
+            if (answer == null || !MessageDigest.isEqual(expected, answer.getBytes(StandardCharsets.UTF_8))) {
+                System.out.println("Replica " + socket.getRemoteSocketAddress() + " failed authentication.");
+                socket.close();
+                return;
+            }
+            socket.setSoTimeout(0);
+        } catch (IOException e) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {}
+            return;
+        }
+        Replica replica = new Replica(socket);
+        // Subscribe first so nothing is missed; the snapshot for an account is taken
+        // under the account's lock, so it is ordered with that account's own events.
+        replicas.put(replica, Boolean.TRUE);
+        Thread writer = new Thread(replica::pump, "replication-" + socket.getRemoteSocketAddress());
+        writer.setDaemon(true);
+        writer.start();
+        for (UserAccount acc : users.values()) {
+            synchronized (acc) {
+                replica.offer(message('A', record(acc)));
+            }
+        }
+    }
+
+    // One short line, read byte by byte so nothing after it is buffered away.
+    static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (sb.length() > 256) return null;
+            sb.append((char) b);
+        }
+        return b == -1 ? null : sb.toString();
+    }
+
+    // =============== AUTHENTICATION ===============
+
+    static String secret() {
+        String s = System.getProperty("azure.replication.secret");
+        return s == null || s.isEmpty() ? null : s;
+    }
+
+    static String respond(String secret, String nonceHex) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return LogChain.hex(mac.doFinal(nonceHex.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 unavailable", e);
+        }
+    }
+
+    // The users.txt line without the PIN hash: replicas never authenticate anyone, and an
+    // unsalted hash of a 4-digit PIN is as good as the PIN.
+    static String record(UserAccount acc) {
+        String line = acc.toFileFormat();
+        int a = line.indexOf(',');
+        int b = line.indexOf(',', a + 1);
+        return line.substring(0, a + 1) + "-" + line.substring(b);
+    }
+
+    private String message(char type, String payload) {
+        return type + " " + seq.incrementAndGet() + " " + System.currentTimeMillis() + (payload.isEmpty() ? "" : " " + payload);
+    }
+
+    private void broadcast(String message) {
+        for (Replica r : replicas.keySet()) r.offer(message);
+    }
+
+    @Override
+    public void accountChanged(UserAccount acc) {
+        if (!replicas.isEmpty()) broadcast(message('A', record(acc)));
+    }
+
+    @Override
+    public void accountRemoved(UserAccount acc) {
+        if (!replicas.isEmpty()) broadcast(message('D', acc.getUsername()));
+    }
+}
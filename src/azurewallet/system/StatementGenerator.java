@@ -0,0 +1,163 @@
+package azurewallet.system;
+
+import java.io.*;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import azurewallet.main.AzureDigitalApp;
+import azurewallet.models.UserAccount;
+
+// Writes one statement per account for a month in a single pass over the logs. Entries
+// fan out by username to partition threads (LedgerFanOut); each partition keeps totals for
+// its accounts and saves their statements (documents under statements/<month>/) when the
+// logs are exhausted. Balances are derived backwards from the stored balance: closing =
+// current - net of everything logged after the month, opening = closing - net of the
+// month itself.
+public class StatementGenerator {
+    private static final LedgerEntry.Category[] CATEGORIES = LedgerEntry.Category.values();
+
+    private final FileManager fileManager;
+    private final Map<String, UserAccount> users;
+    private final int partitions = LedgerFanOut.defaultPartitions();
+
+    public StatementGenerator(FileManager fileManager, Map<String, UserAccount> users) {
+        this.fileManager = fileManager;
+        this.users = users;
+    }
+
+    public static class Result {
+        public int statements;
+        public long linesRead;
+        public long unparsed;
+        public long elapsedMillis;
+        public String directory;
+    }
+
+    // Running totals for one account, owned by a single partition thread.
+    private static class Account {
+        final double[] sums = new double[CATEGORIES.length];
+        final int[] counts = new int[CATEGORIES.length];
+        final List<LedgerEntry> entries = new ArrayList<>();
+        double monthNet;
+        double laterNet;
+        int pointsEarned;
+        int pointsRedeemed;
+    }
+
+    private class Partition implements LedgerFanOut.Partition {
+        final String month;
+        final String folder;
+        final List<UserAccount> accounts = new ArrayList<>();
+        final Map<String, Account> totals = new HashMap<>();
+        int written;
+
+        Partition(String month, String folder) {
+            this.month = month;
+            this.folder = folder;
+        }
+
+        @Override
+        public void accept(LedgerEntry e) {
+            int cmp = e.month().compareTo(month);
+            if (cmp < 0) return;
+            Account a = totals.computeIfAbsent(e.username, k -> new Account());
+            if (cmp > 0) {
+                a.laterNet += e.balanceDelta();
+                return;
+            }
+            a.monthNet += e.balanceDelta();
+            a.sums[e.category.ordinal()] += e.amount;
+            a.counts[e.category.ordinal()]++;
+            if (e.category == LedgerEntry.Category.POINTS_EARNED) a.pointsEarned += e.points;
+            if (e.category == LedgerEntry.Category.POINTS_REDEEMED) a.pointsRedeemed += e.points;
+            a.entries.add(e);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            for (UserAccount acc : accounts) {
+                Account a = totals.getOrDefault(acc.getUsername(), new Account());
+                fileManager.saveDocument(folder + "/" + acc.getUsername() + ".txt", statement(month, acc, a));
+                written++;
+            }
+        }
+    }
+
+    public Result generate(YearMonth ym) {
+        long start = System.currentTimeMillis();
+        Result result = new Result();
+        String folder = "statements/" + ym;
+        result.directory = fileManager.documentLocation(folder);
+
+        List<Partition> sinks = new ArrayList<>();
+        for (int i = 0; i < partitions; i++) sinks.add(new Partition(ym.toString(), folder));
+        for (UserAccount acc : users.values()) {
+            sinks.get(Math.floorMod(acc.getUsername().hashCode(), partitions)).accounts.add(acc);
+        }
+
+        try {
+            LedgerFanOut.Counts counts = LedgerFanOut.run(fileManager, sinks);
+            result.linesRead = counts.linesRead;
+            result.unparsed = counts.unparsed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return result;
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Statement run failed: " + e.getCause().getMessage(), e.getCause());
+        }
+        for (Partition p : sinks) result.statements += p.written;
+        result.elapsedMillis = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    private static String statement(String month, UserAccount acc, Account a) {
+        double closing = acc.getBalance() - a.laterNet;
+        double opening = closing - a.monthNet;
+        // The four logs arrive interleaved; ISO timestamps sort chronologically as text.
+        a.entries.sort(Comparator.comparing(e -> e.timestamp));
+
+        StringWriter out = new StringWriter();
+        try (PrintWriter pw = new PrintWriter(out)) {
+            pw.println("+==========================================================+");
+            pw.printf("|%s|%n", center("MONTHLY STATEMENT " + month, 58));
+            pw.println("+==========================================================+");
+            pw.printf("Account : %s (%s)%n", acc.getUsername(), acc.getRank());
+            pw.printf("Opening balance : PHP %,14.2f%n", opening);
+            pw.printf("Closing balance : PHP %,14.2f%n", closing);
+            pw.println("------------------------- TOTALS -------------------------");
+            for (LedgerEntry.Category c : CATEGORIES) {
+                if (a.counts[c.ordinal()] == 0 || c == LedgerEntry.Category.POINTS_EARNED) continue;
+                pw.printf("%-16s %5d  PHP %,14.2f%n", label(c), a.counts[c.ordinal()], a.sums[c.ordinal()]);
+            }
+            if (a.counts[LedgerEntry.Category.WITHDRAW.ordinal()] > 0) {
+                pw.printf("%-16s %5d  PHP %,14.2f%n", "Withdraw fees", a.counts[LedgerEntry.Category.WITHDRAW.ordinal()],
+                        a.counts[LedgerEntry.Category.WITHDRAW.ordinal()] * AzureDigitalApp.WITHDRAW_FEE);
+            }
+            pw.printf("Points earned %d, redeemed %d%n", a.pointsEarned, a.pointsRedeemed);
+            pw.println("------------------------ ACTIVITY ------------------------");
+            if (a.entries.isEmpty()) pw.println("No activity this month.");
+            for (LedgerEntry e : a.entries) pw.println(e.line);
+            pw.println("+==========================================================+");
+        }
+        return out.toString();
+    }
+
+    private static String label(LedgerEntry.Category c) {
+        return switch (c) {
+            case DEPOSIT -> "Deposits";
+            case WITHDRAW -> "Withdrawals";
+            case PAYMENT -> "Online payments";
+            case SENT -> "Sent";
+            case RECEIVED -> "Received";
+            case VOUCHER -> "Vouchers";
+            case POINTS_REDEEMED -> "Points redeemed";
+            case INTEREST -> "Interest";
+            default -> "Other";
+        };
+    }
+
+    private static String center(String text, int width) {
+        int left = (width - text.length()) / 2;
+        return " ".repeat(left) + text + " ".repeat(width - text.length() - left);
+    }
+}
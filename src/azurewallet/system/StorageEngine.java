@@ -0,0 +1,98 @@
+package azurewallet.system;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Consumer;
+import azurewallet.models.UserAccount;
+import azurewallet.models.VoucherIndex;
+
+// Persistence backend for accounts, live vouchers, append-only event logs and small
+// key/value state. FileManager is the only caller; pick a backend with StorageEngines.
+public interface StorageEngine {
+
+    enum Log {
+        TRANSACTIONS("transactions"),
+        VOUCHER_LOG("voucher_log"),
+        POINTS("points_log"),
+        INTEREST("interest_log"),
+        REVENUE("system_revenue"),
+        SCHEDULER("scheduler_log"),
+        ADMIN("admin_log"),
+        MERCHANT_SETTLEMENTS("merchant_settlements"),
+        MERCHANT_PAYMENTS("merchant_payments"),
+        IDEMPOTENCY("idempotency");
+
+        public final String fileName;
+
+        Log(String fileName) { this.fileName = fileName; }
+    }
+
+    String describe();
+
+    // False for a backend that keeps nothing on disk. Files that only make sense next to
+    // stored data (hash-chain sidecars) are then not written either.
+    default boolean isPersistent() { return true; }
+
+    // =============== ACCOUNTS ===============
+
+    Map<String, UserAccount> loadAccounts();
+
+    void saveAccounts(Collection<UserAccount> accounts) throws IOException;
+
+    // =============== VOUCHERS ===============
+
+    List<VoucherIndex.Voucher> loadVouchers();
+
+    void appendVouchers(List<VoucherIndex.Voucher> vouchers) throws IOException;
+
+    void saveVouchers(Collection<VoucherIndex.Voucher> vouchers) throws IOException;
+
+    // Records that vouchers left the live set. Backends may append tombstones rather than
+    // rewrite the store; compactVouchers() folds them away later.
+    void removeVouchers(List<VoucherIndex.Voucher> vouchers) throws IOException;
+
+    // =============== EVENT LOGS ===============
+
+    void append(Log log, List<String> lines) throws IOException;
+
+    void forEach(Log log, Consumer<String> action) throws IOException;
+
+    void clear(Log log) throws IOException;
+
+    // Swaps a log's whole content, archived segments included, for lines. The live file is
+    // replaced atomically; a crash before the old segments are gone leaves their lines
+    // readable too, so only use it for logs whose readers tolerate repeats.
+    void replace(Log log, List<String> lines) throws IOException;
+
+    // =============== STATE ===============
+
+    Map<String, String> loadState(String name);
+
+    void saveState(String name, Map<String, String> state) throws IOException;
+
+    // =============== DOCUMENTS ===============
+    // Whole text files meant for people: rule and campaign config, reports, statements.
+    // Names are relative paths such as "campaigns.txt" or "statements/2025-03/ana.txt".
+
+    // The document's text, or null if it has not been saved yet.
+    String loadDocument(String name) throws IOException;
+
+    void saveDocument(String name, String text) throws IOException;
+
+    // Where a document (or a folder of them) lives, for messages to the admin.
+    String documentLocation(String name);
+
+    // =============== COMPACTION ===============
+    // Both run while appends and reads continue. They return the bytes removed from the
+    // live file; backends that have nothing to compact return 0.
+
+    default long compactVouchers() throws IOException { return 0; }
+
+    default long compactLog(Log log) throws IOException { return 0; }
+
+    // Tombstones written since the voucher store was last compacted.
+    default long voucherTombstones() { return 0; }
+
+    // Size of a log's live (uncompacted) part, in bytes.
+    default long activeLogBytes(Log log) { return 0; }
+}
@@ -0,0 +1,26 @@
+package azurewallet.system;
+
+import java.io.File;
+
+// Chooses the data directory and backend. Both can be set with system properties:
+//   -Dazure.data.dir=/path/to/data   (default: <working dir>/src/azurewallet/data/)
+//   -Dazure.storage=text|binary|memory   (default: text)
+public class StorageEngines {
+
+    public static String dataDir() {
+        String dir = System.getProperty("azure.data.dir", System.getProperty("user.dir") + "/src/azurewallet/data/");
+        return dir.endsWith(File.separator) || dir.endsWith("/") ? dir : dir + File.separator;
+    }
+
+    public static StorageEngine fromConfig() {
+        return create(System.getProperty("azure.storage", "text"), dataDir());
+    }
+
+    public static StorageEngine create(String kind, String dataDir) {
+        return switch (kind.toLowerCase()) {
+            case "memory" -> new InMemoryStorageEngine();
+            case "binary" -> new BinaryStorageEngine(dataDir);
+            default -> new TextStorageEngine(dataDir);
+        };
+    }
+}
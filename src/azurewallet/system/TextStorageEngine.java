@@ -0,0 +1,495 @@
+package azurewallet.system;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import azurewallet.models.UserAccount;
+import azurewallet.models.VoucherIndex;
+
+// The original comma-separated text files. Full rewrites go to a temporary file that is
+// moved over the old one, so a crash mid-save never leaves a truncated users.txt.
+//
+// Removing vouchers appends "-,user,code" tombstones. Compaction seals each event log's
+// history into gzip segments under archive/, which reads still include. Appends take a
+// file's read lock and swaps take its write lock, so compaction only blocks writers for
+// the final tail copy and rename.
+//
+// With a data key configured (see DataCipher) every file here is encrypted: rewrites
+// stream through the cipher, appends seal each batch into whole records, and compaction
+// keeps the file id and re-seals the tail under the new file's record numbers.
+public class TextStorageEngine implements StorageEngine {
+    private static final String TOMBSTONE = "-";
+    private static final long CATCH_UP_BYTES = 64 * 1024;
+    private static final int CATCH_UP_ROUNDS = 8;
+
+    private final String dataDir;
+    private final File archiveDir;
+    private final Map<String, ReentrantReadWriteLock> locks = new ConcurrentHashMap<>();
+    private final AtomicLong tombstones = new AtomicLong();
+    private final DataCipher cipher;
+    // File id per appendable file; NO_ID marks a plaintext file.
+    private final Map<String, byte[]> fileIds = new ConcurrentHashMap<>();
+    private static final byte[] NO_ID = new byte[0];
+
+    public TextStorageEngine(String dataDir) {
+        this(dataDir, DataCipher.get());
+    }
+
+    public TextStorageEngine(String dataDir, DataCipher cipher) {
+        this.dataDir = dataDir;
+        this.archiveDir = new File(dataDir, "archive");
+        this.cipher = cipher;
+        new File(dataDir).mkdirs();
+        try {
+            List<String> files = new ArrayList<>(List.of(dataDir + "users.txt", dataDir + "vouchers.txt"));
+            for (Log log : Log.values()) {
+                files.add(path(log));
+                for (File segment : segments(log)) files.add(segment.getPath());
+            }
+            for (String f : files) {
+                Path file = Paths.get(f);
+                if (!Files.exists(file) || Files.size(file) == 0) cipher.reset(file);
+                else cipher.adopt(file);
+            }
+        } catch (IOException e) {
+            System.out.println("| Error initializing data files: " + e.getMessage());
+        }
+    }
+
+    private String path(Log log) {
+        return dataDir + log.fileName + ".txt";
+    }
+
+    private ReentrantReadWriteLock lock(String path) {
+        return locks.computeIfAbsent(path, k -> new ReentrantReadWriteLock());
+    }
+
+    private byte[] fileId(String path) throws IOException {
+        if (!cipher.isEnabled()) return null;
+        byte[] id = fileIds.get(path);
+        if (id == null) {
+            id = DataCipher.fileIdOf(Paths.get(path));
+            if (id == null) id = NO_ID;
+            fileIds.put(path, id);
+        }
+        return id == NO_ID ? null : id;
+    }
+
+    private BufferedReader reader(String path) throws IOException {
+        return new BufferedReader(new InputStreamReader(cipher.open(Files.newInputStream(Paths.get(path))), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    @Override
+    public String describe() {
+        return "text files in " + dataDir;
+    }
+
+    // =============== ACCOUNTS ===============
+
+    @Override
+    public Map<String, UserAccount> loadAccounts() {
+        Map<String, UserAccount> users = new ConcurrentHashMap<>();
+        try (BufferedReader br = reader(dataDir + "users.txt")) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                UserAccount acc = FileManager.parseUser(line);
+                if (acc != null) users.put(acc.getUsername(), acc);
+            }
+        } catch (IOException e) {
+            System.out.println("| Error loading users.                                    |");
+        }
+        return users;
+    }
+
+    @Override
+    public void saveAccounts(Collection<UserAccount> accounts) throws IOException {
+        rewrite(dataDir + "users.txt", pw -> {
+            for (UserAccount u : accounts) pw.println(u.toFileFormat());
+        });
+    }
+
+    // =============== VOUCHERS ===============
+
+    @Override
+    public List<VoucherIndex.Voucher> loadVouchers() {
+        String file = dataDir + "vouchers.txt";
+        Map<String, VoucherIndex.Voucher> live = new LinkedHashMap<>();
+        boolean legacy = false;
+        long dead = 0;
+        lock(file).readLock().lock();
+        try (BufferedReader br = reader(file)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] p = line.split(",");
+                if (p.length == 3 && p[0].equals(TOMBSTONE)) {
+                    live.remove(p[1] + "," + p[2]);
+                    dead++;
+                } else if (p.length == 4) {
+                    live.put(p[0] + "," + p[1], new VoucherIndex.Voucher(p[0], p[1], Double.parseDouble(p[2]), LocalDate.parse(p[3])));
+                } else if (p.length == 3) {
+                    // Older admin-issued lines carried no expiry; give them the standard month.
+                    live.put(p[0] + "," + p[1], new VoucherIndex.Voucher(p[0], p[1], Double.parseDouble(p[2]), AppClock.today().plusMonths(1)));
+                    legacy = true;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error loading vouchers.");
+        } finally {
+            lock(file).readLock().unlock();
+        }
+        List<VoucherIndex.Voucher> list = new ArrayList<>(live.values());
+        tombstones.set(dead);
+        if (legacy) {
+            try {
+                saveVouchers(list);
+            } catch (IOException e) {
+                System.out.println("Error updating vouchers.");
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void appendVouchers(List<VoucherIndex.Voucher> vouchers) throws IOException {
+        List<String> lines = new ArrayList<>(vouchers.size());
+        for (VoucherIndex.Voucher v : vouchers) lines.add(v.toFileFormat());
+        appendLines(dataDir + "vouchers.txt", lines);
+    }
+
+    @Override
+    public void saveVouchers(Collection<VoucherIndex.Voucher> vouchers) throws IOException {
+        String file = dataDir + "vouchers.txt";
+        lock(file).writeLock().lock();
+        try {
+            rewrite(file, pw -> {
+                for (VoucherIndex.Voucher v : vouchers) pw.println(v.toFileFormat());
+            });
+            fileIds.remove(file);
+            tombstones.set(0);
+        } finally {
+            lock(file).writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeVouchers(List<VoucherIndex.Voucher> vouchers) throws IOException {
+        List<String> lines = new ArrayList<>(vouchers.size());
+        for (VoucherIndex.Voucher v : vouchers) lines.add(TOMBSTONE + "," + v.getUsername() + "," + v.getCode());
+        appendLines(dataDir + "vouchers.txt", lines);
+        tombstones.addAndGet(lines.size());
+    }
+
+    @Override
+    public long voucherTombstones() {
+        return tombstones.get();
+    }
+
+    // =============== EVENT LOGS ===============
+
+    @Override
+    public void append(Log log, List<String> lines) throws IOException {
+        appendLines(path(log), lines);
+    }
+
+    // Encodes the batch once and hands it to the OS in a single write. A PrintWriter chain
+    // allocated about 25 KB of buffers per call, far more than the line itself, and one
+    // O_APPEND write also keeps concurrent appenders from interleaving partial lines.
+    // Encrypted batches are sealed under the lock, since a voucher rewrite changes the id.
+    private void appendLines(String file, List<String> lines) throws IOException {
+        StringBuilder sb = new StringBuilder(lines.size() * 96);
+        for (String line : lines) sb.append(line).append(System.lineSeparator());
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        ReentrantReadWriteLock lock = lock(file);
+        lock.readLock().lock();
+        try {
+            cipher.append(Paths.get(file), fileId(file), bytes);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Sealed segments first, oldest to newest, then the live file. All of them are opened
+    // under the read lock, so a compaction swap cannot make lines vanish mid-read.
+    @Override
+    public void forEach(Log log, Consumer<String> action) throws IOException {
+        List<BufferedReader> readers = new ArrayList<>();
+        ReentrantReadWriteLock lock = lock(path(log));
+        lock.readLock().lock();
+        try {
+            for (File segment : segments(log)) {
+                readers.add(new BufferedReader(new InputStreamReader(
+                        new GZIPInputStream(cipher.open(new FileInputStream(segment)), 1 << 16), StandardCharsets.UTF_8), 1 << 16));
+            }
+            readers.add(reader(path(log)));
+        } catch (IOException e) {
+            for (BufferedReader r : readers) r.close();
+            throw e;
+        } finally {
+            lock.readLock().unlock();
+        }
+        try {
+            for (BufferedReader br : readers) {
+                String line;
+                while ((line = br.readLine()) != null) action.accept(line);
+            }
+        } finally {
+            for (BufferedReader r : readers) r.close();
+        }
+    }
+
+    @Override
+    public void clear(Log log) throws IOException {
+        ReentrantReadWriteLock lock = lock(path(log));
+        lock.writeLock().lock();
+        try {
+            for (File segment : segments(log)) Files.delete(segment.toPath());
+            cipher.reset(Paths.get(path(log)));
+            fileIds.remove(path(log));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void replace(Log log, List<String> lines) throws IOException {
+        ReentrantReadWriteLock lock = lock(path(log));
+        lock.writeLock().lock();
+        try {
+            rewrite(path(log), pw -> lines.forEach(pw::println));
+            fileIds.remove(path(log));
+            for (File segment : segments(log)) Files.delete(segment.toPath());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long activeLogBytes(Log log) {
+        return new File(path(log)).length();
+    }
+
+    // archive/<log>.<n>.gz, ordered by n.
+    private List<File> segments(Log log) {
+        File[] files = archiveDir.listFiles((d, name) -> name.startsWith(log.fileName + ".") && name.endsWith(".gz"));
+        if (files == null) return List.of();
+        List<File> list = new ArrayList<>(Arrays.asList(files));
+        list.sort(Comparator.comparingLong(TextStorageEngine::segmentNumber));
+        return list;
+    }
+
+    private static long segmentNumber(File f) {
+        String name = f.getName();
+        String n = name.substring(name.lastIndexOf('.', name.length() - 4) + 1, name.length() - 3);
+        try {
+            return Long.parseLong(n);
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    // =============== STATE ===============
+
+    @Override
+    public Map<String, String> loadState(String name) {
+        Map<String, String> state = new ConcurrentHashMap<>();
+        File file = new File(dataDir + name + ".txt");
+        if (!file.exists()) return state;
+        try (BufferedReader br = reader(file.getPath())) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                int eq = line.indexOf('=');
+                if (eq > 0) state.put(line.substring(0, eq), line.substring(eq + 1));
+            }
+        } catch (IOException e) {
+            System.out.println("| Error loading " + name + ".");
+        }
+        return state;
+    }
+
+    @Override
+    public void saveState(String name, Map<String, String> state) throws IOException {
+        rewrite(dataDir + name + ".txt", pw -> {
+            for (Map.Entry<String, String> e : state.entrySet()) pw.println(e.getKey() + "=" + e.getValue());
+        });
+    }
+
+    // =============== DOCUMENTS ===============
+
+    @Override
+    public String loadDocument(String name) throws IOException {
+        return DocumentFiles.load(dataDir, name);
+    }
+
+    @Override
+    public void saveDocument(String name, String text) throws IOException {
+        DocumentFiles.save(dataDir, name, text);
+    }
+
+    @Override
+    public String documentLocation(String name) {
+        return DocumentFiles.path(dataDir, name).toString();
+    }
+
+    // =============== COMPACTION ===============
+
+    // Rewrites vouchers.txt with only the live vouchers, dropping tombstones.
+    @Override
+    public long compactVouchers() throws IOException {
+        long before = tombstones.get();
+        long reclaimed = compact(dataDir + "vouchers.txt", (prefix, out) -> {
+            Map<String, String> live = new LinkedHashMap<>();
+            BufferedReader br = new BufferedReader(new InputStreamReader(prefix, StandardCharsets.UTF_8), 1 << 16);
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] p = line.split(",");
+                if (p.length == 3 && p[0].equals(TOMBSTONE)) live.remove(p[1] + "," + p[2]);
+                else if (p.length >= 3) live.put(p[0] + "," + p[1], line);
+            }
+            Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            for (String l : live.values()) {
+                w.write(l);
+                w.write(System.lineSeparator());
+            }
+            w.flush();
+        }, null);
+        // Tombstones written during the run were copied with the tail and still count.
+        tombstones.addAndGet(-before);
+        return reclaimed;
+    }
+
+    // Seals everything currently in the log into the next gzip segment and restarts the
+    // live file with whatever was appended while the segment was being written.
+    @Override
+    public long compactLog(Log log) throws IOException {
+        archiveDir.mkdirs();
+        List<File> existing = segments(log);
+        long next = existing.isEmpty() ? 1 : segmentNumber(existing.get(existing.size() - 1)) + 1;
+        File segment = new File(archiveDir, log.fileName + "." + next + ".gz");
+        File segmentTmp = new File(archiveDir, log.fileName + "." + next + ".gz.tmp");
+        try {
+            return compact(path(log), (prefix, out) -> {
+                try (OutputStream gz = new GZIPOutputStream(cipher.create(new FileOutputStream(segmentTmp)), 1 << 16)) {
+                    prefix.transferTo(gz);
+                }
+            }, () -> Files.move(segmentTmp.toPath(), segment.toPath(), StandardCopyOption.ATOMIC_MOVE));
+        } finally {
+            Files.deleteIfExists(segmentTmp.toPath());
+        }
+    }
+
+    private interface PrefixWriter {
+        void write(InputStream prefix, OutputStream out) throws IOException;
+    }
+
+    private interface SwapStep {
+        void run() throws IOException;
+    }
+
+    // Online rewrite of an append-only file. The file is only ever extended, so the bytes
+    // present at the snapshot never change: they are reduced with no lock held. Lines
+    // appended meanwhile are copied over in rounds; the last short tail, the optional
+    // extra step and the rename run under the write lock. Returns bytes reclaimed.
+    //
+    // An encrypted file keeps its id: the new file starts with the same header, and the
+    // reduced prefix and then the tail are sealed under it as one run of records. The
+    // tail is decrypted and re-sealed, since its record numbers change.
+    private long compact(String target, PrefixWriter reducer, SwapStep beforeSwap) throws IOException {
+        Path file = Paths.get(target);
+        Path tmp = Paths.get(target + ".compact");
+        ReentrantReadWriteLock lock = lock(target);
+        long snapshot = sizeBetweenAppends(lock, file);
+        byte[] id = DataCipher.fileIdOf(file);
+        if (snapshot <= (id == null ? 0 : DataCipher.HEADER)) return 0;
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16)) {
+            if (id != null) out.write(DataCipher.headerFor(id));
+            OutputStream sealed = cipher.continueAfter(id, out);
+            try (InputStream prefix = cipher.open(new LimitedInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16), snapshot))) {
+                reducer.write(prefix, sealed);
+            }
+            long copied = snapshot;
+            for (int round = 0; round < CATCH_UP_ROUNDS; round++) {
+                long end = sizeBetweenAppends(lock, file);
+                if (end - copied < CATCH_UP_BYTES) break;
+                copyRange(file, copied, end, sealed);
+                copied = end;
+            }
+            lock.writeLock().lock();
+            try {
+                long end = Files.size(file);
+                copyRange(file, copied, end, sealed);
+                sealed.close();
+                out.flush();
+                if (beforeSwap != null) beforeSwap.run();
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return end - Files.size(file);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // File size with no append half-written.
+    private static long sizeBetweenAppends(ReentrantReadWriteLock lock, Path file) throws IOException {
+        lock.writeLock().lock();
+        try {
+            return Files.size(file);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Copies the plaintext between two sizes taken between appends.
+    private void copyRange(Path file, long from, long to, OutputStream out) throws IOException {
+        if (to <= from) return;
+        long start = cipher.plaintextOffset(file, from);
+        long stop = cipher.plaintextOffset(file, to);
+        try (InputStream in = cipher.openAt(file, start)) {
+            new LimitedInputStream(in, stop - start).transferTo(out);
+        }
+    }
+
+    private static final class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = super.read();
+            if (b >= 0) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int n = super.read(buf, off, (int) Math.min(len, remaining));
+            if (n > 0) remaining -= n;
+            return n;
+        }
+    }
+
+    private void rewrite(String target, Consumer<PrintWriter> body) throws IOException {
+        Path tmp = Paths.get(target + ".tmp");
+        try (PrintWriter pw = cipher.writer(tmp)) {
+            body.accept(pw);
+            if (pw.checkError()) throw new IOException("write failed: " + tmp);
+        }
+        Files.move(tmp, Paths.get(target), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,294 @@
+package azurewallet.system;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import azurewallet.models.UserAccount;
+
+// Inline velocity checks for outgoing money. Each account keeps count and sum aggregates
+// over the last minute, hour and day in bucketed ring buffers (1 s, 1 min and 15 min
+// buckets), so admitting a transaction touches a fixed number of slots and never reads
+// the transaction history. Rules come from the velocity_rules.txt document (a file in the
+// data directory with the file backends):
+//
+//   op,window,maxCount,maxAmount
+//   send,1m,5,2x        at most 5 sends and 2x the rank's send limit per minute
+//
+// op is send, withdraw, batch or any; window is 1m, 1h or 24h; maxAmount is PHP, or Nx
+// for a multiple of the rank's per-transaction limit; "-" disables that part of the rule.
+// A batch transfer is one admission of its total under the batch rules, however many
+// recipients it has, so payroll runs are not measured against single-send bursts. For
+// the same reason an "any" rule counts batches but leaves their amounts to the batch
+// rules, whose ceilings are higher.
+public class VelocityMonitor {
+    public enum Op { SEND, WITHDRAW, BATCH }
+
+    public enum Span {
+        MINUTE("1m", 1_000, 60),
+        HOUR("1h", 60_000, 60),
+        DAY("24h", 900_000, 96);
+
+        final String label;
+        final long bucketMs;
+        final int buckets;
+
+        Span(String label, long bucketMs, int buckets) {
+            this.label = label;
+            this.bucketMs = bucketMs;
+            this.buckets = buckets;
+        }
+    }
+
+    private static final String RULES_FILE = "velocity_rules.txt";
+    private static final String[] DEFAULT_RULES = {
+        "# op,window,maxCount,maxAmount  (op: send|withdraw|batch|any, window: 1m|1h|24h,",
+        "# amount: PHP or Nx = N times the rank's per-transaction limit, '-' = no limit)",
+        "send,1m,5,2x",
+        "send,1h,20,5x",
+        "withdraw,1h,10,3x",
+        "batch,1h,3,20x",
+        "batch,24h,10,50x",
+        "any,24h,60,10x"
+    };
+    private static final int LATENCY_BUCKETS = 100_000; // 100 ns each, up to 10 ms
+
+    public static class Rule {
+        final Op op; // null = any
+        final Span span;
+        final int maxCount;
+        final double maxAmount;
+        final boolean relative;
+
+        Rule(Op op, Span span, int maxCount, double maxAmount, boolean relative) {
+            this.op = op;
+            this.span = span;
+            this.maxCount = maxCount;
+            this.maxAmount = maxAmount;
+            this.relative = relative;
+        }
+
+        double amountLimit(UserAccount acc) {
+            if (!relative) return maxAmount;
+            return maxAmount * (op == Op.WITHDRAW ? acc.getWithdrawLimit() : acc.getSendLimit());
+        }
+
+        @Override
+        public String toString() {
+            String amount = maxAmount == Double.MAX_VALUE ? "-" : relative ? trim(maxAmount) + "x" : trim(maxAmount);
+            return (op == null ? "any" : op.name().toLowerCase()) + "," + span.label + ","
+                    + (maxCount == Integer.MAX_VALUE ? "-" : String.valueOf(maxCount)) + "," + amount;
+        }
+
+        private static String trim(double d) {
+            return d == Math.rint(d) ? String.valueOf((long) d) : String.valueOf(d);
+        }
+    }
+
+    // Count/sum over one span. Slots are cleared lazily as time moves forward, at most
+    // once per elapsed bucket, so every update is O(1) amortised.
+    private static final class Ring {
+        final Span span;
+        final int[] count;
+        final double[] sum;
+        long head = -1;
+        int total;
+        double totalSum;
+
+        Ring(Span span) {
+            this.span = span;
+            this.count = new int[span.buckets];
+            this.sum = new double[span.buckets];
+        }
+
+        void advance(long now) {
+            long bucket = now / span.bucketMs;
+            if (head < 0) {
+                head = bucket;
+                return;
+            }
+            if (bucket <= head) return;
+            long steps = Math.min(bucket - head, span.buckets);
+            for (long i = 1; i <= steps; i++) {
+                int slot = (int) ((head + i) % span.buckets);
+                total -= count[slot];
+                totalSum -= sum[slot];
+                count[slot] = 0;
+                sum[slot] = 0;
+            }
+            if (total == 0) totalSum = 0; // drop accumulated rounding
+            head = bucket;
+        }
+
+        void add(int n, double amount) {
+            int slot = (int) (head % span.buckets);
+            count[slot] += n;
+            sum[slot] += amount;
+            total += n;
+            totalSum += amount;
+        }
+    }
+
+    // One ring per span per operation for a single account.
+    private static final class Tracker {
+        final Ring[][] rings = new Ring[Op.values().length][Span.values().length];
+        long lastSeen;
+
+        Tracker() {
+            for (Op op : Op.values()) {
+                for (Span s : Span.values()) rings[op.ordinal()][s.ordinal()] = new Ring(s);
+            }
+        }
+
+        int count(Op op, Span span) {
+            if (op != null) return rings[op.ordinal()][span.ordinal()].total;
+            int n = 0;
+            for (Ring[] r : rings) n += r[span.ordinal()].total;
+            return n;
+        }
+
+        double sum(Op op, Span span) {
+            if (op != null) return rings[op.ordinal()][span.ordinal()].totalSum;
+            double s = 0;
+            for (Op o : Op.values()) if (o != Op.BATCH) s += rings[o.ordinal()][span.ordinal()].totalSum;
+            return s;
+        }
+    }
+
+    private final FileManager fileManager;
+    private volatile List<Rule> rules;
+    private final ConcurrentHashMap<String, Tracker> trackers = new ConcurrentHashMap<>();
+    private final AtomicLongArray latency = new AtomicLongArray(LATENCY_BUCKETS + 1);
+    private final AtomicLong checks = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+
+    public VelocityMonitor(FileManager fileManager) {
+        this.fileManager = fileManager;
+        reloadRules();
+    }
+
+    // =============== RULES ===============
+
+    public void reloadRules() {
+        List<Rule> loaded = new ArrayList<>();
+        try {
+            String text = fileManager.loadDocument(RULES_FILE);
+            if (text == null) {
+                text = String.join(System.lineSeparator(), DEFAULT_RULES) + System.lineSeparator();
+                fileManager.saveDocument(RULES_FILE, text);
+            }
+            int lineNo = 0;
+            for (String line : text.lines().toList()) {
+                lineNo++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                Rule rule = parseRule(line);
+                if (rule == null) System.out.println("Ignoring invalid velocity rule on line " + lineNo + ": " + line);
+                else loaded.add(rule);
+            }
+        } catch (IOException e) {
+            System.out.println("Error loading velocity rules; using defaults.");
+            for (String line : DEFAULT_RULES) {
+                if (!line.startsWith("#")) loaded.add(parseRule(line));
+            }
+        }
+        rules = List.copyOf(loaded);
+    }
+
+    static Rule parseRule(String line) {
+        String[] p = line.split(",");
+        if (p.length != 4) return null;
+        try {
+            String opText = p[0].trim().toLowerCase();
+            Op op = opText.equals("any") ? null : Op.valueOf(opText.toUpperCase());
+            Span span = null;
+            for (Span s : Span.values()) if (s.label.equals(p[1].trim())) span = s;
+            if (span == null) return null;
+            String c = p[2].trim();
+            int maxCount = c.equals("-") ? Integer.MAX_VALUE : Integer.parseInt(c);
+            String a = p[3].trim().toLowerCase();
+            boolean relative = a.endsWith("x");
+            double maxAmount = a.equals("-") ? Double.MAX_VALUE : Double.parseDouble(relative ? a.substring(0, a.length() - 1) : a);
+            return new Rule(op, span, maxCount, maxAmount, relative);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public List<Rule> getRules() { return rules; }
+
+    public String getRulesLocation() { return fileManager.documentLocation(RULES_FILE); }
+
+    // =============== CHECKS ===============
+
+    // Checks the rules and, if none would be broken, records the transaction. Returns
+    // null when admitted, otherwise a message naming the rule that stopped it. Call it
+    // after the ordinary limit and balance checks, right before moving the money.
+    public String admit(UserAccount acc, Op op, int count, double amount) {
+        long start = System.nanoTime();
+        long now = AppClock.millis();
+        checks.incrementAndGet();
+        Tracker t = trackers.computeIfAbsent(acc.getUsername(), k -> new Tracker());
+        String problem = null;
+        synchronized (t) {
+            for (Ring[] byOp : t.rings) for (Ring r : byOp) r.advance(now);
+            for (Rule rule : rules) {
+                if (rule.op != null && rule.op != op) continue;
+                if (t.count(rule.op, rule.span) + count > rule.maxCount) {
+                    problem = "Too many transactions in the last " + rule.span.label + " (limit " + rule.maxCount + ").";
+                    break;
+                }
+                if (rule.op == null && op == Op.BATCH) continue;
+                double limit = rule.amountLimit(acc);
+                if (t.sum(rule.op, rule.span) + amount > limit + 1e-9) {
+                    problem = String.format("Amount exceeds PHP %,.2f allowed in the last %s.", limit, rule.span.label);
+                    break;
+                }
+            }
+            if (problem == null) {
+                Ring[] rings = t.rings[op.ordinal()];
+                for (Ring r : rings) r.add(count, amount);
+            }
+            t.lastSeen = now;
+        }
+        if (problem != null) rejections.incrementAndGet();
+        long slot = (System.nanoTime() - start) / 100;
+        latency.incrementAndGet((int) Math.min(slot, LATENCY_BUCKETS));
+        return problem;
+    }
+
+    // Drops trackers with no activity for a whole day; their windows are empty anyway.
+    public int evictIdle() {
+        long cutoff = AppClock.millis() - Span.DAY.bucketMs * Span.DAY.buckets;
+        int before = trackers.size();
+        trackers.values().removeIf(t -> {
+            synchronized (t) {
+                return t.lastSeen < cutoff;
+            }
+        });
+        return before - trackers.size();
+    }
+
+    // =============== STATS ===============
+
+    public long getChecks() { return checks.get(); }
+
+    public long getRejections() { return rejections.get(); }
+
+    public int getTrackedAccounts() { return trackers.size(); }
+
+    // Added latency of admit() at a percentile, in microseconds (0.1 us resolution).
+    public double latencyPercentileMicros(double pct) {
+        long total = 0;
+        for (int i = 0; i <= LATENCY_BUCKETS; i++) total += latency.get(i);
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(total * pct / 100.0);
+        long seen = 0;
+        for (int i = 0; i <= LATENCY_BUCKETS; i++) {
+            seen += latency.get(i);
+            if (seen >= rank) return i / 10.0;
+        }
+        return LATENCY_BUCKETS / 10.0;
+    }
+}
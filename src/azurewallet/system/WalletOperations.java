@@ -0,0 +1,149 @@
+package azurewallet.system;
+
+import java.text.DecimalFormat;
+import java.util.Map;
+import java.util.function.Supplier;
+import azurewallet.models.UserAccount;
+import azurewallet.models.VoucherSystem;
+import azurewallet.system.IdempotencyStore.Outcome;
+
+// The money-moving wallet operations without the console prompts, so they can be driven
+// by the menu or by a remote client. Each takes an optional idempotency key: the first
+// request with a key runs and its outcome is remembered; a retry with the same key and
+// the same parameters gets that outcome back without touching balances or logs. A null
+// key runs the operation unconditionally, as the interactive menu does.
+public class WalletOperations {
+    private final FileManager fileManager;
+    private final Map<String, UserAccount> users;
+    private final InterestAccrual interest;
+    private final VelocityMonitor velocity;
+    private final MerchantLedger merchants;
+    private final IdempotencyStore idempotency;
+    private final DecimalFormat df = new DecimalFormat("#,##0.00");
+
+    public WalletOperations(FileManager fileManager, Map<String, UserAccount> users, InterestAccrual interest,
+                            VelocityMonitor velocity, MerchantLedger merchants, IdempotencyStore idempotency) {
+        this.fileManager = fileManager;
+        this.users = users;
+        this.interest = interest;
+        this.velocity = velocity;
+        this.merchants = merchants;
+        this.idempotency = idempotency;
+    }
+
+    public IdempotencyStore getIdempotency() { return idempotency; }
+
+    // =============== OPERATIONS ===============
+
+    public Outcome deposit(UserAccount acc, double amount, String key) {
+        return once(acc, key, "deposit|" + amount, () -> {
+            String prevRank;
+            synchronized (acc) {
+                interest.accrue(acc);
+                if (amount <= 0) return fail("Invalid amount.");
+                if (acc.getBalance() + amount > acc.getDepositLimit()) {
+                    return fail("Deposit exceeds your rank limit of PHP " + format(acc.getDepositLimit()));
+                }
+                prevRank = acc.getRank();
+                acc.deposit(amount);
+                acc.addTotalTransacted(amount);
+            }
+            StringBuilder msg = new StringBuilder();
+            if (!acc.getRank().equals(prevRank)) {
+                msg.append("Congratulations! Your account rank has been upgraded to ").append(acc.getRank()).append("!\n");
+            }
+            fileManager.logTransaction(acc.getUsername(), "Deposit", amount);
+
+            int pointsEarned = (int) (amount / 1000);
+            if (pointsEarned > 0) {
+                acc.addPoints(pointsEarned);
+                fileManager.logPoints(acc.getUsername(), "earned", pointsEarned, "from deposit");
+                msg.append("You earned ").append(pointsEarned).append(" points from this deposit!\n");
+            }
+            fileManager.saveUsers(users);
+            return new Outcome(true, msg + "Deposit successful. Balance: PHP " + format(acc.getBalance()));
+        });
+    }
+
+    public Outcome payOnline(UserAccount acc, String merchant, double amount, String key) {
+        return once(acc, key, "pay|" + merchant.trim().toLowerCase() + "|" + amount, () -> {
+            MerchantLedger.Merchant m;
+            synchronized (acc) {
+                interest.accrue(acc);
+                if (amount <= 0 || amount > acc.getSendLimit()) return fail("Invalid or exceeds limit (" + format(acc.getSendLimit()) + ")");
+                if (amount > acc.getBalance()) return fail("Insufficient balance.");
+                m = merchants.resolve(merchant);
+                acc.withdraw(amount);
+            }
+            merchants.recordPayment(m, amount);
+            fileManager.logTransaction(acc.getUsername(), "Paid to " + m.getName() + " (" + m.getId() + ")", amount);
+            fileManager.saveUsers(users);
+            return new Outcome(true, "Payment of PHP " + format(amount) + " to " + m.getName() + " successful.");
+        });
+    }
+
+    public Outcome sendMoney(UserAccount acc, String recipient, double amount, String key) {
+        return once(acc, key, "send|" + recipient + "|" + amount, () -> {
+            UserAccount receiver = users.get(recipient);
+            if (receiver == null) return fail("Recipient not found.");
+            synchronized (acc) {
+                interest.accrue(acc);
+                if (amount <= 0 || amount > acc.getSendLimit()) return fail("Invalid or exceeds limit (" + format(acc.getSendLimit()) + ")");
+                if (amount > acc.getBalance()) return fail("Insufficient balance.");
+                String velocityProblem = velocity.admit(acc, VelocityMonitor.Op.SEND, 1, amount);
+                if (velocityProblem != null) return fail("Transfer blocked. " + velocityProblem);
+                acc.withdraw(amount);
+            }
+            synchronized (receiver) {
+                interest.accrue(receiver);
+                receiver.deposit(amount);
+            }
+            fileManager.logTransaction(acc.getUsername(), "Sent to " + recipient, amount);
+            fileManager.logTransaction(recipient, "Received from " + acc.getUsername(), amount);
+            fileManager.saveUsers(users);
+            return new Outcome(true, "Successfully sent PHP " + format(amount) + " to " + recipient + ".");
+        });
+    }
+
+    public Outcome redeemVoucher(UserAccount acc, String code, String key) {
+        return once(acc, key, "voucher|" + code, () -> {
+            // Not under the account lock: redeemVoucher() takes the voucher lock and then
+            // the account's, and accrue() only needs the account's own.
+            interest.accrue(acc);
+            double value = VoucherSystem.redeemVoucher(acc, code, fileManager);
+            if (value <= 0) return fail("Invalid or expired voucher.");
+            fileManager.saveUsers(users);
+            return new Outcome(true, "Voucher redeemed successfully! +PHP " + format(value));
+        });
+    }
+
+    // =============== IDEMPOTENCY ===============
+
+    // Rejections are remembered too: a retry of a declined request is declined the same
+    // way rather than re-evaluated against a balance that may have changed since.
+    private Outcome once(UserAccount acc, String key, String fingerprint, Supplier<Outcome> operation) {
+        if (key == null) return operation.get();
+        if (!IdempotencyStore.isValidKey(key)) return fail("Invalid idempotency key.");
+        Outcome earlier = idempotency.begin(acc.getUsername(), key, fingerprint);
+        if (earlier != null) return earlier;
+        Outcome outcome;
+        try {
+            outcome = operation.get();
+        } catch (RuntimeException e) {
+            idempotency.release(acc.getUsername(), key);
+            throw e;
+        }
+        idempotency.complete(acc.getUsername(), key, outcome);
+        return outcome;
+    }
+
+    private static Outcome fail(String message) {
+        return new Outcome(false, message);
+    }
+
+    private String format(double amount) {
+        synchronized (df) {
+            return df.format(amount);
+        }
+    }
+}